@@ -39,6 +39,8 @@ import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -665,7 +667,14 @@ public class Analytics extends AbstractAppCenterService {
 
     @Override
     protected Channel.GroupListener getChannelListener() {
-        return new Channel.GroupListener() {
+        return new Channel.SelectiveGroupListener() {
+
+            @Override
+            public Collection<String> getLogTypes() {
+
+                /* Logs are only needed to call the application listener. */
+                return mAnalyticsListener != null ? null : Collections.<String>emptyList();
+            }
 
             @Override
             public void onBeforeSending(Log log) {
@@ -701,6 +710,7 @@ public class Analytics extends AbstractAppCenterService {
         /* If we enabled the service. */
         if (enabled) {
             mChannel.addGroup(ANALYTICS_CRITICAL_GROUP, getTriggerCount(), Constants.DEFAULT_TRIGGER_INTERVAL, getTriggerMaxParallelRequests(), null, getChannelListener());
+            mChannel.setGroupPriority(ANALYTICS_CRITICAL_GROUP, Channel.GROUP_PRIORITY_HIGH, 1);
 
             /* Check if service started at application level and enable corresponding features. */
             startAppLevelFeatures();
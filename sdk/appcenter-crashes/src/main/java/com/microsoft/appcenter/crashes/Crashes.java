@@ -513,9 +513,21 @@ public class Crashes extends AbstractAppCenterService {
         return 1;
     }
 
+    @Override
+    protected int getGroupPriority() {
+        return Channel.GROUP_PRIORITY_HIGHEST;
+    }
+
     @Override
     protected Channel.GroupListener getChannelListener() {
-        return new Channel.GroupListener() {
+        return new Channel.SelectiveGroupListener() {
+
+            @Override
+            public Collection<String> getLogTypes() {
+
+                /* Only crash reports are reported to the listener. */
+                return Collections.singletonList(ManagedErrorLog.TYPE);
+            }
 
             /** Process callback (template method) */
             private void processCallback(final Log log, final CallbackProcessor callbackProcessor) {
@@ -214,6 +214,7 @@ public class CrashesTest extends AbstractCrashesTest {
         crashes.onStarted(mock(Context.class), mockChannel, "", null, true);
         verify(mockChannel).removeGroup(eq(crashes.getGroupName()));
         verify(mockChannel).addGroup(eq(crashes.getGroupName()), anyInt(), anyInt(), anyInt(), isNull(Ingestion.class), any(Channel.GroupListener.class));
+        verify(mockChannel).setGroupPriority(crashes.getGroupName(), Channel.GROUP_PRIORITY_HIGHEST, 1);
 
         /* Test. */
         assertTrue(Crashes.isEnabled().get());
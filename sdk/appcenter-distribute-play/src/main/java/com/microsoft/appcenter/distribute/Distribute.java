@@ -166,6 +166,11 @@ public class Distribute extends AbstractAppCenterService {
         return 1;
     }
 
+    @Override
+    protected int getGroupPriority() {
+        return Channel.GROUP_PRIORITY_LOW;
+    }
+
     @Override
     public Map<String, LogFactory> getLogFactories() {
         return new HashMap<>();
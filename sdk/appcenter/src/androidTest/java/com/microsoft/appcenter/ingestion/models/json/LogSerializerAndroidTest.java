@@ -25,6 +25,8 @@ import java.util.UUID;
 import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
 import static com.microsoft.appcenter.test.TestUtils.TAG;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -54,6 +56,25 @@ public class LogSerializerAndroidTest {
         assertEquals(expectedContainer.hashCode(), actualContainer.hashCode());
     }
 
+    @Test
+    public void serializeLogWithoutDevice() throws JSONException {
+        MockLog log = AndroidTestUtils.generateMockLog();
+        Map<String, String> properties = new HashMap<>();
+        properties.put("device", "value");
+        log.setProperties(properties);
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        String payload = serializer.serializeLogWithoutDevice(log);
+        android.util.Log.v(TAG, payload);
+
+        /* Only the device of the log is left out, the log is not modified. */
+        Log actualLog = serializer.deserializeLog(payload, null);
+        assertNull(actualLog.getDevice());
+        assertNotNull(log.getDevice());
+        actualLog.setDevice(log.getDevice());
+        assertEquals(log, actualLog);
+    }
+
     @Test(expected = JSONException.class)
     public void deserializeUnknownType() throws JSONException {
         MockLog log = AndroidTestUtils.generateMockLog();
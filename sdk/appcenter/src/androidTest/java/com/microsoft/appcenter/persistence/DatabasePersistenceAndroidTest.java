@@ -20,7 +20,9 @@ import com.microsoft.appcenter.AndroidTestUtils;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
@@ -45,6 +47,7 @@ import org.junit.runner.RunWith;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -67,6 +70,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.anyString;
@@ -173,6 +177,161 @@ public class DatabasePersistenceAndroidTest {
         putLog(Flags.CRITICAL | 0x0300, Flags.CRITICAL);
     }
 
+    @Test
+    public void putBufferedLogs() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setMaxBufferedLogs(3);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Normal logs are buffered. */
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            assertEquals(Persistence.BUFFERED_LOG_ID, persistence.putLog(log1, "test-p1", NORMAL));
+            assertEquals(Persistence.BUFFERED_LOG_ID, persistence.putLog(log2, "test-p1", NORMAL));
+            assertTrue(persistence.hasBufferedLogs());
+            assertEquals(0, persistence.mDatabaseManager.getRowCount());
+
+            /* Critical log is written immediately along with buffered ones. */
+            Log log3 = AndroidTestUtils.generateMockLog();
+            assertNotEquals(Persistence.BUFFERED_LOG_ID, persistence.putLog(log3, "test-p1", CRITICAL));
+            assertFalse(persistence.hasBufferedLogs());
+            assertEquals(3, persistence.mDatabaseManager.getRowCount());
+
+            /* Buffer is written when full. */
+            for (int i = 0; i < 3; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p1", NORMAL);
+            }
+            assertFalse(persistence.hasBufferedLogs());
+            assertEquals(6, persistence.mDatabaseManager.getRowCount());
+
+            /* Reading flushes the buffer. */
+            Log log7 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log7, "test-p1", NORMAL);
+            assertEquals(7, persistence.countLogs("test-p1"));
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test-p1", Collections.<String>emptyList(), 7, outputLogs);
+            assertEquals(7, outputLogs.size());
+            assertEquals(log3, outputLogs.get(0));
+            assertEquals(log1, outputLogs.get(1));
+            assertEquals(log2, outputLogs.get(2));
+            assertEquals(log7, outputLogs.get(6));
+
+            /* Deleting a group discards its buffered logs. */
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p1", NORMAL);
+            persistence.deleteLogs("test-p1");
+            assertFalse(persistence.hasBufferedLogs());
+            assertEquals(0, persistence.countLogs("test-p1"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putCompressedLogs() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setPayloadCompressionEnabled(true);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Compressed log is stored in its own column. */
+            Log log1 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test-p1", NORMAL);
+            ContentValues values = getContentValues(persistence, "test-p1");
+            assertNull(values.getAsString(DatabasePersistence.COLUMN_LOG));
+            assertNotNull(values.getAsByteArray(DatabasePersistence.COLUMN_COMPRESSED_LOG));
+
+            /* Disable compression, both logs can be read. */
+            persistence.setPayloadCompressionEnabled(false);
+            Log log2 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log2, "test-p1", NORMAL);
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test-p1", Collections.<String>emptyList(), 2, outputLogs);
+            assertEquals(2, outputLogs.size());
+            assertEquals(log1, outputLogs.get(0));
+            assertEquals(log2, outputLogs.get(1));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    public void putLogsWithDeviceSnapshots() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+
+        /* Two logs share a device, a third one has another device. */
+        Log log1 = AndroidTestUtils.generateMockLog();
+        Log log2 = AndroidTestUtils.generateMockLog();
+        log2.setDevice(log1.getDevice());
+        Log log3 = AndroidTestUtils.generateMockLog();
+        try {
+            persistence.putLog(log1, "test-p1", NORMAL);
+            persistence.putLog(log2, "test-p1", NORMAL);
+            persistence.putLog(log3, "test-p1", NORMAL);
+
+            /* Devices are stored once and not in log payloads. */
+            assertEquals(2, getDeviceSnapshotCount(persistence));
+            ContentValues values = getContentValues(persistence, "test-p1");
+            assertNotNull(values.getAsLong(DatabasePersistence.COLUMN_DEVICE_ID));
+            assertFalse(values.getAsString(DatabasePersistence.COLUMN_LOG).contains("\"device\""));
+        } finally {
+            persistence.close();
+        }
+
+        /* Devices are restored after restart. */
+        persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            List<Log> outputLogs = new ArrayList<>();
+            String batchId = persistence.getLogs("test-p1", Collections.<String>emptyList(), 2, outputLogs);
+            assertNotNull(batchId);
+            assertEquals(Arrays.asList(log1, log2), outputLogs);
+            persistence.deleteLogs("test-p1", batchId);
+        } finally {
+            persistence.close();
+        }
+
+        /* Unused snapshot is deleted after restart. */
+        persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test-p1", Collections.<String>emptyList(), 2, outputLogs);
+            assertEquals(Collections.singletonList(log3), outputLogs);
+            assertEquals(1, getDeviceSnapshotCount(persistence));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    private static int getDeviceSnapshotCount(DatabasePersistence persistence) {
+        Cursor cursor = persistence.mDatabaseManager.getCursor(DatabasePersistence.DEVICES_TABLE, null, null, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Test
     public void putLargeLogAndDeleteAll() throws PersistenceException {
 
@@ -863,7 +1022,7 @@ public class DatabasePersistenceAndroidTest {
             assertEquals(10, persistence.countLogs("test"));
 
             /* Clear. Nothing to get after. */
-            persistence.mDatabaseManager.clear();
+            persistence.deleteLogs("test");
             List<Log> outputLogs = new ArrayList<>();
             assertNull(persistence.getLogs("test", Collections.<String>emptyList(), sizeForGetLogs, outputLogs));
             assertTrue(outputLogs.isEmpty());
@@ -873,6 +1032,164 @@ public class DatabasePersistenceAndroidTest {
         }
     }
 
+    @Test
+    public void serializeLogWithoutDeviceDoesNotModifyLog() throws JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* The device is left out of the payload but kept in the log. */
+            Log log = AndroidTestUtils.generateMockLog();
+            Device device = log.getDevice();
+            Log serializedLog = logSerializer.deserializeLog(persistence.serializeLog(log), null);
+            assertNull(serializedLog.getDevice());
+            assertSame(device, log.getDevice());
+            serializedLog.setDevice(device);
+            assertEquals(log, serializedLog);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsWithSizeLimit() throws PersistenceException, JSONException, UnsupportedEncodingException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Generate and persist some logs, remembering the size of the first 3. */
+            long firstLogsSize = 0;
+            for (int i = 0; i < 10; i++) {
+                Log log = AndroidTestUtils.generateMockLog();
+                persistence.putLog(log, "test", NORMAL);
+                if (i < 3) {
+                    firstLogsSize += persistence.serializeLog(log).getBytes("UTF-8").length;
+                }
+            }
+
+            /* The size limit stops the batch before the limit on count. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 10, firstLogsSize, outputLogs));
+            assertEquals(3, outputLogs.size());
+
+            /* The first log is returned even if larger than the limit. */
+            outputLogs.clear();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 10, 1, outputLogs));
+            assertEquals(1, outputLogs.size());
+
+            /* No limit. */
+            outputLogs.clear();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 10, 0, outputLogs));
+            assertEquals(6, outputLogs.size());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsWithSizeLimitWithoutStoredSize() throws JSONException, UnsupportedEncodingException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Insert logs with multi-byte characters the way versions without the size column did. */
+            long firstLogsSize = 0;
+            for (int i = 0; i < 3; i++) {
+                LogWithProperties log = AndroidTestUtils.generateMockLog();
+                Map<String, String> properties = new HashMap<>();
+                properties.put("key", "\u65e5\u672c\u8a9e\u65e5\u672c\u8a9e\u65e5\u672c\u8a9e\u65e5\u672c\u8a9e");
+                log.setProperties(properties);
+                String payload = logSerializer.serializeLog(log);
+                ContentValues contentValues = new ContentValues();
+                contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+                contentValues.put(DatabasePersistence.COLUMN_LOG, payload);
+                contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MOCK_LOG_TYPE);
+                contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+                assertNotEquals(-1, persistence.mDatabaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY));
+                if (i < 2) {
+                    firstLogsSize += payload.getBytes("UTF-8").length;
+                }
+            }
+
+            /* The size limit is checked against the size in bytes, not the number of characters. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 10, firstLogsSize, outputLogs));
+            assertEquals(2, outputLogs.size());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getSerializedLogs() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+            assertTrue(persistence.supportsSerializedLogs());
+
+            /* Persist logs, the device is stored apart from the log. */
+            List<Log> expectedLogs = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Log log = AndroidTestUtils.generateMockLog();
+                persistence.putLog(log, "test", NORMAL);
+                expectedLogs.add(log);
+            }
+
+            /* Serialized logs include the device again and are put in pending state. */
+            SerializedLogContainer container = new SerializedLogContainer();
+            List<Log> deserializedLogs = new ArrayList<>();
+            String id = persistence.getSerializedLogs("test", Collections.<String>emptyList(), 2, 0, container, Collections.<String>emptyList(), deserializedLogs);
+            assertNotNull(id);
+            assertEquals(2, container.getSerializedLogs().size());
+            assertTrue(deserializedLogs.isEmpty());
+            for (int i = 0; i < 2; i++) {
+                assertEquals(expectedLogs.get(i), logSerializer.deserializeLog(container.getSerializedLogs().get(i), null));
+            }
+            assertTrue(container.getTransmissionTargetTokens().isEmpty());
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 2, outputLogs);
+            assertEquals(1, outputLogs.size());
+            assertEquals(expectedLogs.get(2), outputLogs.get(0));
+
+            /* Deleting the batch deletes only the serialized logs. */
+            persistence.deleteLogs("test", id);
+            assertEquals(1, persistence.countLogs("test"));
+
+            /* Logs of requested types are also deserialized. */
+            persistence.clearPendingLogState();
+            container = new SerializedLogContainer();
+            id = persistence.getSerializedLogs("test", Collections.<String>emptyList(), 2, 0, container, Collections.singletonList(MOCK_LOG_TYPE), deserializedLogs);
+            assertNotNull(id);
+            assertEquals(1, container.getSerializedLogs().size());
+            assertEquals(1, deserializedLogs.size());
+            assertEquals(expectedLogs.get(2), deserializedLogs.get(0));
+        } finally {
+            persistence.close();
+        }
+    }
+
     private void getAllLogs(DatabasePersistence persistence, int numberOfLogs, int sizeForGetLogs) {
         List<Log> outputLogs = new ArrayList<>();
         int expected = 0;
@@ -1178,4 +1495,58 @@ public class DatabasePersistenceAndroidTest {
             persistence.close();
         }
     }
+
+    @Test
+    public void upgradeFromVersion6() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old version and schema. */
+        ContentValues schema = new ContentValues(SCHEMA);
+        schema.remove(DatabasePersistence.COLUMN_COMPRESSED_LOG);
+        schema.remove(DatabasePersistence.COLUMN_DEVICE_ID);
+        schema.remove(DatabasePersistence.COLUMN_LOG_SIZE);
+        String createLogsVersion6Sql = "CREATE TABLE IF NOT EXISTS `logs`" +
+                "(`oid` INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "`target_token` TEXT," +
+                "`type` TEXT," +
+                "`priority` INTEGER," +
+                "`log` TEXT," +
+                "`persistence_group` TEXT," +
+                "`target_key` TEXT);";
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DatabasePersistence.DATABASE, DatabasePersistence.TABLE, 6, schema, createLogsVersion6Sql, mock(DatabaseManager.Listener.class));
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+
+        /* Insert old data before upgrade. */
+        Log oldLog = AndroidTestUtils.generateMockLog();
+        try {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(DatabasePersistence.COLUMN_GROUP, "test");
+            contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(oldLog));
+            contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MOCK_LOG_TYPE);
+            contentValues.put(DatabasePersistence.COLUMN_PRIORITY, NORMAL);
+            databaseManager.put(contentValues, DatabasePersistence.COLUMN_PRIORITY);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Verify old data kept. */
+            assertEquals(1, persistence.countLogs("test"));
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs);
+            assertEquals(1, outputLogs.size());
+            assertEquals(oldLog, outputLogs.get(0));
+
+            /* Size of migrated logs is unknown. */
+            assertNull(getContentValues(persistence, "test").getAsInteger(DatabasePersistence.COLUMN_LOG_SIZE));
+        } finally {
+            persistence.close();
+        }
+    }
 }
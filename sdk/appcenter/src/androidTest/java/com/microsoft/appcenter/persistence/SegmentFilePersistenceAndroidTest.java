@@ -0,0 +1,560 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.internal.runner.junit4.AndroidJUnit4ClassRunner;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogWithProperties;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLogFactory;
+import com.microsoft.appcenter.persistence.Persistence.PersistenceException;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.Flags.CRITICAL;
+import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
+import static com.microsoft.appcenter.persistence.SegmentFilePersistence.SEGMENT_FILE_EXTENSION;
+import static com.microsoft.appcenter.test.TestUtils.generateString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("TryFinallyCanBeTryWithResources")
+@MediumTest
+@RunWith(AndroidJUnit4ClassRunner.class)
+public class SegmentFilePersistenceAndroidTest {
+
+    /**
+     * Maximum storage size in bytes for unit test case.
+     */
+    private static final int MAX_STORAGE_SIZE_IN_BYTES = 32 * 1024;
+
+    /**
+     * Number of logs for the throughput comparison.
+     */
+    private static final int THROUGHPUT_LOG_COUNT = 1000;
+
+    /**
+     * Context instance.
+     */
+    @SuppressLint("StaticFieldLeak")
+    private static Context sContext;
+
+    /**
+     * Segments directory.
+     */
+    private static File sDirectory;
+
+    @BeforeClass
+    public static void setUpClass() {
+        AppCenter.setLogLevel(android.util.Log.VERBOSE);
+        sContext = InstrumentationRegistry.getInstrumentation().getContext();
+        FileManager.initialize(sContext);
+        SharedPreferencesManager.initialize(sContext);
+        Constants.loadFromContext(sContext);
+        sDirectory = new File(sContext.getFilesDir(), "test_segments");
+    }
+
+    @Before
+    public void setUp() {
+
+        /* Clean up segments. */
+        FileManager.deleteDirectory(sDirectory);
+    }
+
+    private static SegmentFilePersistence createPersistence() {
+        SegmentFilePersistence persistence = new SegmentFilePersistence(sContext, sDirectory);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        logSerializer.addLogFactory(MockCommonSchemaLog.TYPE, new MockCommonSchemaLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        return persistence;
+    }
+
+    @Test
+    public void deleteLogs() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+
+            /* Generate a log and persist. */
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p1", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p1", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p2", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p3", NORMAL);
+            assertEquals(2, persistence.countLogs("test-p1"));
+            assertEquals(1, persistence.countLogs("test-p2"));
+            assertEquals(1, persistence.countLogs("test-p3"));
+
+            /* Get logs from persistence. */
+            List<Log> outputLogs1 = new ArrayList<>();
+            List<Log> outputLogs2 = new ArrayList<>();
+            String id = persistence.getLogs("test-p1", Collections.<String>emptyList(), 5, outputLogs1);
+            persistence.getLogs("test-p2", Collections.<String>emptyList(), 5, outputLogs2);
+            assertNotNull(id);
+            assertNotEquals("", id);
+            assertEquals(2, outputLogs1.size());
+            assertEquals(1, outputLogs2.size());
+
+            /* Deleting with the wrong group does nothing. */
+            persistence.deleteLogs("", id);
+            assertEquals(2, persistence.countLogs("test-p1"));
+
+            /* Delete. */
+            persistence.deleteLogs("test-p1", id);
+            assertEquals(0, persistence.countLogs("test-p1"));
+            assertEquals(1, persistence.countLogs("test-p2"));
+            assertEquals(1, persistence.countLogs("test-p3"));
+
+            /* Segment of a group without logs is removed. */
+            assertTrue(listSegments("test-p1").isEmpty());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void deleteLogsForGroup() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p1", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p1", NORMAL);
+            Log log3 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log3, "test-p2", NORMAL);
+            persistence.putLog(AndroidTestUtils.generateMockLog(), "test-p3", NORMAL);
+
+            /* Get logs from persistence. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test-p1", Collections.<String>emptyList(), 5, outputLogs));
+            assertNotNull(persistence.getLogs("test-p2", Collections.<String>emptyList(), 5, outputLogs));
+
+            /* Delete. */
+            persistence.deleteLogs("test-p1");
+            persistence.deleteLogs("test-p3");
+            outputLogs.clear();
+            assertNull(persistence.getLogs("test-p3", Collections.<String>emptyList(), 5, outputLogs));
+            assertEquals(0, outputLogs.size());
+
+            /* Verify one log still persists. */
+            persistence.clearPendingLogState();
+            persistence.getLogs("test-p2", Collections.<String>emptyList(), 5, outputLogs);
+            assertEquals(1, outputLogs.size());
+            assertEquals(log3, outputLogs.get(0));
+            assertEquals(0, persistence.countLogs("test-p1"));
+            assertEquals(1, persistence.countLogs("test-p2"));
+            assertEquals(0, persistence.countLogs("test-p3"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsWithNormalPriority() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            int numberOfLogs = 10;
+            int sizeForGetLogs = 4;
+            for (int i = 0; i < numberOfLogs; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            }
+
+            /* Get. */
+            getAllLogs(persistence, numberOfLogs, sizeForGetLogs);
+
+            /* Clear ids, we should be able to get the logs again in the same sequence. */
+            persistence.clearPendingLogState();
+            getAllLogs(persistence, numberOfLogs, sizeForGetLogs);
+            assertEquals(10, persistence.countLogs("test"));
+
+            /* Clear. Nothing to get after. */
+            persistence.deleteLogs("test");
+            List<Log> outputLogs = new ArrayList<>();
+            assertNull(persistence.getLogs("test", Collections.<String>emptyList(), sizeForGetLogs, outputLogs));
+            assertTrue(outputLogs.isEmpty());
+            assertEquals(0, persistence.countLogs("test"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsWithSizeLimit() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            for (int i = 0; i < 10; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            }
+
+            /* The first log is returned even if larger than the limit. */
+            List<Log> outputLogs = new ArrayList<>();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 10, 1, outputLogs));
+            assertEquals(1, outputLogs.size());
+
+            /* The remaining logs fit in the total storage size. */
+            outputLogs.clear();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 10, persistence.getStorageSize(), outputLogs));
+            assertEquals(9, outputLogs.size());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    private void getAllLogs(SegmentFilePersistence persistence, int numberOfLogs, int sizeForGetLogs) {
+        List<Log> outputLogs = new ArrayList<>();
+        int expected = 0;
+        do {
+            numberOfLogs -= expected;
+            persistence.getLogs("test", Collections.<String>emptyList(), sizeForGetLogs, outputLogs);
+            expected = Math.min(Math.max(numberOfLogs, 0), sizeForGetLogs);
+            assertEquals(expected, outputLogs.size());
+            outputLogs.clear();
+        } while (numberOfLogs > 0);
+
+        /* Get should be 0 now. */
+        persistence.getLogs("test", Collections.<String>emptyList(), sizeForGetLogs, outputLogs);
+        assertEquals(0, outputLogs.size());
+    }
+
+    @Test
+    public void getLogsWithMixedPriorities() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            Log log1 = AndroidTestUtils.generateMockLog();
+            Log log2 = AndroidTestUtils.generateMockLog();
+            Log log3 = AndroidTestUtils.generateMockLog();
+            Log log4 = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log1, "test", NORMAL);
+            persistence.putLog(log2, "test", CRITICAL);
+            persistence.putLog(log3, "test", NORMAL);
+            persistence.putLog(log4, "test", CRITICAL);
+
+            /* Critical logs first, then insertion order. */
+            List<Log> actualLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 4, actualLogs);
+            assertEquals(Arrays.asList(log2, log4, log1, log3), actualLogs);
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsFilteringOutPausedTargetKeys() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            int numberOfLogsPerKey = 10;
+            generateCsLogsWithIKey(persistence, "1", numberOfLogsPerKey);
+            generateCsLogsWithIKey(persistence, "2", numberOfLogsPerKey);
+            generateCsLogsWithIKey(persistence, "3", numberOfLogsPerKey);
+
+            /* Get logs without disabled keys. */
+            List<Log> outLogs = new ArrayList<>();
+            int limit = numberOfLogsPerKey * 3;
+            assertNotNull(persistence.getLogs("test", Arrays.asList("1", "2"), limit, outLogs));
+            assertEquals(numberOfLogsPerKey, outLogs.size());
+            assertEquals(limit, persistence.countLogs("test"));
+            for (Log log : outLogs) {
+                assertEquals("3", ((CommonSchemaLog) log).getIKey());
+                assertEquals(Collections.singleton("3-token"), log.getTransmissionTargetTokens());
+            }
+
+            /* Calling a second time should return nothing since the batch is in progress. */
+            outLogs.clear();
+            assertNull(persistence.getLogs("test", Arrays.asList("1", "2"), limit, outLogs));
+
+            /* Without filtering, we get the paused logs. */
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), limit, outLogs));
+            assertEquals(numberOfLogsPerKey * 2, outLogs.size());
+            for (Log log : outLogs) {
+                assertNotEquals("3", ((CommonSchemaLog) log).getIKey());
+            }
+        } finally {
+            persistence.close();
+        }
+    }
+
+    private void generateCsLogsWithIKey(SegmentFilePersistence persistence, String iKey, int numberOfLogsPerKey) throws PersistenceException {
+        for (int i = 0; i < numberOfLogsPerKey; i++) {
+            CommonSchemaLog log = new MockCommonSchemaLog();
+            log.setVer("3.0");
+            log.setName("test");
+            log.setTimestamp(new Date());
+            log.setIKey(iKey);
+            log.addTransmissionTarget(iKey + "-token");
+            persistence.putLog(log, "test", NORMAL);
+        }
+    }
+
+    @Test
+    public void reloadSkipsDeletedLogs() throws PersistenceException {
+        List<Log> logs = new ArrayList<>();
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            for (int i = 0; i < 5; i++) {
+                Log log = AndroidTestUtils.generateMockLog();
+                logs.add(log);
+                persistence.putLog(log, "test", NORMAL);
+            }
+
+            /* Delete the first 2 logs. */
+            List<Log> outLogs = new ArrayList<>();
+            String batchId = persistence.getLogs("test", Collections.<String>emptyList(), 2, outLogs);
+            assertNotNull(batchId);
+            persistence.deleteLogs("test", batchId);
+        } finally {
+            persistence.close();
+        }
+
+        /* Reload from files, only the last 3 logs remain. */
+        persistence = createPersistence();
+        try {
+            assertEquals(3, persistence.countLogs("test"));
+            List<Log> outLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 10, outLogs);
+            assertEquals(logs.subList(2, 5), outLogs);
+
+            /* New logs go to a new segment after the previous ones. */
+            Log log = AndroidTestUtils.generateMockLog();
+            persistence.putLog(log, "test", NORMAL);
+            assertEquals(2, listSegments("test").size());
+            persistence.clearPendingLogState();
+            outLogs.clear();
+            persistence.getLogs("test", Collections.<String>emptyList(), 10, outLogs);
+            assertEquals(4, outLogs.size());
+            assertEquals(log, outLogs.get(3));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void reloadTruncatesPartialRecord() throws PersistenceException, IOException {
+        SegmentFilePersistence persistence = createPersistence();
+        Log log = AndroidTestUtils.generateMockLog();
+        try {
+            persistence.putLog(log, "test", NORMAL);
+        } finally {
+            persistence.close();
+        }
+
+        /* Simulate a crash while appending a record. */
+        File segment = listSegments("test").get(0);
+        long length = segment.length();
+        FileOutputStream output = new FileOutputStream(segment, true);
+        try {
+            output.write(new byte[]{0, 0, 0, 10, 0, 0, 1});
+        } finally {
+            output.close();
+        }
+
+        /* The partial record is ignored and removed. */
+        persistence = createPersistence();
+        try {
+            List<Log> outLogs = new ArrayList<>();
+            persistence.getLogs("test", Collections.<String>emptyList(), 10, outLogs);
+            assertEquals(Collections.singletonList(log), outLogs);
+            assertEquals(length, segment.length());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putTooManyLogsEvictsOldestSegments() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        Persistence.EvictionListener evictionListener = mock(Persistence.EvictionListener.class);
+        persistence.setEvictionListener(evictionListener);
+        try {
+            assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+            int numberOfLogs = 200;
+            for (int i = 0; i < numberOfLogs; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            }
+            assertTrue(persistence.getStorageSize() <= MAX_STORAGE_SIZE_IN_BYTES);
+            int count = persistence.countLogs("test");
+            assertTrue(count > 0 && count < numberOfLogs);
+            verify(evictionListener).onLogsEvicted(eq("test"), anyInt(), anyLong());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putTooManyLogsDoesNotEvictPendingLogs() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+            Log pendingLog = AndroidTestUtils.generateMockLog();
+            persistence.putLog(pendingLog, "test", NORMAL);
+            List<Log> outputLogs = new ArrayList<>();
+            String batchId = persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs);
+            assertNotNull(batchId);
+
+            /* Evict while the first log is being sent. */
+            for (int i = 0; i < 200; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            }
+            assertTrue(persistence.getStorageSize() <= MAX_STORAGE_SIZE_IN_BYTES);
+
+            /* The log being sent is still there after releasing it. */
+            persistence.releaseLogs("test", batchId);
+            outputLogs.clear();
+            assertNotNull(persistence.getLogs("test", Collections.<String>emptyList(), 1, outputLogs));
+            assertEquals(1, outputLogs.size());
+            assertEquals(pendingLog.getSid(), outputLogs.get(0).getSid());
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void setMaxStorageSizeFailsIfLogsDoNotFit() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            for (int i = 0; i < 20; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", NORMAL);
+            }
+            long storageSize = persistence.getStorageSize();
+            assertFalse(persistence.setMaxStorageSize(storageSize - 1));
+            assertEquals(20, persistence.countLogs("test"));
+            assertTrue(persistence.setMaxStorageSize(storageSize));
+            assertEquals(20, persistence.countLogs("test"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void putNormalLogFailsIfFullOfCritical() throws PersistenceException {
+        SegmentFilePersistence persistence = createPersistence();
+        try {
+            assertTrue(persistence.setMaxStorageSize(MAX_STORAGE_SIZE_IN_BYTES));
+
+            /* Fill storage with critical logs, they evict each other. */
+            for (int i = 0; i < 200; i++) {
+                persistence.putLog(AndroidTestUtils.generateMockLog(), "test", CRITICAL);
+            }
+            int criticalCount = persistence.countLogs("test");
+            Persistence.EvictionListener evictionListener = mock(Persistence.EvictionListener.class);
+            persistence.setEvictionListener(evictionListener);
+
+            /* A normal log that does not fit cannot evict critical ones. */
+            LogWithProperties log = AndroidTestUtils.generateMockLog();
+            Map<String, String> properties = new HashMap<>();
+            properties.put("key", generateString(MAX_STORAGE_SIZE_IN_BYTES / 2, 'x'));
+            log.setProperties(properties);
+            try {
+                persistence.putLog(log, "test", NORMAL);
+                fail("putLog was expected to fail");
+            } catch (PersistenceException ignore) {
+            }
+            verify(evictionListener, never()).onLogsEvicted(anyString(), anyInt(), anyLong());
+            assertEquals(criticalCount, persistence.countLogs("test"));
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void throughputComparedToDatabase() throws PersistenceException {
+        sContext.deleteDatabase(DatabasePersistence.DATABASE);
+        DatabasePersistence databasePersistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        databasePersistence.setLogSerializer(logSerializer);
+        SegmentFilePersistence segmentPersistence = createPersistence();
+        try {
+            long databaseTime = measureThroughput(databasePersistence);
+            long segmentTime = measureThroughput(segmentPersistence);
+            AppCenterLog.info(LOG_TAG, "Put, get and delete of " + THROUGHPUT_LOG_COUNT + " logs took " +
+                    databaseTime + "ms with database and " + segmentTime + "ms with segment files.");
+        } finally {
+            databasePersistence.close();
+            segmentPersistence.close();
+            sContext.deleteDatabase(DatabasePersistence.DATABASE);
+        }
+    }
+
+    /**
+     * Puts logs one by one, then reads and deletes them by batches like the channel does.
+     *
+     * @return elapsed time in milliseconds.
+     */
+    private static long measureThroughput(Persistence persistence) throws PersistenceException {
+        List<Log> logs = new ArrayList<>(THROUGHPUT_LOG_COUNT);
+        for (int i = 0; i < THROUGHPUT_LOG_COUNT; i++) {
+            logs.add(AndroidTestUtils.generateMockLog());
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        for (Log log : logs) {
+            persistence.putLog(log, "throughput", NORMAL);
+        }
+        List<Log> outLogs = new ArrayList<>();
+        String batchId;
+        while ((batchId = persistence.getLogs("throughput", Collections.<String>emptyList(), 50, outLogs)) != null) {
+            persistence.deleteLogs("throughput", batchId);
+        }
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        assertEquals(THROUGHPUT_LOG_COUNT, outLogs.size());
+        assertEquals(0, persistence.countLogs("throughput"));
+        return elapsed;
+    }
+
+    private static List<File> listSegments(String group) {
+        List<File> segments = new ArrayList<>();
+        File[] files = new File(sDirectory, group).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SEGMENT_FILE_EXTENSION)) {
+                    segments.add(file);
+                }
+            }
+        }
+        return segments;
+    }
+}
@@ -16,10 +16,12 @@ import androidx.test.internal.runner.junit4.AndroidJUnit4ClassRunner;
 import androidx.test.platform.app.InstrumentationRegistry;
 import androidx.test.filters.SmallTest;
 
+
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 
 import java.util.Random;
 
@@ -30,8 +32,14 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @SuppressWarnings("unused")
 @SmallTest
@@ -248,6 +256,118 @@ public class DatabaseManagerAndroidTest {
         verify(listener).onCreate(any(SQLiteDatabase.class));
     }
 
+    @Test
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    public void databaseManagerWithWriteAheadLogging() {
+
+        /* Get instance to access database. */
+        DatabaseManager.Listener listener = mock(DatabaseManager.Listener.class);
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "databaseManager", 1, mSchema, CREATE_TEST_SQL, listener);
+        databaseManager.setWriteAheadLoggingEnabled(true);
+        try {
+
+            /* Check pragmas. */
+            Cursor cursor = databaseManager.getDatabase().rawQuery("PRAGMA journal_mode", null);
+            try {
+                assertTrue(cursor.moveToNext());
+                assertEquals("wal", cursor.getString(0).toLowerCase());
+            } finally {
+                cursor.close();
+            }
+
+            /* Same behavior as default settings with compiled statements. */
+            runDatabaseManagerTest(databaseManager);
+
+            /* Statements are recompiled after database is reopened. */
+            databaseManager.close();
+            runDatabaseManagerTest(databaseManager);
+        } finally {
+
+            /* Close. */
+            databaseManager.close();
+        }
+        verify(listener).onCreate(any(SQLiteDatabase.class));
+    }
+
+    @Test
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    public void upgradeWithMigrations() {
+
+        /* Create database at version 1 with some data. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "databaseManager", 1, mSchema, CREATE_TEST_SQL, mock(DatabaseManager.Listener.class));
+        ContentValues value = generateContentValues();
+        long id;
+        try {
+            id = databaseManager.put(value, "COL_INTEGER");
+            assertTrue(id >= 0);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade to version 3 with a migration for each version. */
+        DatabaseManager.Migration migration2 = spy(new DatabaseManager.Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE `databaseManager` ADD COLUMN `COL_EXTRA` INTEGER");
+            }
+        });
+        DatabaseManager.Migration migration3 = spy(new DatabaseManager.Migration() {
+
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("CREATE INDEX `ix_extra` ON `databaseManager` (`COL_EXTRA`)");
+            }
+        });
+        DatabaseManager.Listener listener = mock(DatabaseManager.Listener.class);
+        when(listener.getMigration(2)).thenReturn(migration2);
+        when(listener.getMigration(3)).thenReturn(migration3);
+        databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "databaseManager", 3, mSchema, CREATE_TEST_SQL, listener);
+        try {
+
+            /* Data is kept and migrations were applied in order. */
+            assertContentValuesEquals(value, get(databaseManager, id));
+            Cursor cursor = databaseManager.getDatabase().rawQuery("SELECT `COL_EXTRA` FROM `databaseManager`", null);
+            try {
+                assertEquals(1, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+            assertTrue(checkIndexExists(databaseManager, "ix_extra"));
+        } finally {
+            databaseManager.close();
+        }
+        InOrder inOrder = inOrder(migration2, migration3);
+        inOrder.verify(migration2).migrate(any(SQLiteDatabase.class));
+        inOrder.verify(migration3).migrate(any(SQLiteDatabase.class));
+        verify(listener, never()).onUpgrade(any(SQLiteDatabase.class), anyInt(), anyInt());
+    }
+
+    @Test
+    public void upgradeWithMissingMigration() {
+
+        /* Create database at version 1. */
+        DatabaseManager databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "databaseManager", 1, mSchema, CREATE_TEST_SQL, mock(DatabaseManager.Listener.class));
+        try {
+            assertTrue(databaseManager.put(generateContentValues(), "COL_INTEGER") >= 0);
+        } finally {
+            databaseManager.close();
+        }
+
+        /* Upgrade to version 3 with no migration to version 2: no migration at all is applied. */
+        DatabaseManager.Migration migration3 = mock(DatabaseManager.Migration.class);
+        DatabaseManager.Listener listener = mock(DatabaseManager.Listener.class);
+        when(listener.getMigration(3)).thenReturn(migration3);
+        databaseManager = new DatabaseManager(sContext, DATABASE_NAME, "databaseManager", 3, mSchema, CREATE_TEST_SQL, listener);
+        try {
+            databaseManager.getDatabase();
+        } finally {
+            databaseManager.close();
+        }
+        verify(listener).onUpgrade(any(SQLiteDatabase.class), eq(1), eq(3));
+        verify(migration3, never()).migrate(any(SQLiteDatabase.class));
+    }
+
     @Test
     public void setMaximumSize() {
 
@@ -278,11 +398,23 @@ public class DatabaseManagerAndroidTest {
         }
     }
 
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    private boolean checkIndexExists(DatabaseManager databaseManager, String indexName) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere("type = 'index' AND name = ?");
+        Cursor cursor = databaseManager.getCursor("sqlite_master", builder, new String[]{"name"}, new String[]{indexName}, null, null, null);
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @SuppressWarnings("TryFinallyCanBeTryWithResources")
     private boolean checkTableExists(DatabaseManager databaseManager, String tableName) {
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
         builder.appendWhere("tbl_name = ?");
-        Cursor cursor = databaseManager.getCursor("sqlite_master", builder, new String[]{"tbl_name"}, new String[]{tableName}, null);
+        Cursor cursor = databaseManager.getCursor("sqlite_master", builder, new String[]{"tbl_name"}, new String[]{tableName}, null, null, null);
         try {
             return cursor.getCount() > 0;
         } finally {
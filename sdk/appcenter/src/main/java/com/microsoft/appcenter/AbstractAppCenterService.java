@@ -153,6 +153,7 @@ public abstract class AbstractAppCenterService implements AppCenterService {
             /* Register service to channel on enabling. */
             if (enabled) {
                 mChannel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
+                applyGroupPriority(mChannel, groupName);
             }
 
             /* Otherwise, clear all persisted logs and remove a group for the service. */
@@ -206,6 +207,7 @@ public abstract class AbstractAppCenterService implements AppCenterService {
             /* Add a group to the channel if the service is enabled */
             if (enabled) {
                 channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), null, getChannelListener());
+                applyGroupPriority(channel, groupName);
             }
 
             /* Otherwise, clear all persisted logs for the service. */
@@ -276,6 +278,28 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         return DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS;
     }
 
+    /**
+     * Gets the priority of the group when sharing request slots with other groups.
+     *
+     * @return One of the {@link Channel} <code>GROUP_PRIORITY_*</code> constants.
+     */
+    protected int getGroupPriority() {
+        return Channel.GROUP_PRIORITY_NORMAL;
+    }
+
+    /**
+     * Set the priority of a group that was just added, if not the default one.
+     *
+     * @param channel   channel.
+     * @param groupName group name.
+     */
+    private void applyGroupPriority(@NonNull Channel channel, String groupName) {
+        int priority = getGroupPriority();
+        if (priority != Channel.GROUP_PRIORITY_NORMAL) {
+            channel.setGroupPriority(groupName, priority, 1);
+        }
+    }
+
     /**
      * Gets a listener which will be called when channel completes synchronization.
      *
@@ -53,6 +53,8 @@ import java.util.UUID;
 
 import static android.content.pm.ApplicationInfo.FLAG_DEBUGGABLE;
 import static android.util.Log.VERBOSE;
+import static com.microsoft.appcenter.Constants.DEFAULT_MAX_PARALLEL_REQUESTS;
+import static com.microsoft.appcenter.Constants.DEFAULT_TRANSMISSION_MAX_LATENCY;
 import static com.microsoft.appcenter.Constants.DEFAULT_TRIGGER_COUNT;
 import static com.microsoft.appcenter.Constants.DEFAULT_TRIGGER_INTERVAL;
 import static com.microsoft.appcenter.Constants.DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS;
@@ -217,6 +219,31 @@ public class AppCenter {
      */
     private DefaultAppCenterFuture<Boolean> mSetMaxStorageSizeFuture;
 
+    /**
+     * Storage backend, one of the {@link StorageBackend} constants.
+     */
+    private int mStorageBackend = StorageBackend.DATABASE;
+
+    /**
+     * Whether the storage database uses write-ahead logging and related tuning.
+     */
+    private boolean mStorageWriteAheadLoggingEnabled;
+
+    /**
+     * Whether log payloads are compressed in the storage database.
+     */
+    private boolean mStorageCompressionEnabled;
+
+    /**
+     * Maximum time in ms timed batches are deferred while the radio of a metered network is idle.
+     */
+    private long mTransmissionMaxLatency = DEFAULT_TRANSMISSION_MAX_LATENCY;
+
+    /**
+     * Maximum number of requests sent in parallel by all services.
+     */
+    private int mMaxParallelRequests = DEFAULT_MAX_PARALLEL_REQUESTS;
+
     /**
      * Redirect selected traffic to One Collector.
      */
@@ -465,6 +492,18 @@ public class AppCenter {
         return getInstance().getInstanceInstallIdAsync();
     }
 
+    /**
+     * Send all pending logs without waiting for the batch time interval and with the maximum number
+     * of requests in parallel, until there are no more logs to send or sending stops because the SDK
+     * is disabled, network requests are not allowed or a request failed.
+     *
+     * @return future with result being the number of logs sent and failed.
+     * @see AppCenterFuture
+     */
+    public static AppCenterFuture<FlushResult> flush() {
+        return getInstance().flushInstanceAsync();
+    }
+
     /**
      * Set the SQLite database storage size. Returns true if the operation succeeded. If the new size
      * is smaller than the previous size (database is shrinking) and the capacity is greater than
@@ -481,6 +520,63 @@ public class AppCenter {
         return getInstance().setInstanceMaxStorageSizeAsync(storageSizeInBytes);
     }
 
+    /**
+     * Set the storage backend used to persist logs, one of the {@link StorageBackend} constants.
+     * Can only be called before App Center is configured or started, or before the first service is started from a library.
+     *
+     * @param storageBackend the storage backend.
+     */
+    public static void setStorageBackend(int storageBackend) {
+        getInstance().setInstanceStorageBackend(storageBackend);
+    }
+
+    /**
+     * Tune the storage database for high log volume: write-ahead logging so that reads do not block writes,
+     * normal synchronization and larger page cache.
+     * Disabled by default. Only applies to the {@link StorageBackend#DATABASE} backend.
+     * Can only be called before App Center is configured or started, or before the first service is started from a library.
+     *
+     * @param enabled true to enable the tuning.
+     */
+    public static void setStorageWriteAheadLoggingEnabled(boolean enabled) {
+        getInstance().setInstanceStorageWriteAheadLoggingEnabled(enabled);
+    }
+
+    /**
+     * Compress log payloads stored in the database using a preset dictionary,
+     * so that more logs fit in the maximum storage size when offline, at the cost of CPU time.
+     * Disabled by default. Only applies to the {@link StorageBackend#DATABASE} backend.
+     * Can only be called before App Center is configured or started, or before the first service is started from a library.
+     *
+     * @param enabled true to enable compression.
+     */
+    public static void setStorageCompressionEnabled(boolean enabled) {
+        getInstance().setInstanceStorageCompressionEnabled(enabled);
+    }
+
+    /**
+     * Defer logs sent on a timer while the radio of a metered network is idle, so that they are sent
+     * along with other traffic instead of waking the radio up. Disabled by default.
+     * Can only be called before App Center is configured or started, or before the first service is started from a library.
+     *
+     * @param maxLatencyInMillis maximum time in milliseconds a batch can be deferred, 0 to disable deferral.
+     */
+    public static void setTransmissionMaxLatency(long maxLatencyInMillis) {
+        getInstance().setInstanceTransmissionMaxLatency(maxLatencyInMillis);
+    }
+
+    /**
+     * Limit the number of requests sent in parallel by all services, 6 by default.
+     * When the limit is reached, batches wait for a free request in priority order,
+     * the HTTP client runs exactly that many requests at once so that they never wait behind other calls.
+     * Can only be called before App Center is configured or started, or before the first service is started from a library.
+     *
+     * @param maxParallelRequests maximum number of requests in parallel, at least 1.
+     */
+    public static void setMaxParallelRequests(int maxParallelRequests) {
+        getInstance().setInstanceMaxParallelRequests(maxParallelRequests);
+    }
+
     /**
      * {@link #setUserId(String)} implementation at instance level.
      */
@@ -663,6 +759,83 @@ public class AppCenter {
         return setMaxStorageSizeFuture;
     }
 
+    /**
+     * {@link #setStorageBackend(int)} implementation at instance level.
+     *
+     * @param storageBackend the storage backend.
+     */
+    private synchronized void setInstanceStorageBackend(int storageBackend) {
+        if (isInstanceConfigured()) {
+            AppCenterLog.error(LOG_TAG, "setStorageBackend may not be called after App Center has been configured.");
+            return;
+        }
+        if (storageBackend != StorageBackend.DATABASE && storageBackend != StorageBackend.SEGMENT_FILES) {
+            AppCenterLog.error(LOG_TAG, "Invalid storage backend: " + storageBackend);
+            return;
+        }
+        mStorageBackend = storageBackend;
+    }
+
+    /**
+     * {@link #setStorageWriteAheadLoggingEnabled(boolean)} implementation at instance level.
+     *
+     * @param enabled true to enable the tuning.
+     */
+    private synchronized void setInstanceStorageWriteAheadLoggingEnabled(boolean enabled) {
+        if (isInstanceConfigured()) {
+            AppCenterLog.error(LOG_TAG, "setStorageWriteAheadLoggingEnabled may not be called after App Center has been configured.");
+            return;
+        }
+        mStorageWriteAheadLoggingEnabled = enabled;
+    }
+
+    /**
+     * {@link #setStorageCompressionEnabled(boolean)} implementation at instance level.
+     *
+     * @param enabled true to enable compression.
+     */
+    private synchronized void setInstanceStorageCompressionEnabled(boolean enabled) {
+        if (isInstanceConfigured()) {
+            AppCenterLog.error(LOG_TAG, "setStorageCompressionEnabled may not be called after App Center has been configured.");
+            return;
+        }
+        mStorageCompressionEnabled = enabled;
+    }
+
+    /**
+     * {@link #setTransmissionMaxLatency(long)} implementation at instance level.
+     *
+     * @param maxLatencyInMillis maximum latency in milliseconds.
+     */
+    private synchronized void setInstanceTransmissionMaxLatency(long maxLatencyInMillis) {
+        if (isInstanceConfigured()) {
+            AppCenterLog.error(LOG_TAG, "setTransmissionMaxLatency may not be called after App Center has been configured.");
+            return;
+        }
+        if (maxLatencyInMillis < 0) {
+            AppCenterLog.error(LOG_TAG, "Invalid transmission max latency: " + maxLatencyInMillis);
+            return;
+        }
+        mTransmissionMaxLatency = maxLatencyInMillis;
+    }
+
+    /**
+     * {@link #setMaxParallelRequests(int)} implementation at instance level.
+     *
+     * @param maxParallelRequests maximum number of requests in parallel.
+     */
+    private synchronized void setInstanceMaxParallelRequests(int maxParallelRequests) {
+        if (isInstanceConfigured()) {
+            AppCenterLog.error(LOG_TAG, "setMaxParallelRequests may not be called after App Center has been configured.");
+            return;
+        }
+        if (maxParallelRequests < 1) {
+            AppCenterLog.error(LOG_TAG, "Invalid maximum parallel requests: " + maxParallelRequests);
+            return;
+        }
+        mMaxParallelRequests = maxParallelRequests;
+    }
+
     /**
      * {@link #isConfigured()} implementation at instance level.
      */
@@ -861,14 +1034,15 @@ public class AppCenter {
         /* Instantiate HTTP client if it doesn't exist as a dependency. */
         HttpClient httpClient = DependencyConfiguration.getHttpClient();
         if (httpClient == null) {
-            httpClient = createHttpClient(mApplication);
+            httpClient = createHttpClient(mApplication, true, mMaxParallelRequests);
         }
 
         /* Init channel. */
         mLogSerializer = new DefaultLogSerializer();
         mLogSerializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
         mLogSerializer.addLogFactory(CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
-        mChannel = new DefaultChannel(mApplication, mAppSecret, mLogSerializer, httpClient, mHandler);
+        mChannel = new DefaultChannel(mApplication, mAppSecret, mLogSerializer, httpClient, mHandler,
+                mStorageBackend, mStorageWriteAheadLoggingEnabled, mStorageCompressionEnabled);
 
         /* Complete set maximum storage size future if starting from app. */
         if (configureFromApp) {
@@ -878,6 +1052,8 @@ public class AppCenter {
             /* If from library, we apply storage size only later, we have to try using the default value in the mean time. */
             mChannel.setMaxStorageSize(DEFAULT_MAX_STORAGE_SIZE_IN_BYTES);
         }
+        mChannel.setMaxParallelRequests(mMaxParallelRequests);
+        mChannel.setTransmissionMaxLatency(mTransmissionMaxLatency);
         mChannel.setEnabled(enabled);
         mChannel.addGroup(CORE_GROUP, DEFAULT_TRIGGER_COUNT, DEFAULT_TRIGGER_INTERVAL, DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS, null, null);
         mOneCollectorChannelListener = new OneCollectorChannelListener(mChannel, mLogSerializer, httpClient, IdHelper.getInstallId());
@@ -1232,6 +1408,31 @@ public class AppCenter {
         return future;
     }
 
+    /**
+     * Implements {@link #flush()}.
+     */
+    private synchronized AppCenterFuture<FlushResult> flushInstanceAsync() {
+        final DefaultAppCenterFuture<FlushResult> future = new DefaultAppCenterFuture<>();
+        if (checkPrecondition()) {
+            mAppCenterHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    mChannel.flushAll(future);
+                }
+            }, new Runnable() {
+
+                @Override
+                public void run() {
+                    future.complete(new FlushResult(0, 0));
+                }
+            });
+        } else {
+            future.complete(new FlushResult(0, 0));
+        }
+        return future;
+    }
+
     /**
      * Set the user identifier for logs sent for the default target token when the secret
      * passed in {@link AppCenter#start(Application, String, Class[])} contains "target={targetToken}".
@@ -32,6 +32,17 @@ public class Constants {
      */
     static final int DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS = 3;
 
+    /**
+     * Maximum number of requests being sent for all groups.
+     */
+    static final int DEFAULT_MAX_PARALLEL_REQUESTS = 6;
+
+    /**
+     * Maximum time in ms timed batches are deferred while the radio of a metered network is idle,
+     * 0 not to defer them unless enabled by {@link AppCenter#setTransmissionMaxLatency(long)}.
+     */
+    static final long DEFAULT_TRANSMISSION_MAX_LATENCY = 0;
+
     /**
      * Common schema prefix separator used in various field values.
      */
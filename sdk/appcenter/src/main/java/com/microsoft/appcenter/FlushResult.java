@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter;
+
+/**
+ * Result of {@link AppCenter#flush()}.
+ */
+public class FlushResult {
+
+    /**
+     * Number of logs sent successfully.
+     */
+    private final int mSentLogCount;
+
+    /**
+     * Number of logs that failed to be sent.
+     */
+    private final int mFailedLogCount;
+
+    /**
+     * Init.
+     *
+     * @param sentLogCount   number of logs sent successfully.
+     * @param failedLogCount number of logs that failed to be sent.
+     */
+    public FlushResult(int sentLogCount, int failedLogCount) {
+        mSentLogCount = sentLogCount;
+        mFailedLogCount = failedLogCount;
+    }
+
+    /**
+     * Get the number of logs sent successfully.
+     *
+     * @return number of logs sent successfully.
+     */
+    public int getSentLogCount() {
+        return mSentLogCount;
+    }
+
+    /**
+     * Get the number of logs that failed to be sent, including logs that will be retried later.
+     *
+     * @return number of logs that failed to be sent.
+     */
+    public int getFailedLogCount() {
+        return mFailedLogCount;
+    }
+}
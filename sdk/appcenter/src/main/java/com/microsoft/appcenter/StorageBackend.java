@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter;
+
+/**
+ * Storage backends used to persist logs, see {@link AppCenter#setStorageBackend(int)}.
+ * Database options are set separately with {@link AppCenter#setStorageWriteAheadLoggingEnabled(boolean)}
+ * and {@link AppCenter#setStorageCompressionEnabled(boolean)}.
+ */
+public final class StorageBackend {
+
+    /**
+     * Logs are stored in a SQLite database, this is the default.
+     */
+    public static final int DATABASE = 0;
+
+    /**
+     * Logs are stored in append-only segment files instead of a SQLite database,
+     * for high log volume when logs are sent shortly after being written.
+     * Database options do not apply to this backend.
+     */
+    public static final int SEGMENT_FILES = 1;
+
+    private StorageBackend() {
+    }
+}
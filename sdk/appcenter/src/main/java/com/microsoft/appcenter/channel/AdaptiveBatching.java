@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Adjusts the batch size and the number of parallel batches of a group from observed requests:
+ * additive increase while full batches are sent fast, multiplicative decrease when a request is slow or fails.
+ * Request durations are compared to what their compressed size needs on a slow network,
+ * and batches stop growing in log count once their compressed size is large enough.
+ */
+class AdaptiveBatching {
+
+    /**
+     * Requests taking longer than this, in milliseconds, are considered congested.
+     */
+    @VisibleForTesting
+    static final long TARGET_LATENCY = 3000;
+
+    /**
+     * Throughput in bytes per second below which a request longer than {@link #TARGET_LATENCY} is considered congested.
+     */
+    @VisibleForTesting
+    static final long MIN_THROUGHPUT = 16 * 1024;
+
+    /**
+     * Compressed request size in bytes from which batches grow in parallelism rather than in log count.
+     */
+    @VisibleForTesting
+    static final long MAX_REQUEST_SIZE = 256 * 1024;
+
+    /**
+     * Number of logs added to the batch size after a full batch was sent fast.
+     */
+    @VisibleForTesting
+    static final int ADDITIVE_INCREASE = 5;
+
+    /**
+     * Minimum log count per batch.
+     */
+    private final int mMinLogsPerBatch;
+
+    /**
+     * Maximum log count per batch.
+     */
+    private final int mMaxLogsPerBatch;
+
+    /**
+     * Maximum number of batches in parallel.
+     */
+    private final int mMaxParallelBatches;
+
+    /**
+     * Current log count per batch.
+     */
+    private int mLogsPerBatch;
+
+    /**
+     * Current number of batches in parallel.
+     */
+    private int mParallelBatches = 1;
+
+    /**
+     * Init.
+     *
+     * @param minLogsPerBatch     minimum log count per batch.
+     * @param maxLogsPerBatch     maximum log count per batch.
+     * @param maxParallelBatches  maximum number of batches in parallel.
+     * @param initialLogsPerBatch initial log count per batch, bounded by the minimum and maximum.
+     */
+    AdaptiveBatching(int minLogsPerBatch, int maxLogsPerBatch, int maxParallelBatches, int initialLogsPerBatch) {
+        mMinLogsPerBatch = Math.max(1, minLogsPerBatch);
+        mMaxLogsPerBatch = Math.max(mMinLogsPerBatch, maxLogsPerBatch);
+        mMaxParallelBatches = Math.max(1, maxParallelBatches);
+        mLogsPerBatch = Math.max(mMinLogsPerBatch, Math.min(mMaxLogsPerBatch, initialLogsPerBatch));
+    }
+
+    /**
+     * Called when a batch was sent successfully.
+     *
+     * @param batchSize   number of logs in the batch.
+     * @param requestSize compressed size in bytes of the request, negative if unknown.
+     * @param latency     time in milliseconds the request spent on the network, negative if unknown.
+     */
+    void onSuccess(int batchSize, long requestSize, long latency) {
+        long size = Math.max(0, requestSize);
+        if (latency > Math.max(TARGET_LATENCY, size * 1000 / MIN_THROUGHPUT)) {
+            decrease();
+        } else if (batchSize >= mLogsPerBatch) {
+
+            /* Only grow when there is a backlog, that is when batches are full. */
+            if (mLogsPerBatch < mMaxLogsPerBatch && size < MAX_REQUEST_SIZE) {
+                mLogsPerBatch = Math.min(mMaxLogsPerBatch, mLogsPerBatch + ADDITIVE_INCREASE);
+            } else if (mParallelBatches < mMaxParallelBatches) {
+                mParallelBatches++;
+            }
+        }
+    }
+
+    /**
+     * Called when sending a batch failed with a recoverable error such as a timeout.
+     */
+    void onFailure() {
+        decrease();
+    }
+
+    private void decrease() {
+        mLogsPerBatch = Math.max(mMinLogsPerBatch, mLogsPerBatch / 2);
+        mParallelBatches = Math.max(1, mParallelBatches / 2);
+    }
+
+    /**
+     * Gets the current log count per batch.
+     *
+     * @return current log count per batch.
+     */
+    int getLogsPerBatch() {
+        return mLogsPerBatch;
+    }
+
+    /**
+     * Gets the current number of batches in parallel.
+     *
+     * @return current number of batches in parallel.
+     */
+    int getParallelBatches() {
+        return mParallelBatches;
+    }
+}
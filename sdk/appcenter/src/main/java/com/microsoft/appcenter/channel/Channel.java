@@ -7,9 +7,14 @@ package com.microsoft.appcenter.channel;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.microsoft.appcenter.FlushResult;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
+
+import java.util.Collection;
 
 import static com.microsoft.appcenter.Flags.CRITICAL;
 import static com.microsoft.appcenter.Flags.NORMAL;
@@ -19,6 +24,26 @@ import static com.microsoft.appcenter.Flags.NORMAL;
  */
 public interface Channel {
 
+    /**
+     * Priority of groups whose logs can wait for the logs of other groups.
+     */
+    int GROUP_PRIORITY_LOW = 0;
+
+    /**
+     * Default priority of groups.
+     */
+    int GROUP_PRIORITY_NORMAL = 1;
+
+    /**
+     * Priority of groups sending critical logs.
+     */
+    int GROUP_PRIORITY_HIGH = 2;
+
+    /**
+     * Priority of groups whose logs must be sent before any other, such as crash reports.
+     */
+    int GROUP_PRIORITY_HIGHEST = 3;
+
     /**
      * Set app secret. Intended usage is to use that only if there was no app secret at initialization time.
      * The behavior is undefined if trying to update app secret a second time.
@@ -47,6 +72,127 @@ public interface Channel {
      */
     void addGroup(String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, Ingestion ingestion, GroupListener groupListener);
 
+    /**
+     * Add a group for logs to be persisted and sent with batches also limited in size.
+     *
+     * @param groupName          the name of a group.
+     * @param maxLogsPerBatch    maximum log count per batch.
+     * @param maxBytesPerBatch   maximum size in bytes of serialized logs per batch, 0 for no limit.
+     *                           A log larger than this limit is sent alone.
+     * @param batchTimeInterval  time interval for a next batch.
+     * @param maxParallelBatches maximum number of batches in parallel.
+     * @param ingestion          ingestion for the channel. If null then the default ingestion will be used.
+     * @param groupListener      a listener for a service.
+     */
+    void addGroup(String groupName, int maxLogsPerBatch, long maxBytesPerBatch, long batchTimeInterval, int maxParallelBatches, Ingestion ingestion, GroupListener groupListener);
+
+    /**
+     * Enable adaptive batching for a group: the log count per batch and the number of parallel batches
+     * grow additively while full batches are sent fast and are halved when a request is slow or fails.
+     * Batches start with the log count per batch the group was added with, bounded by the given limits.
+     *
+     * @param groupName          the name of a group.
+     * @param minLogsPerBatch    minimum log count per batch.
+     * @param maxLogsPerBatch    maximum log count per batch.
+     * @param maxParallelBatches maximum number of batches in parallel.
+     */
+    void enableAdaptiveBatching(String groupName, int minLogsPerBatch, int maxLogsPerBatch, int maxParallelBatches);
+
+    /**
+     * Disable adaptive batching for a group, restoring the values the group was added with.
+     *
+     * @param groupName the name of a group.
+     */
+    void disableAdaptiveBatching(String groupName);
+
+    /**
+     * Get the current maximum log count per batch of a group.
+     *
+     * @param groupName the name of a group.
+     * @return log count per batch, or 0 if the group does not exist.
+     */
+    int getMaxLogsPerBatch(String groupName);
+
+    /**
+     * Get the current maximum number of batches in parallel of a group.
+     *
+     * @param groupName the name of a group.
+     * @return number of batches in parallel, or 0 if the group does not exist.
+     */
+    int getMaxParallelBatches(String groupName);
+
+    /**
+     * Enable or disable prefetching for a group: when the maximum number of batches are being sent
+     * and a full batch is pending, the next batch is read from storage so that it is sent as soon as
+     * a request completes. A prefetched batch is sent even if a target key is paused in the meantime,
+     * like batches already being sent. Groups being flushed always prefetch.
+     *
+     * @param groupName the name of a group.
+     * @param enabled   true to enable prefetching, false to disable it.
+     */
+    void setPrefetchEnabled(String groupName, boolean enabled);
+
+    /**
+     * Limit the number of requests sent in parallel by all groups. When the limit is reached,
+     * groups waiting to send a batch get the next free request slot by priority, then in
+     * proportion of their weights. A group waiting for too long is served before any other.
+     *
+     * @param maxParallelRequests maximum number of requests in parallel, 0 for no limit.
+     */
+    void setMaxParallelRequests(int maxParallelRequests);
+
+    /**
+     * Set the priority and the weight of a group when sharing the request slots limited by
+     * {@link #setMaxParallelRequests(int)}. Groups have {@link #GROUP_PRIORITY_NORMAL} and a weight of 1 by default.
+     *
+     * @param groupName the name of a group.
+     * @param priority  one of the <code>GROUP_PRIORITY_*</code> constants, higher priorities are served first.
+     * @param weight    share of request slots among groups of the same priority, at least 1.
+     */
+    void setGroupPriority(String groupName, int priority, int weight);
+
+    /**
+     * Defer the timed batches of groups below {@link #GROUP_PRIORITY_HIGH} while on a metered network whose radio is idle,
+     * so that they are sent along with other network traffic or with the batches of other groups instead of waking the radio up.
+     * Full batches and flushes are never deferred.
+     *
+     * @param maxLatency maximum time in ms a batch can be deferred, 0 to disable deferring.
+     */
+    void setTransmissionMaxLatency(long maxLatency);
+
+    /**
+     * Get the number of requests sent while the radio of a metered network was idle.
+     *
+     * @return number of radio wake-ups caused by sending logs.
+     */
+    int getRadioWakeupCount();
+
+    /**
+     * Get statistics about the time a group waited for request slots.
+     *
+     * @param groupName the name of a group.
+     * @return the statistics, null if the group does not exist.
+     */
+    @Nullable
+    SchedulingStatistics getSchedulingStatistics(String groupName);
+
+    /**
+     * Send the pending logs of a group without waiting for the batch time interval and with the
+     * maximum number of batches in parallel, until there are no more pending logs or sending stops
+     * (disabled, paused, offline or failed request).
+     *
+     * @param groupName the name of a group.
+     * @param future    future completed with the number of sent and failed logs, empty if the group does not exist.
+     */
+    void flush(String groupName, DefaultAppCenterFuture<FlushResult> future);
+
+    /**
+     * Send the pending logs of all groups as {@link #flush(String, DefaultAppCenterFuture)} does.
+     *
+     * @param future future completed with the number of sent and failed logs of all groups.
+     */
+    void flushAll(DefaultAppCenterFuture<FlushResult> future);
+
     /**
      * Remove a group for logs.
      *
@@ -248,4 +394,21 @@ public interface Channel {
          */
         void onFailure(Log log, Exception e);
     }
+
+    /**
+     * Group listener that only needs callbacks for some log types.
+     * Logs of other types are sent without being deserialized and kept in memory while sending.
+     * The logs of interest are serialized before {@link #onBeforeSending(Log)} is called,
+     * so changes made to them in that callback are not sent.
+     */
+    interface SelectiveGroupListener extends GroupListener {
+
+        /**
+         * Gets the types of the logs that the listener needs, checked each time a batch is read from storage.
+         *
+         * @return log types, empty if no log is needed at the moment, or null if all logs are needed.
+         */
+        @Nullable
+        Collection<String> getLogTypes();
+    }
 }
@@ -5,33 +5,47 @@
 
 package com.microsoft.appcenter.channel;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.os.Handler;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import com.microsoft.appcenter.CancellationException;
+import com.microsoft.appcenter.FlushResult;
+import com.microsoft.appcenter.StorageBackend;
 import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpClientBusyException;
 import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.SerializedLogsIngestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.persistence.DatabasePersistence;
 import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.persistence.SegmentFilePersistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
+import org.json.JSONException;
+
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -42,9 +56,18 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static android.util.Log.DEBUG;
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 
 public class DefaultChannel implements Channel {
@@ -56,16 +79,98 @@ public class DefaultChannel implements Channel {
     static final int CLEAR_BATCH_SIZE = 100;
 
     /**
-     * Start of schedule timestamp.
+     * Legacy prefix of the preference keys storing the start time of a group timer, migrated to {@link #START_TIMERS_KEY}.
      */
     @VisibleForTesting
     static final String START_TIMER_PREFIX = "startTimerPrefix.";
 
+    /**
+     * Preference key storing the start times of the timers of all groups in a single record.
+     * Each line is the start time in ms and the group name separated by {@link #START_TIMER_SEPARATOR}.
+     */
+    @VisibleForTesting
+    static final String START_TIMERS_KEY = "channelStartTimers";
+
+    /**
+     * Separator between start time and group name in {@link #START_TIMERS_KEY}.
+     */
+    private static final char START_TIMER_SEPARATOR = ':';
+
+    /**
+     * Maximum time in ms a group timer is triggered ahead or after its due time
+     * so that groups due around the same time are sent at the same wake-up.
+     */
+    @VisibleForTesting
+    static final long TIMER_ALIGNMENT_WINDOW = 1000;
+
+    /**
+     * Time in ms between radio activity checks of a deferred group.
+     */
+    @VisibleForTesting
+    static final long RADIO_CHECK_INTERVAL = 5000;
+
     /**
      * Transmission interval minimum value, in ms.
      */
     private static final long MINIMUM_TRANSMISSION_INTERVAL = 3000;
 
+    /**
+     * Maximum number of logs buffered by the default persistence before being written in a single transaction.
+     */
+    @VisibleForTesting
+    static final int PERSISTENCE_MAX_BUFFERED_LOGS = 50;
+
+    /**
+     * Maximum time in ms a log can stay buffered in persistence before being written to storage.
+     */
+    @VisibleForTesting
+    static final long PERSISTENCE_FLUSH_INTERVAL = 1000;
+
+    /**
+     * Number of threads serializing logs before they are persisted.
+     */
+    private static final int SERIALIZATION_THREAD_COUNT = 2;
+
+    /**
+     * Time in ms an idle serialization thread is kept alive.
+     */
+    private static final long SERIALIZATION_THREAD_KEEP_ALIVE = 10000;
+
+    /**
+     * Name prefix of threads serializing logs.
+     */
+    @VisibleForTesting
+    static final String SERIALIZATION_THREAD_NAME_PREFIX = "AppCenter.Serialization-";
+
+    /**
+     * Counter used to name serialization threads.
+     */
+    private static final AtomicInteger sSerializationThreadCount = new AtomicInteger();
+
+    /**
+     * Maximum number of logs waiting for serialization, further logs are serialized on the App Center thread.
+     */
+    @VisibleForTesting
+    static final int MAX_SERIALIZING_LOGS = 200;
+
+    /**
+     * Time in ms a group can wait for a request slot before being served ahead of higher priority groups.
+     */
+    @VisibleForTesting
+    static final long MAX_QUEUEING_DELAY = 10000;
+
+    /**
+     * Initial delay in ms before serving waiting groups again after the HTTP client was busy.
+     */
+    @VisibleForTesting
+    static final long BUSY_RETRY_INITIAL_DELAY = 1000;
+
+    /**
+     * Maximum delay in ms before serving waiting groups again after the HTTP client was busy.
+     */
+    @VisibleForTesting
+    static final long BUSY_RETRY_MAX_DELAY = 30000;
+
     /**
      * Application context.
      */
@@ -133,6 +238,150 @@ public class DefaultChannel implements Channel {
      */
     private int mCurrentState;
 
+    /**
+     * Is a flush of the persistence buffered logs scheduled.
+     */
+    private boolean mPersistenceFlushScheduled;
+
+    /**
+     * Runnable that writes logs buffered by persistence to storage.
+     */
+    private final Runnable mPersistenceFlushRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            mPersistenceFlushScheduled = false;
+            mPersistence.flush();
+        }
+    };
+
+    /**
+     * Memory callbacks writing buffered logs to storage when the process might get killed.
+     */
+    private final ComponentCallbacks2 mComponentCallbacks = new ComponentCallbacks2() {
+
+        @Override
+        public void onTrimMemory(int level) {
+            mAppCenterHandler.post(mPersistenceFlushRunnable);
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            mAppCenterHandler.post(mPersistenceFlushRunnable);
+        }
+    };
+
+    /**
+     * Executor serializing logs off the App Center thread, null to serialize them when persisting.
+     */
+    private Executor mSerializationExecutor;
+
+    /**
+     * Logs submitted to {@link #mSerializationExecutor}, persisted in this order once serialized.
+     */
+    private final Queue<SerializingLog> mSerializingLogs = new ArrayDeque<>();
+
+    /**
+     * Runnable that persists logs at the head of {@link #mSerializingLogs} that are serialized.
+     */
+    private final Runnable mPersistSerializedLogsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            persistSerializedLogs(false);
+        }
+    };
+
+    /**
+     * Runnable that triggers ingestion of the groups whose timer is due.
+     */
+    private final Runnable mTimerRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            onTimer();
+        }
+    };
+
+    /**
+     * Whether {@link #mTimerRunnable} is posted.
+     */
+    private boolean mTimerScheduled;
+
+    /**
+     * Time when {@link #mTimerRunnable} is due.
+     */
+    private long mTimerTime;
+
+    /**
+     * Start times of the timers of groups with a custom batch time interval, lazily loaded from {@link #START_TIMERS_KEY}.
+     */
+    private Map<String, Long> mStartTimers;
+
+    /**
+     * Is a write of {@link #mStartTimers} to storage scheduled.
+     */
+    private boolean mStartTimersWriteScheduled;
+
+    /**
+     * Runnable that writes {@link #mStartTimers} to storage, posted once for all the changes made by the current task.
+     */
+    private final Runnable mStartTimersWriteRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            mStartTimersWriteScheduled = false;
+            writeStartTimers();
+        }
+    };
+
+    /**
+     * Delay before the next retry after the HTTP client was busy, doubled after each retry until a batch is sent.
+     */
+    private long mBusyRetryDelay = BUSY_RETRY_INITIAL_DELAY;
+
+    /**
+     * Whether {@link #mBusyRetryRunnable} is posted.
+     */
+    private boolean mBusyRetryScheduled;
+
+    /**
+     * Runnable that serves waiting groups after the HTTP client was busy, even if no other request completes.
+     */
+    private final Runnable mBusyRetryRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            mBusyRetryScheduled = false;
+            dispatchQueuedGroups();
+        }
+    };
+
+    /**
+     * Radio activity monitor, null to send without checking the radio.
+     */
+    private RadioActivityMonitor mRadioActivityMonitor;
+
+    /**
+     * Maximum time in ms a timed batch can be deferred until the radio is active, 0 to never defer.
+     */
+    private long mTransmissionMaxLatency;
+
+    /**
+     * Maximum number of requests sent in parallel by all groups, 0 for no limit.
+     */
+    private int mMaxParallelRequests;
+
+    /**
+     * Virtual time of the last batch sent, groups waiting for a request slot with the lowest
+     * virtual time are served first so that groups get slots in proportion of their weights.
+     */
+    private double mVirtualTime;
+
     /**
      * Creates and initializes a new instance.
      *
@@ -143,7 +392,35 @@ public class DefaultChannel implements Channel {
      * @param appCenterHandler App Center looper thread handler.
      */
     public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull HttpClient httpClient, @NonNull Handler appCenterHandler) {
-        this(context, appSecret, buildDefaultPersistence(context, logSerializer), new AppCenterIngestion(httpClient, logSerializer), appCenterHandler);
+        this(context, appSecret, logSerializer, httpClient, appCenterHandler, StorageBackend.DATABASE, false, false);
+    }
+
+    /**
+     * Creates and initializes a new instance.
+     *
+     * @param context           The context.
+     * @param appSecret         The application secret.
+     * @param logSerializer     The log serializer.
+     * @param httpClient        The HTTP client instance.
+     * @param appCenterHandler  App Center looper thread handler.
+     * @param storageBackend    The storage backend, one of the {@link StorageBackend} constants.
+     * @param writeAheadLogging Whether the storage database uses write-ahead logging and related tuning.
+     * @param compression       Whether log payloads are compressed in the storage database.
+     */
+    public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull HttpClient httpClient, @NonNull Handler appCenterHandler,
+                          int storageBackend, boolean writeAheadLogging, boolean compression) {
+        this(context, appSecret, buildDefaultPersistence(context, logSerializer, storageBackend, writeAheadLogging, compression), new AppCenterIngestion(httpClient, logSerializer), appCenterHandler);
+        ThreadPoolExecutor serializationExecutor = new ThreadPoolExecutor(SERIALIZATION_THREAD_COUNT, SERIALIZATION_THREAD_COUNT,
+                SERIALIZATION_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(runnable, SERIALIZATION_THREAD_NAME_PREFIX + sSerializationThreadCount.incrementAndGet());
+            }
+        });
+        serializationExecutor.allowCoreThreadTimeOut(true);
+        mSerializationExecutor = serializationExecutor;
+        mRadioActivityMonitor = new RadioActivityMonitor(NetworkStateHelper.getSharedInstance(context));
     }
 
     /**
@@ -168,17 +445,82 @@ public class DefaultChannel implements Channel {
         mIngestions.add(mIngestion);
         mAppCenterHandler = appCenterHandler;
         mEnabled = true;
+
+        /* Logs deleted to make room for new ones will never be sent, logs being sent are not reported. */
+        mPersistence.setEvictionListener(new Persistence.EvictionListener() {
+
+            @Override
+            public void onLogsEvicted(@NonNull String group, int count, long bytes) {
+                GroupState groupState = mGroupStates.get(group);
+                if (groupState != null) {
+                    groupState.mPendingLogCount = Math.max(0, groupState.mPendingLogCount - count);
+                }
+            }
+        });
+
+        /* Buffered logs that could not be written fail like logs that cannot be persisted right away. */
+        mPersistence.setFlushFailureListener(new Persistence.FlushFailureListener() {
+
+            @Override
+            public void onFlushFailed(@NonNull String group, @NonNull Log log, @NonNull Persistence.PersistenceException exception) {
+                GroupState groupState = mGroupStates.get(group);
+                if (groupState == null) {
+                    return;
+                }
+                AppCenterLog.error(LOG_TAG, "Error persisting log", exception);
+
+                /* Logs of paused transmission targets were not counted as pending. */
+                if (!groupState.mPausedTargetKeys.contains(getTargetKey(log))) {
+                    groupState.mPendingLogCount = Math.max(0, groupState.mPendingLogCount - 1);
+                }
+                if (groupState.mListener != null) {
+                    groupState.mListener.onBeforeSending(log);
+                    groupState.mListener.onFailure(log, exception);
+                }
+            }
+        });
+
+        /* Write buffered logs as soon as the process might get killed. */
+        context.registerComponentCallbacks(mComponentCallbacks);
     }
 
     /**
      * Init Persistence for default constructor.
      */
-    private static Persistence buildDefaultPersistence(@NonNull Context context, @NonNull LogSerializer logSerializer) {
-        Persistence persistence = new DatabasePersistence(context);
+    private static Persistence buildDefaultPersistence(@NonNull Context context, @NonNull LogSerializer logSerializer, int storageBackend, boolean writeAheadLogging, boolean compression) {
+        if (storageBackend == StorageBackend.SEGMENT_FILES) {
+            SegmentFilePersistence persistence = new SegmentFilePersistence(context);
+            persistence.setLogSerializer(logSerializer);
+            return persistence;
+        }
+        DatabasePersistence persistence = new DatabasePersistence(context);
+        persistence.setWriteAheadLoggingEnabled(writeAheadLogging);
+        persistence.setPayloadCompressionEnabled(compression);
         persistence.setLogSerializer(logSerializer);
+        persistence.setMaxBufferedLogs(PERSISTENCE_MAX_BUFFERED_LOGS);
         return persistence;
     }
 
+    /**
+     * Sets the executor serializing logs before they are persisted on the App Center thread.
+     *
+     * @param serializationExecutor executor, or null to serialize logs on the App Center thread.
+     */
+    @VisibleForTesting
+    void setSerializationExecutor(Executor serializationExecutor) {
+        mSerializationExecutor = serializationExecutor;
+    }
+
+    /**
+     * Sets the radio activity monitor.
+     *
+     * @param radioActivityMonitor radio activity monitor, or null to send without checking the radio.
+     */
+    @VisibleForTesting
+    void setRadioActivityMonitor(RadioActivityMonitor radioActivityMonitor) {
+        mRadioActivityMonitor = radioActivityMonitor;
+    }
+
     @WorkerThread
     @Override
     public boolean setMaxStorageSize(long maxStorageSizeInBytes) {
@@ -218,16 +560,22 @@ public class DefaultChannel implements Channel {
 
     @Override
     public void addGroup(final String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, Ingestion ingestion, GroupListener groupListener) {
+        addGroup(groupName, maxLogsPerBatch, 0, batchTimeInterval, maxParallelBatches, ingestion, groupListener);
+    }
+
+    @Override
+    public void addGroup(final String groupName, int maxLogsPerBatch, long maxBytesPerBatch, long batchTimeInterval, int maxParallelBatches, Ingestion ingestion, GroupListener groupListener) {
 
         /* Init group. */
         AppCenterLog.debug(LOG_TAG, "addGroup(" + groupName + ")");
         ingestion = ingestion == null ? mIngestion : ingestion;
         mIngestions.add(ingestion);
-        final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, ingestion, groupListener);
+        final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, maxBytesPerBatch, batchTimeInterval, maxParallelBatches, ingestion, groupListener);
         mGroupStates.put(groupName, groupState);
 
         /* Count pending logs. */
         groupState.mPendingLogCount = mPersistence.countLogs(groupName);
+        migrateStartTimer(groupName);
 
         /*
          * If no app secret, don't resume sending App Center logs from storage.
@@ -246,12 +594,170 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    @Override
+    public void enableAdaptiveBatching(String groupName, int minLogsPerBatch, int maxLogsPerBatch, int maxParallelBatches) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState != null) {
+            AppCenterLog.debug(LOG_TAG, "enableAdaptiveBatching(" + groupName + ")");
+            groupState.mAdaptiveBatching = new AdaptiveBatching(minLogsPerBatch, maxLogsPerBatch, maxParallelBatches, groupState.mMaxLogsPerBatch);
+        }
+    }
+
+    @Override
+    public void disableAdaptiveBatching(String groupName) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState != null) {
+            AppCenterLog.debug(LOG_TAG, "disableAdaptiveBatching(" + groupName + ")");
+            groupState.mAdaptiveBatching = null;
+        }
+    }
+
+    @Override
+    public int getMaxLogsPerBatch(String groupName) {
+        GroupState groupState = mGroupStates.get(groupName);
+        return groupState != null ? groupState.getMaxLogsPerBatch() : 0;
+    }
+
+    @Override
+    public int getMaxParallelBatches(String groupName) {
+        GroupState groupState = mGroupStates.get(groupName);
+        return groupState != null ? groupState.getMaxParallelBatches() : 0;
+    }
+
+    @Override
+    public void setPrefetchEnabled(String groupName, boolean enabled) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState != null) {
+            AppCenterLog.debug(LOG_TAG, "setPrefetchEnabled(" + groupName + ", " + enabled + ")");
+            groupState.mPrefetch = enabled;
+        }
+    }
+
+    @Override
+    public void setMaxParallelRequests(int maxParallelRequests) {
+        AppCenterLog.debug(LOG_TAG, "setMaxParallelRequests(" + maxParallelRequests + ")");
+        mMaxParallelRequests = maxParallelRequests;
+        dispatchQueuedGroups();
+    }
+
+    @Override
+    public void setGroupPriority(String groupName, int priority, int weight) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState != null) {
+            AppCenterLog.debug(LOG_TAG, "setGroupPriority(" + groupName + ", " + priority + ", " + weight + ")");
+            groupState.mPriority = priority;
+            groupState.mWeight = Math.max(1, weight);
+        }
+    }
+
+    @Override
+    public void setTransmissionMaxLatency(long maxLatency) {
+        AppCenterLog.debug(LOG_TAG, "setTransmissionMaxLatency(" + maxLatency + ")");
+        mTransmissionMaxLatency = maxLatency;
+    }
+
+    @Override
+    public int getRadioWakeupCount() {
+        return mRadioActivityMonitor != null ? mRadioActivityMonitor.getWakeupCount() : 0;
+    }
+
+    @Nullable
+    @Override
+    public SchedulingStatistics getSchedulingStatistics(String groupName) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
+            return null;
+        }
+        return new SchedulingStatistics(groupState.mQueuedRequestCount, groupState.mTotalQueueingDelay, groupState.mMaxQueueingDelay);
+    }
+
+    @Override
+    public void flush(String groupName, DefaultAppCenterFuture<FlushResult> future) {
+        GroupState groupState = mGroupStates.get(groupName);
+        List<GroupState> groupStates = groupState != null ? Collections.singletonList(groupState) : Collections.<GroupState>emptyList();
+        flush(groupStates, future);
+    }
+
+    @Override
+    public void flushAll(DefaultAppCenterFuture<FlushResult> future) {
+        flush(new ArrayList<>(mGroupStates.values()), future);
+    }
+
+    /**
+     * Switch groups to drain mode until they have no more logs to send.
+     *
+     * @param groupStates the groups to flush.
+     * @param future      future to complete once all groups are drained.
+     */
+    private void flush(@NonNull List<GroupState> groupStates, @NonNull DefaultAppCenterFuture<FlushResult> future) {
+        if (groupStates.isEmpty()) {
+            future.complete(new FlushResult(0, 0));
+            return;
+        }
+
+        /* Count logs still being serialized as pending. */
+        persistSerializedLogs(true);
+        FlushRequest flushRequest = new FlushRequest(future, groupStates.size());
+        for (GroupState groupState : groupStates) {
+            AppCenterLog.debug(LOG_TAG, "flush(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+            groupState.mFlushRequests.add(flushRequest);
+        }
+        for (GroupState groupState : groupStates) {
+            drain(groupState);
+        }
+    }
+
+    /**
+     * Send batches of a group in drain mode without waiting for the batch time interval,
+     * up to the maximum number of batches in parallel, and complete flush requests when done.
+     *
+     * @param groupState the group state.
+     */
+    private void drain(@NonNull GroupState groupState) {
+        while (mEnabled && !groupState.mPaused && (groupState.mPendingLogCount > 0 || groupState.mPrefetchedBatchId != null)
+                && groupState.getSendingBatchCount() < groupState.getMaxParallelBatches()) {
+            int sendingBatchCount = groupState.getSendingBatchCount();
+            triggerIngestion(groupState);
+
+            /* Stop if nothing was sent (no logs or offline), a batch completed synchronously drains again by itself. */
+            if (groupState.getSendingBatchCount() <= sendingBatchCount) {
+                break;
+            }
+        }
+        if (groupState.getSendingBatchCount() == 0 && !groupState.mQueued) {
+            completeFlushRequests(groupState);
+        } else if (mEnabled && mIngestion.isEnabled()) {
+            prefetchBatch(groupState);
+        }
+    }
+
+    /**
+     * Complete the flush requests of a group, leaving drain mode.
+     *
+     * @param groupState the group state.
+     */
+    private void completeFlushRequests(@NonNull GroupState groupState) {
+        if (groupState.mFlushRequests.isEmpty()) {
+            return;
+        }
+        AppCenterLog.debug(LOG_TAG, "Flush of " + groupState.mName + " completed, pendingLogCount=" + groupState.mPendingLogCount);
+        for (FlushRequest flushRequest : groupState.mFlushRequests) {
+            flushRequest.onGroupDrained();
+        }
+        groupState.mFlushRequests.clear();
+    }
+
     @Override
     public void removeGroup(String groupName) {
         AppCenterLog.debug(LOG_TAG, "removeGroup(" + groupName + ")");
+        persistSerializedLogs(true);
         GroupState groupState = mGroupStates.remove(groupName);
         if (groupState != null) {
             cancelTimer(groupState);
+            completeFlushRequests(groupState);
+
+            /* Requests of the removed group no longer count against the limit of parallel requests. */
+            dispatchQueuedGroups();
         }
 
         /* Call listeners so that they can react on group removed. */
@@ -368,7 +874,12 @@ public class DefaultChannel implements Channel {
             return;
         }
         AppCenterLog.debug(LOG_TAG, "clear(" + groupName + ")");
+        persistSerializedLogs(true);
         mPersistence.deleteLogs(groupName);
+        GroupState groupState = mGroupStates.get(groupName);
+        groupState.mPrefetchedBatchId = null;
+        groupState.mPrefetchedBatch = null;
+        groupState.mPrefetchedSerializedBatch = null;
 
         /* Call listeners so that they can react on group clearing. */
         for (Listener listener : mListeners) {
@@ -388,15 +899,26 @@ public class DefaultChannel implements Channel {
      * @param exception  the exception that caused suspension.
      */
     private void suspend(boolean deleteLogs, Exception exception) {
+        persistSerializedLogs(true);
         mDiscardLogs = deleteLogs;
         mCurrentState++;
+        if (mBusyRetryScheduled) {
+            mBusyRetryScheduled = false;
+            mAppCenterHandler.removeCallbacks(mBusyRetryRunnable);
+        }
+        mBusyRetryDelay = BUSY_RETRY_INITIAL_DELAY;
         for (GroupState groupState : mGroupStates.values()) {
             cancelTimer(groupState);
+            groupState.mQueued = false;
 
             /* Delete all other batches and call callback method that are currently in progress. */
             for (Iterator<Map.Entry<String, List<Log>>> iterator = groupState.mSendingBatches.entrySet().iterator(); iterator.hasNext(); ) {
                 Map.Entry<String, List<Log>> entry = iterator.next();
+                int logCount = groupState.getSendingLogCount(entry.getKey());
                 iterator.remove();
+                for (FlushRequest flushRequest : groupState.mFlushRequests) {
+                    flushRequest.mFailedLogCount += logCount;
+                }
                 if (deleteLogs) {
                     GroupListener groupListener = groupState.mListener;
                     if (groupListener != null) {
@@ -406,6 +928,20 @@ public class DefaultChannel implements Channel {
                     }
                 }
             }
+            groupState.mSendingSerializedBatches.clear();
+
+            /* Discard the batch read in advance, its logs are either deleted or read again later. */
+            if (groupState.mPrefetchedBatchId != null) {
+                if (deleteLogs && groupState.mListener != null) {
+                    for (Log log : groupState.mPrefetchedBatch) {
+                        groupState.mListener.onBeforeSending(log);
+                        groupState.mListener.onFailure(log, exception);
+                    }
+                }
+                groupState.mPrefetchedBatchId = null;
+                groupState.mPrefetchedBatch = null;
+                groupState.mPrefetchedSerializedBatch = null;
+            }
         }
         for (Ingestion ingestion : mIngestions) {
             try {
@@ -421,6 +957,9 @@ public class DefaultChannel implements Channel {
         } else {
             mPersistence.clearPendingLogState();
         }
+        for (GroupState groupState : mGroupStates.values()) {
+            completeFlushRequests(groupState);
+        }
     }
 
     private void deleteLogsOnSuspended(final GroupState groupState) {
@@ -441,10 +980,79 @@ public class DefaultChannel implements Channel {
 
     @VisibleForTesting
     void cancelTimer(GroupState groupState) {
+        groupState.mDeferred = false;
         if (groupState.mScheduled) {
             groupState.mScheduled = false;
-            mAppCenterHandler.removeCallbacks(groupState.mRunnable);
-            SharedPreferencesManager.remove(START_TIMER_PREFIX + groupState.mName);
+            removeStartTimer(groupState.mName);
+
+            /* Remove the channel timer if no other group waits for it. */
+            if (mTimerScheduled && getNextTimerTime() == Long.MAX_VALUE) {
+                mTimerScheduled = false;
+                mAppCenterHandler.removeCallbacks(mTimerRunnable);
+            }
+        }
+    }
+
+    /**
+     * Schedule the channel timer to trigger a group at the given time.
+     * A single timer is posted for all groups, a group due shortly before the timer waits for it.
+     *
+     * @param time time when the group is due.
+     */
+    private void scheduleTimer(long time) {
+        if (mTimerScheduled) {
+            if (time >= mTimerTime - TIMER_ALIGNMENT_WINDOW) {
+                return;
+            }
+            mAppCenterHandler.removeCallbacks(mTimerRunnable);
+        }
+        mTimerScheduled = true;
+        mTimerTime = time;
+        mAppCenterHandler.postDelayed(mTimerRunnable, Math.max(0, time - System.currentTimeMillis()));
+    }
+
+    /**
+     * Get the earliest time a group timer is due.
+     *
+     * @return the time, {@link Long#MAX_VALUE} if no group timer is scheduled.
+     */
+    private long getNextTimerTime() {
+        long nextTime = Long.MAX_VALUE;
+        for (GroupState groupState : mGroupStates.values()) {
+            if (groupState.mScheduled) {
+                nextTime = Math.min(nextTime, groupState.mScheduledTime);
+            }
+        }
+        return nextTime;
+    }
+
+    /**
+     * Trigger ingestion of all the groups due at the current wake-up.
+     */
+    private void onTimer() {
+        mTimerScheduled = false;
+
+        /* The handler delay is not affected by wall clock changes, the timer is due when it runs. */
+        long now = Math.max(System.currentTimeMillis(), mTimerTime);
+        List<GroupState> dueGroupStates = new ArrayList<>();
+        for (GroupState groupState : mGroupStates.values()) {
+            if (groupState.mScheduled && groupState.mScheduledTime <= now + TIMER_ALIGNMENT_WINDOW) {
+                groupState.mScheduled = false;
+                dueGroupStates.add(groupState);
+            }
+        }
+        if (!dueGroupStates.isEmpty() && mRadioActivityMonitor != null && mTransmissionMaxLatency > 0) {
+            deferTransmission(dueGroupStates, now);
+        }
+        long nextTime = getNextTimerTime();
+        if (nextTime != Long.MAX_VALUE) {
+            scheduleTimer(nextTime);
+        }
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "Channel timer triggers " + dueGroupStates.size() + " group(s).");
+        }
+        for (GroupState groupState : dueGroupStates) {
+            triggerIngestion(groupState);
         }
     }
 
@@ -464,29 +1072,64 @@ public class DefaultChannel implements Channel {
             AppCenterLog.debug(LOG_TAG, "SDK is in offline mode.");
             return;
         }
-        int pendingLogCount = groupState.mPendingLogCount;
-        int maxFetch = Math.min(pendingLogCount, groupState.mMaxLogsPerBatch);
-        AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") pendingLogCount=" + pendingLogCount);
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+        }
         cancelTimer(groupState);
 
         /* Check if we have reached the maximum number of pending batches, log to LogCat and don't trigger another sending. */
-        if (groupState.mSendingBatches.size() == groupState.mMaxParallelBatches) {
-            AppCenterLog.debug(LOG_TAG, "Already sending " + groupState.mMaxParallelBatches + " batches of analytics data to the server.");
+        int maxParallelBatches = groupState.getMaxParallelBatches();
+        if (groupState.getSendingBatchCount() >= maxParallelBatches) {
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Already sending " + maxParallelBatches + " batches of analytics data to the server.");
+            }
+            prefetchBatch(groupState);
             return;
         }
 
-        /* Get a batch from Persistence. */
-        final List<Log> batch = new ArrayList<>(maxFetch);
-        final String batchId = mPersistence.getLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, batch);
+        /* Wait for a request slot shared by all groups. */
+        if (!hasFreeRequestSlot()) {
+            queueGroup(groupState);
+            return;
+        }
 
-        /* Decrement counter. */
-        groupState.mPendingLogCount -= maxFetch;
+        /* Use the batch read in advance if any, otherwise get a batch from Persistence. */
+        List<Log> batch;
+        SerializedLogContainer serializedBatch = null;
+        String batchId;
+        if (groupState.mPrefetchedBatchId != null) {
+            batchId = groupState.mPrefetchedBatchId;
+            batch = groupState.mPrefetchedBatch;
+            serializedBatch = groupState.mPrefetchedSerializedBatch;
+            groupState.mPrefetchedBatchId = null;
+            groupState.mPrefetchedBatch = null;
+            groupState.mPrefetchedSerializedBatch = null;
+        } else {
+            batch = new ArrayList<>();
+            Collection<String> logTypes = getListenerLogTypes(groupState);
+            if (logTypes != null) {
+                serializedBatch = new SerializedLogContainer();
+                batchId = fetchSerializedBatch(groupState, serializedBatch, logTypes, batch);
+            } else {
+                batchId = fetchBatch(groupState, batch);
+            }
+        }
 
         /* Nothing more to do if no logs. */
         if (batchId == null) {
             return;
         }
-        AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
+        }
+        if (mRadioActivityMonitor != null) {
+            mRadioActivityMonitor.onSending();
+        }
+
+        /* Advance virtual time, the more weight the group has the less its next batch waits. */
+        groupState.mVirtualTime = Math.max(groupState.mVirtualTime, mVirtualTime);
+        mVirtualTime = groupState.mVirtualTime;
+        groupState.mVirtualTime += 1.0 / groupState.mWeight;
 
         /* Call group listener before sending logs to ingestion service. */
         if (groupState.mListener != null) {
@@ -495,9 +1138,224 @@ public class DefaultChannel implements Channel {
             }
         }
 
-        /* Remember this batch. */
+        /* Remember this batch, only the logs needed by the listener are kept when sent serialized. */
         groupState.mSendingBatches.put(batchId, batch);
-        sendLogs(groupState, mCurrentState, batch, batchId);
+        if (serializedBatch != null) {
+            groupState.mSendingSerializedBatches.put(batchId, serializedBatch.getSerializedLogs().size());
+            sendSerializedLogs(groupState, mCurrentState, serializedBatch, batchId);
+        } else {
+            sendLogs(groupState, mCurrentState, batch, batchId);
+        }
+    }
+
+    /**
+     * Get the number of requests being sent by all groups.
+     *
+     * @return the number of requests being sent.
+     */
+    private int getSendingRequestCount() {
+        int sendingRequestCount = 0;
+        for (GroupState groupState : mGroupStates.values()) {
+            sendingRequestCount += groupState.getSendingBatchCount();
+        }
+        return sendingRequestCount;
+    }
+
+    /**
+     * Check if a request can be sent without exceeding the limit of requests in parallel for all groups.
+     *
+     * @return true if a request can be sent.
+     */
+    private boolean hasFreeRequestSlot() {
+        return mMaxParallelRequests <= 0 || getSendingRequestCount() < mMaxParallelRequests;
+    }
+
+    /**
+     * Make a group wait for a request slot, it is triggered again by {@link #dispatchQueuedGroups()}.
+     *
+     * @param groupState the group state.
+     */
+    private void queueGroup(@NonNull GroupState groupState) {
+        if (groupState.mQueued) {
+            return;
+        }
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, groupState.mName + " waits for a request slot.");
+        }
+        groupState.mQueued = true;
+        groupState.mQueuedTime = System.currentTimeMillis();
+
+        /* A group that did not send for a while does not get slots in advance. */
+        groupState.mVirtualTime = Math.max(groupState.mVirtualTime, mVirtualTime);
+    }
+
+    /**
+     * Give free request slots to the groups waiting for them.
+     */
+    private void dispatchQueuedGroups() {
+        GroupState groupState;
+        while (hasFreeRequestSlot() && (groupState = getNextQueuedGroup()) != null) {
+            groupState.mQueued = false;
+            long queueingDelay = System.currentTimeMillis() - groupState.mQueuedTime;
+            groupState.mQueuedRequestCount++;
+            groupState.mTotalQueueingDelay += queueingDelay;
+            groupState.mMaxQueueingDelay = Math.max(groupState.mMaxQueueingDelay, queueingDelay);
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Dispatching " + groupState.mName + " after waiting " + queueingDelay + "ms for a request slot.");
+            }
+            if (groupState.mFlushRequests.isEmpty()) {
+                triggerIngestion(groupState);
+            } else {
+                drain(groupState);
+            }
+        }
+    }
+
+    /**
+     * Get the group to give the next request slot to.
+     *
+     * @return the group, null if no group is waiting.
+     */
+    @Nullable
+    private GroupState getNextQueuedGroup() {
+        long now = System.currentTimeMillis();
+        GroupState nextGroupState = null;
+        for (GroupState groupState : mGroupStates.values()) {
+            if (groupState.mQueued && (nextGroupState == null || isServedBefore(groupState, nextGroupState, now))) {
+                nextGroupState = groupState;
+            }
+        }
+        return nextGroupState;
+    }
+
+    /**
+     * Compare 2 groups waiting for a request slot.
+     * Groups waiting for more than {@link #MAX_QUEUEING_DELAY} are served first in arrival order,
+     * then groups with a higher priority, then groups with the lowest virtual time.
+     *
+     * @param groupState      a waiting group.
+     * @param otherGroupState another waiting group.
+     * @param now             current time.
+     * @return true if the first group is served before the other group.
+     */
+    private static boolean isServedBefore(@NonNull GroupState groupState, @NonNull GroupState otherGroupState, long now) {
+        boolean starving = now - groupState.mQueuedTime >= MAX_QUEUEING_DELAY;
+        boolean otherStarving = now - otherGroupState.mQueuedTime >= MAX_QUEUEING_DELAY;
+        if (starving != otherStarving) {
+            return starving;
+        }
+        if (!starving && groupState.mPriority != otherGroupState.mPriority) {
+            return groupState.mPriority > otherGroupState.mPriority;
+        }
+        int compare = starving ? 0 : Double.compare(groupState.mVirtualTime, otherGroupState.mVirtualTime);
+        if (compare == 0) {
+            compare = Long.compare(groupState.mQueuedTime, otherGroupState.mQueuedTime);
+        }
+        if (compare == 0) {
+            compare = groupState.mName.compareTo(otherGroupState.mName);
+        }
+        return compare < 0;
+    }
+
+    /**
+     * Get the types of logs the listener of a group needs when logs can be sent serialized.
+     * Other logs are sent without deserializing them.
+     *
+     * @param groupState the group state.
+     * @return log types needed by the listener, or null if all logs must be deserialized.
+     */
+    @Nullable
+    private Collection<String> getListenerLogTypes(@NonNull GroupState groupState) {
+        if (!mPersistence.supportsSerializedLogs() || !(groupState.mIngestion instanceof SerializedLogsIngestion)) {
+            return null;
+        }
+        if (groupState.mListener == null) {
+            return Collections.emptyList();
+        }
+        if (groupState.mListener instanceof SelectiveGroupListener) {
+            return ((SelectiveGroupListener) groupState.mListener).getLogTypes();
+        }
+        return null;
+    }
+
+    /**
+     * Get the next batch of a group from Persistence and update the pending log count.
+     *
+     * @param groupState the group state.
+     * @param batch      list receiving the logs.
+     * @return the batch identifier, null if there are no logs.
+     */
+    @Nullable
+    private String fetchBatch(@NonNull GroupState groupState, @NonNull List<Log> batch) {
+        int maxFetch = Math.min(groupState.mPendingLogCount, groupState.getMaxLogsPerBatch());
+        String batchId;
+        if (groupState.mMaxBytesPerBatch > 0) {
+            batchId = mPersistence.getLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, groupState.mMaxBytesPerBatch, batch);
+        } else {
+            batchId = mPersistence.getLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, batch);
+        }
+
+        /*
+         * Decrement counter, logs left out by the size limit are still pending.
+         * Reading writes buffered logs first, the ones that failed were already removed from the counter.
+         */
+        int fetchedCount = batchId != null && groupState.mMaxBytesPerBatch > 0 ? batch.size() : maxFetch;
+        groupState.mPendingLogCount = Math.max(0, groupState.mPendingLogCount - fetchedCount);
+        return batchId;
+    }
+
+    /**
+     * Get the next batch of a group from Persistence in serialized form and update the pending log count.
+     *
+     * @param groupState      the group state.
+     * @param serializedBatch container receiving the serialized logs.
+     * @param logTypes        types of the logs to also get deserialized.
+     * @param batch           list receiving the deserialized logs.
+     * @return the batch identifier, null if there are no logs.
+     */
+    @Nullable
+    private String fetchSerializedBatch(@NonNull GroupState groupState, @NonNull SerializedLogContainer serializedBatch, @NonNull Collection<String> logTypes, @NonNull List<Log> batch) {
+        int maxFetch = Math.min(groupState.mPendingLogCount, groupState.getMaxLogsPerBatch());
+        String batchId = mPersistence.getSerializedLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, groupState.mMaxBytesPerBatch, serializedBatch, logTypes, batch);
+        int fetchedCount = batchId != null && groupState.mMaxBytesPerBatch > 0 ? serializedBatch.getSerializedLogs().size() : maxFetch;
+        groupState.mPendingLogCount = Math.max(0, groupState.mPendingLogCount - fetchedCount);
+        return batchId;
+    }
+
+    /**
+     * Read the next batch of a group while the maximum number of batches are being sent,
+     * so that it is sent as soon as a request completes without waiting for storage.
+     *
+     * @param groupState the group state.
+     */
+    private void prefetchBatch(@NonNull GroupState groupState) {
+        boolean draining = !groupState.mFlushRequests.isEmpty();
+        if ((!groupState.mPrefetch && !draining) || groupState.mPrefetchedBatchId != null || groupState.mPaused) {
+            return;
+        }
+
+        /* Incomplete batches wait for the batch time interval unless flushing. */
+        if (groupState.mPendingLogCount < (draining ? 1 : groupState.getMaxLogsPerBatch())) {
+            return;
+        }
+        List<Log> batch = new ArrayList<>();
+        SerializedLogContainer serializedBatch = null;
+        String batchId;
+        Collection<String> logTypes = getListenerLogTypes(groupState);
+        if (logTypes != null) {
+            serializedBatch = new SerializedLogContainer();
+            batchId = fetchSerializedBatch(groupState, serializedBatch, logTypes, batch);
+        } else {
+            batchId = fetchBatch(groupState, batch);
+        }
+        if (batchId != null) {
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Prefetched batch " + batchId + " of " + groupState.mName + ".");
+            }
+            groupState.mPrefetchedBatchId = batchId;
+            groupState.mPrefetchedBatch = batch;
+            groupState.mPrefetchedSerializedBatch = serializedBatch;
+        }
     }
 
     /**
@@ -514,15 +1372,45 @@ public class DefaultChannel implements Channel {
         /* Send logs. */
         LogContainer logContainer = new LogContainer();
         logContainer.setLogs(batch);
-        groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new ServiceCallback() {
+        groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, getServiceCallback(groupState, batchId));
+        checkPendingLogsAfterSending(groupState, currentState);
+    }
+
+    /**
+     * Send logs without deserializing them.
+     *
+     * @param groupState      The group state.
+     * @param currentState    The current state.
+     * @param serializedBatch The serialized log batch.
+     * @param batchId         The batch ID.
+     */
+    @MainThread
+    private void sendSerializedLogs(final GroupState groupState, final int currentState, SerializedLogContainer serializedBatch, final String batchId) {
+        ((SerializedLogsIngestion) groupState.mIngestion).sendAsync(mAppSecret, mInstallId, serializedBatch, getServiceCallback(groupState, batchId));
+        checkPendingLogsAfterSending(groupState, currentState);
+    }
+
+    /**
+     * Get the callback handling the result of sending a batch.
+     *
+     * @param groupState The group state.
+     * @param batchId    The batch ID.
+     * @return the callback.
+     */
+    private ServiceCallback getServiceCallback(final GroupState groupState, final String batchId) {
+        return new ServiceCallback() {
 
             @Override
             public void onCallSucceeded(HttpResponse httpResponse) {
+
+                /* Measured by the HTTP client, excludes waiting for a thread and retry delays. */
+                final long requestSize = httpResponse != null ? httpResponse.getRequestSize() : -1;
+                final long latency = httpResponse != null ? httpResponse.getCallDuration() : -1;
                 mAppCenterHandler.post(new Runnable() {
 
                     @Override
                     public void run() {
-                        handleSendingSuccess(groupState, batchId);
+                        handleSendingSuccess(groupState, batchId, requestSize, latency);
                     }
                 });
             }
@@ -537,7 +1425,10 @@ public class DefaultChannel implements Channel {
                     }
                 });
             }
-        });
+        };
+    }
+
+    private void checkPendingLogsAfterSending(final GroupState groupState, final int currentState) {
 
         /* Check for more pending logs. */
         mAppCenterHandler.post(new Runnable() {
@@ -558,19 +1449,33 @@ public class DefaultChannel implements Channel {
     /**
      * The actual implementation to react to sending a batch to the server successfully.
      *
-     * @param groupState The group state.
-     * @param batchId    The batch ID.
+     * @param groupState  The group state.
+     * @param batchId     The batch ID.
+     * @param requestSize The compressed request size in bytes, negative if unknown.
+     * @param latency     The time the request spent on the network in milliseconds, negative if unknown.
      */
-    private void handleSendingSuccess(@NonNull GroupState groupState, @NonNull String batchId) {
+    private void handleSendingSuccess(@NonNull GroupState groupState, @NonNull String batchId, long requestSize, long latency) {
+        int logCount = groupState.getSendingLogCount(batchId);
         List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+        groupState.mSendingSerializedBatches.remove(batchId);
         if (removedLogsForBatchId != null) {
+            mBusyRetryDelay = BUSY_RETRY_INITIAL_DELAY;
+            if (groupState.mAdaptiveBatching != null) {
+                groupState.mAdaptiveBatching.onSuccess(logCount, requestSize, latency);
+            }
             mPersistence.deleteLogs(groupState.mName, batchId);
+            for (FlushRequest flushRequest : groupState.mFlushRequests) {
+                flushRequest.mSentLogCount += logCount;
+            }
             GroupListener groupListener = groupState.mListener;
             if (groupListener != null) {
                 for (Log log : removedLogsForBatchId) {
                     groupListener.onSuccess(log);
                 }
             }
+
+            /* Groups waiting for the freed request slot are served before this group sends again. */
+            dispatchQueuedGroups();
             checkPendingLogs(groupState);
         }
     }
@@ -579,6 +1484,7 @@ public class DefaultChannel implements Channel {
      * The actual implementation to react to not being able to send a batch to the server.
      * Will disable the sender in case of a recoverable error.
      * Will delete batch of data in case of a non-recoverable error.
+     * Will send the batch again later if the HTTP client was too busy to attempt it.
      *
      * @param groupState the group state
      * @param batchId    the batch ID
@@ -586,12 +1492,36 @@ public class DefaultChannel implements Channel {
      */
     private void handleSendingFailure(@NonNull GroupState groupState, @NonNull String batchId, @NonNull Exception e) {
         String groupName = groupState.mName;
+        int logCount = groupState.getSendingLogCount(batchId);
         List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
+        groupState.mSendingSerializedBatches.remove(batchId);
+        if (removedLogsForBatchId != null && e instanceof HttpClientBusyException) {
+
+            /* The request was not attempted, read the batch again when another request completes. */
+            AppCenterLog.debug(LOG_TAG, "HTTP client is busy, " + groupName + " will send batch " + batchId + " again later.");
+            mPersistence.releaseLogs(groupName, batchId);
+            groupState.mPendingLogCount += logCount;
+            queueGroup(groupState);
+
+            /* Other requests may fail as well, retry later without relying on their completion. */
+            if (!mBusyRetryScheduled) {
+                mBusyRetryScheduled = true;
+                mAppCenterHandler.postDelayed(mBusyRetryRunnable, mBusyRetryDelay);
+                mBusyRetryDelay = Math.min(mBusyRetryDelay * 2, BUSY_RETRY_MAX_DELAY);
+            }
+            return;
+        }
         if (removedLogsForBatchId != null) {
             AppCenterLog.error(LOG_TAG, "Sending logs groupName=" + groupName + " id=" + batchId + " failed", e);
+            for (FlushRequest flushRequest : groupState.mFlushRequests) {
+                flushRequest.mFailedLogCount += logCount;
+            }
             boolean recoverableError = HttpUtils.isRecoverableError(e);
             if (recoverableError) {
-                groupState.mPendingLogCount += removedLogsForBatchId.size();
+                groupState.mPendingLogCount += logCount;
+                if (groupState.mAdaptiveBatching != null) {
+                    groupState.mAdaptiveBatching.onFailure();
+                }
             } else {
                 GroupListener groupListener = groupState.mListener;
                 if (groupListener != null) {
@@ -665,7 +1595,9 @@ public class DefaultChannel implements Channel {
 
         /* If filtered out, nothing more to do. */
         if (filteredOut) {
-            AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was filtered out by listener(s)");
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was filtered out by listener(s)");
+            }
         } else {
             if (mAppSecret == null && groupState.mIngestion == mIngestion) {
 
@@ -673,36 +1605,111 @@ public class DefaultChannel implements Channel {
                 AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided. Not persisting/sending the log.");
                 return;
             }
-            try {
 
-                /* Persist log. */
-                mPersistence.putLog(log, groupName, flags);
-            } catch (Persistence.PersistenceException e) {
-                AppCenterLog.error(LOG_TAG, "Error persisting log", e);
-                if (groupState.mListener != null) {
-                    groupState.mListener.onBeforeSending(log);
-                    groupState.mListener.onFailure(log, e);
+            /* Serialize in the background, logs are persisted in enqueue order once serialized. */
+            if (mSerializationExecutor != null) {
+                final SerializingLog serializingLog = new SerializingLog(log, groupName, flags);
+                mSerializingLogs.add(serializingLog);
+                if (mSerializingLogs.size() > MAX_SERIALIZING_LOGS) {
+
+                    /* Serialization cannot keep up, slow down callers by serializing here. */
+                    persistSerializedLogs(true);
+                } else {
+                    mSerializationExecutor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            serializingLog.serialize(mPersistence);
+                            mAppCenterHandler.post(mPersistSerializedLogsRunnable);
+                        }
+                    });
                 }
-                return;
+            } else {
+                persistLog(log, groupState, flags, null);
             }
+        }
+    }
 
-            /* Nothing more to do if the log is from a paused transmission target. */
-            Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
-            String targetKey = targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
-            if (groupState.mPausedTargetKeys.contains(targetKey)) {
-                AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
-                return;
+    /**
+     * Persists logs at the head of {@link #mSerializingLogs}.
+     *
+     * @param all if true, persist all logs and serialize them here if needed,
+     *            otherwise stop at the first log not yet serialized.
+     */
+    private void persistSerializedLogs(boolean all) {
+        SerializingLog serializingLog;
+        while ((serializingLog = mSerializingLogs.peek()) != null && (all || serializingLog.isSerialized())) {
+            mSerializingLogs.remove();
+            serializingLog.serialize(mPersistence);
+            GroupState groupState = mGroupStates.get(serializingLog.mGroupName);
+            if (groupState != null) {
+                persistLog(serializingLog.mLog, groupState, serializingLog.mFlags, serializingLog.getSerializedLog());
             }
+        }
+    }
 
-            /* Increment counters and schedule ingestion if we are enabled. */
-            groupState.mPendingLogCount++;
-            AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
-            if (mEnabled) {
-                checkPendingLogs(groupState);
+    /**
+     * Persists a log and schedules sending it.
+     *
+     * @param log           log to persist.
+     * @param groupState    group of the log.
+     * @param flags         persistence flags.
+     * @param serializedLog log serialized by {@link Persistence#serializeLog(Log)}, or null to serialize it now.
+     */
+    private void persistLog(Log log, GroupState groupState, int flags, String serializedLog) {
+        String groupName = groupState.mName;
+        try {
+
+            /* Persist log. */
+            if (serializedLog != null) {
+                mPersistence.putLog(log, serializedLog, groupName, flags);
             } else {
-                AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
+                mPersistence.putLog(log, groupName, flags);
             }
+        } catch (Persistence.PersistenceException e) {
+            AppCenterLog.error(LOG_TAG, "Error persisting log", e);
+            if (groupState.mListener != null) {
+                groupState.mListener.onBeforeSending(log);
+                groupState.mListener.onFailure(log, e);
+            }
+            return;
         }
+
+        /* Make sure a buffered log reaches storage even if ingestion is not triggered soon. */
+        if (!mPersistenceFlushScheduled && mPersistence.hasBufferedLogs()) {
+            mPersistenceFlushScheduled = true;
+            mAppCenterHandler.postDelayed(mPersistenceFlushRunnable, PERSISTENCE_FLUSH_INTERVAL);
+        }
+
+        /* Nothing more to do if the log is from a paused transmission target. */
+        String targetKey = getTargetKey(log);
+        if (groupState.mPausedTargetKeys.contains(targetKey)) {
+            AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
+            return;
+        }
+
+        /* Increment counters and schedule ingestion if we are enabled. */
+        groupState.mPendingLogCount++;
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+        }
+        if (mEnabled) {
+            checkPendingLogs(groupState);
+        } else {
+            AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
+        }
+    }
+
+    /**
+     * Get the target key of the first transmission target of a log.
+     *
+     * @param log the log.
+     * @return the target key, null if the log has no transmission target.
+     */
+    @Nullable
+    private static String getTargetKey(@NonNull Log log) {
+        Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
+        return targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
     }
 
     /**
@@ -712,8 +1719,22 @@ public class DefaultChannel implements Channel {
      */
     @VisibleForTesting
     void checkPendingLogs(@NonNull GroupState groupState) {
-        AppCenterLog.debug(LOG_TAG, String.format("checkPendingLogs(%s) pendingLogCount=%s batchTimeInterval=%s",
-                groupState.mName, groupState.mPendingLogCount, groupState.mBatchTimeInterval));
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, String.format("checkPendingLogs(%s) pendingLogCount=%s batchTimeInterval=%s",
+                    groupState.mName, groupState.mPendingLogCount, groupState.mBatchTimeInterval));
+        }
+
+        /* Don't wait for the batch time interval while flushing. */
+        if (!groupState.mFlushRequests.isEmpty()) {
+            drain(groupState);
+            return;
+        }
+
+        /* Send a prefetched batch as soon as possible. */
+        if (groupState.mPrefetchedBatchId != null && !groupState.mPaused) {
+            triggerIngestion(groupState);
+            return;
+        }
         Long batchTimeInterval = resolveTriggerInterval(groupState);
 
         /* Check if there is no need to trigger ingestion. */
@@ -729,7 +1750,8 @@ public class DefaultChannel implements Channel {
         /* Postpone triggering ingestion. */
         else if (!groupState.mScheduled) {
             groupState.mScheduled = true;
-            mAppCenterHandler.postDelayed(groupState.mRunnable, batchTimeInterval);
+            groupState.mScheduledTime = System.currentTimeMillis() + batchTimeInterval;
+            scheduleTimer(groupState.mScheduledTime);
         }
     }
 
@@ -753,12 +1775,12 @@ public class DefaultChannel implements Channel {
     @WorkerThread
     private Long resolveCustomTriggerInterval(@NonNull GroupState groupState) {
         long now = System.currentTimeMillis();
-        long startTimer = SharedPreferencesManager.getLong(START_TIMER_PREFIX + groupState.mName);
+        long startTimer = getStartTimer(groupState.mName);
         if (groupState.mPendingLogCount > 0) {
 
             /* The timer isn't started or has invalid value (start time in the future), so start it and store the current time. */
             if (startTimer == 0 || startTimer > now) {
-                SharedPreferencesManager.putLong(START_TIMER_PREFIX + groupState.mName, now);
+                putStartTimer(groupState.mName, now);
                 AppCenterLog.debug(LOG_TAG, "The timer value for " + groupState.mName + " has been saved.");
                 return groupState.mBatchTimeInterval;
             }
@@ -768,16 +1790,158 @@ public class DefaultChannel implements Channel {
         } else {
 
             /* If the interval is over. */
-            if (startTimer + groupState.mBatchTimeInterval < now) {
-                SharedPreferencesManager.remove(START_TIMER_PREFIX + groupState.mName);
+            if (startTimer != 0 && startTimer + groupState.mBatchTimeInterval < now) {
+                removeStartTimer(groupState.mName);
                 AppCenterLog.debug(LOG_TAG, "The timer for " + groupState.mName + " channel finished.");
             }
             return null;
         }
     }
 
+    /**
+     * Defer the groups due at a wake-up while on a metered network whose radio is idle.
+     * If any group has to be sent now, the deferred groups are sent along with it instead.
+     *
+     * @param dueGroupStates groups due at this wake-up, emptied if they are all deferred.
+     * @param now            current time.
+     */
+    private void deferTransmission(@NonNull List<GroupState> dueGroupStates, long now) {
+        boolean send = !mRadioActivityMonitor.isNetworkMetered() || mRadioActivityMonitor.isRadioActive();
+        for (GroupState groupState : dueGroupStates) {
+            send = send || groupState.mPriority >= GROUP_PRIORITY_HIGH || !groupState.mFlushRequests.isEmpty()
+                    || (groupState.mDeferred && now - groupState.mDeferredTime >= mTransmissionMaxLatency);
+        }
+        if (send) {
+
+            /* Deferred groups piggyback on this transmission. */
+            for (GroupState groupState : mGroupStates.values()) {
+                if (groupState.mDeferred && !dueGroupStates.contains(groupState)) {
+                    groupState.mScheduled = false;
+                    dueGroupStates.add(groupState);
+                }
+            }
+            return;
+        }
+        for (GroupState groupState : dueGroupStates) {
+            if (!groupState.mDeferred) {
+                groupState.mDeferred = true;
+                groupState.mDeferredTime = now;
+            }
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Radio is idle, deferring " + groupState.mName + ".");
+            }
+            groupState.mScheduled = true;
+            groupState.mScheduledTime = Math.min(now + RADIO_CHECK_INTERVAL, groupState.mDeferredTime + mTransmissionMaxLatency);
+        }
+        dueGroupStates.clear();
+    }
+
+    /**
+     * Get the start times of group timers, loading them from storage the first time.
+     *
+     * @return start times by group name.
+     */
+    @NonNull
+    private Map<String, Long> getStartTimers() {
+        if (mStartTimers == null) {
+            mStartTimers = new HashMap<>();
+            String record = SharedPreferencesManager.getString(START_TIMERS_KEY);
+            if (record != null) {
+                for (String entry : record.split("\n")) {
+                    int separator = entry.indexOf(START_TIMER_SEPARATOR);
+                    if (separator > 0) {
+                        try {
+                            mStartTimers.put(entry.substring(separator + 1), Long.parseLong(entry.substring(0, separator)));
+                        } catch (NumberFormatException e) {
+                            AppCenterLog.warn(LOG_TAG, "Ignoring invalid timer value: " + entry);
+                        }
+                    }
+                }
+            }
+        }
+        return mStartTimers;
+    }
+
+    /**
+     * Get the start time of a group timer.
+     *
+     * @param groupName group name.
+     * @return start time, 0 if not started.
+     */
+    private long getStartTimer(String groupName) {
+        Long startTimer = getStartTimers().get(groupName);
+        return startTimer != null ? startTimer : 0;
+    }
+
+    /**
+     * Save the start time of a group timer.
+     *
+     * @param groupName group name.
+     * @param time      start time.
+     */
+    private void putStartTimer(String groupName, long time) {
+        Long previousTime = getStartTimers().put(groupName, time);
+        if (previousTime == null || previousTime != time) {
+            scheduleStartTimersWrite();
+        }
+    }
+
+    /**
+     * Remove the start time of a group timer.
+     *
+     * @param groupName group name.
+     */
+    private void removeStartTimer(String groupName) {
+        if (getStartTimers().remove(groupName) != null) {
+            scheduleStartTimersWrite();
+        }
+    }
+
+    /**
+     * Move the start time of a group timer stored by previous versions to {@link #START_TIMERS_KEY}.
+     *
+     * @param groupName group name.
+     */
+    private void migrateStartTimer(String groupName) {
+        String key = START_TIMER_PREFIX + groupName;
+        long startTimer = SharedPreferencesManager.getLong(key);
+        if (startTimer != 0) {
+            SharedPreferencesManager.remove(key);
+            putStartTimer(groupName, startTimer);
+        }
+    }
+
+    /**
+     * Write start times once the current task is done, so that several timer changes are stored at once.
+     */
+    private void scheduleStartTimersWrite() {
+        if (!mStartTimersWriteScheduled) {
+            mStartTimersWriteScheduled = true;
+            mAppCenterHandler.post(mStartTimersWriteRunnable);
+        }
+    }
+
+    /**
+     * Write start times to storage.
+     */
+    private void writeStartTimers() {
+        Map<String, Long> startTimers = getStartTimers();
+        if (startTimers.isEmpty()) {
+            SharedPreferencesManager.remove(START_TIMERS_KEY);
+            return;
+        }
+        StringBuilder record = new StringBuilder();
+        for (Map.Entry<String, Long> entry : startTimers.entrySet()) {
+            if (record.length() > 0) {
+                record.append('\n');
+            }
+            record.append(entry.getValue()).append(START_TIMER_SEPARATOR).append(entry.getKey());
+        }
+        SharedPreferencesManager.putString(START_TIMERS_KEY, record.toString());
+    }
+
     private Long resolveDefaultTriggerInterval(@NonNull GroupState groupState) {
-        if (groupState.mPendingLogCount >= groupState.mMaxLogsPerBatch) {
+        if (groupState.mPendingLogCount >= groupState.getMaxLogsPerBatch()) {
             return 0L;
         }
         return groupState.mPendingLogCount > 0 ? groupState.mBatchTimeInterval : null;
@@ -800,8 +1964,30 @@ public class DefaultChannel implements Channel {
 
     @Override
     public void shutdown() {
+
+        /* Write buffered logs synchronously, the process is likely about to be killed. */
+        persistSerializedLogs(true);
+
+        /* Stop serialization threads, logs are serialized on the App Center thread from now on. */
+        if (mSerializationExecutor instanceof ExecutorService) {
+            ((ExecutorService) mSerializationExecutor).shutdown();
+        }
+        mSerializationExecutor = null;
+        if (mPersistenceFlushScheduled) {
+            mPersistenceFlushScheduled = false;
+            mAppCenterHandler.removeCallbacks(mPersistenceFlushRunnable);
+        }
+        mPersistence.flush();
+        mContext.unregisterComponentCallbacks(mComponentCallbacks);
         mEnabled = false;
         suspend(false, new CancellationException());
+
+        /* Write start times now, the posted write might never run. */
+        if (mStartTimersWriteScheduled) {
+            mStartTimersWriteScheduled = false;
+            mAppCenterHandler.removeCallbacks(mStartTimersWriteRunnable);
+            writeStartTimers();
+        }
     }
 
     @Override
@@ -838,6 +2024,11 @@ public class DefaultChannel implements Channel {
          */
         final long mBatchTimeInterval;
 
+        /**
+         * Maximum size in bytes of serialized logs per batch, 0 for no limit.
+         */
+        final long mMaxBytesPerBatch;
+
         /**
          * Maximum number of batches in parallel.
          */
@@ -845,9 +2036,15 @@ public class DefaultChannel implements Channel {
 
         /**
          * Batches being currently sent to ingestion.
+         * Batches sent serialized only contain the logs needed by the listener.
          */
         final Map<String, List<Log>> mSendingBatches = new HashMap<>();
 
+        /**
+         * Log counts of batches being currently sent serialized.
+         */
+        final Map<String, Integer> mSendingSerializedBatches = new HashMap<>();
+
         /**
          * Ingestion for the group state.
          */
@@ -868,6 +2065,21 @@ public class DefaultChannel implements Channel {
          */
         boolean mScheduled;
 
+        /**
+         * Time when the scheduled timer is due.
+         */
+        long mScheduledTime;
+
+        /**
+         * Whether the timed batch is deferred until the radio is active.
+         */
+        boolean mDeferred;
+
+        /**
+         * Time when the timed batch was first deferred.
+         */
+        long mDeferredTime;
+
         /**
          * Indicates if the group is paused.
          */
@@ -879,35 +2091,231 @@ public class DefaultChannel implements Channel {
         final Collection<String> mPausedTargetKeys = new HashSet<>();
 
         /**
-         * Runnable that triggers ingestion of this group data
-         * and triggers itself in {@link #mBatchTimeInterval} ms.
+         * Adaptive batching state, null to use {@link #mMaxLogsPerBatch} and {@link #mMaxParallelBatches}.
          */
-        final Runnable mRunnable = new Runnable() {
+        AdaptiveBatching mAdaptiveBatching;
 
-            @Override
-            public void run() {
-                mScheduled = false;
-                triggerIngestion(GroupState.this);
-            }
-        };
+        /**
+         * Flush requests waiting for this group to be drained, the group is in drain mode when not empty.
+         */
+        final List<FlushRequest> mFlushRequests = new ArrayList<>();
+
+        /**
+         * Whether to read the next batch in advance while the maximum number of batches are being sent.
+         */
+        boolean mPrefetch;
+
+        /**
+         * Identifier of the batch read in advance, null if none.
+         */
+        String mPrefetchedBatchId;
+
+        /**
+         * Logs of the batch read in advance, only the ones needed by the listener if sent serialized.
+         */
+        List<Log> mPrefetchedBatch;
+
+        /**
+         * Serialized logs of the batch read in advance, null if not sent serialized.
+         */
+        SerializedLogContainer mPrefetchedSerializedBatch;
+
+        /**
+         * Priority when waiting for a request slot, one of the <code>GROUP_PRIORITY_*</code> constants.
+         */
+        int mPriority = GROUP_PRIORITY_NORMAL;
+
+        /**
+         * Share of request slots among groups of the same priority.
+         */
+        int mWeight = 1;
+
+        /**
+         * Virtual time of the next batch, advanced by the inverse of {@link #mWeight} for each batch sent.
+         */
+        double mVirtualTime;
+
+        /**
+         * Whether the group is waiting for a request slot.
+         */
+        boolean mQueued;
+
+        /**
+         * Time when the group started waiting for a request slot.
+         */
+        long mQueuedTime;
+
+        /**
+         * Number of times the group waited for a request slot.
+         */
+        int mQueuedRequestCount;
+
+        /**
+         * Total time spent waiting for request slots, in ms.
+         */
+        long mTotalQueueingDelay;
+
+        /**
+         * Longest time spent waiting for a request slot, in ms.
+         */
+        long mMaxQueueingDelay;
 
         /**
          * Init.
          *
          * @param name               group name.
          * @param maxLogsPerBatch    max batch size.
+         * @param maxBytesPerBatch   max batch size in bytes, 0 for no limit.
          * @param batchTimeInterval  batch interval in ms.
          * @param maxParallelBatches max number of parallel batches.
          * @param ingestion          ingestion for the group state.
          * @param listener           listener for a service.
          */
-        GroupState(String name, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, Ingestion ingestion, GroupListener listener) {
+        GroupState(String name, int maxLogsPerBatch, long maxBytesPerBatch, long batchTimeInterval, int maxParallelBatches, Ingestion ingestion, GroupListener listener) {
             mName = name;
             mMaxLogsPerBatch = maxLogsPerBatch;
+            mMaxBytesPerBatch = maxBytesPerBatch;
             mBatchTimeInterval = batchTimeInterval;
             mMaxParallelBatches = maxParallelBatches;
             mIngestion = ingestion;
             mListener = listener;
         }
+
+        /**
+         * Get the current maximum log count per batch.
+         *
+         * @return the maximum log count per batch.
+         */
+        int getMaxLogsPerBatch() {
+            return mAdaptiveBatching != null ? mAdaptiveBatching.getLogsPerBatch() : mMaxLogsPerBatch;
+        }
+
+        /**
+         * Get the current maximum number of batches in parallel.
+         *
+         * @return the maximum number of batches in parallel.
+         */
+        int getMaxParallelBatches() {
+            return mAdaptiveBatching != null && mFlushRequests.isEmpty() ? mAdaptiveBatching.getParallelBatches() : mMaxParallelBatches;
+        }
+
+        /**
+         * Get the number of batches being currently sent.
+         *
+         * @return the number of batches being sent.
+         */
+        int getSendingBatchCount() {
+            return mSendingBatches.size();
+        }
+
+        /**
+         * Get the number of logs in a batch being sent.
+         *
+         * @param batchId the batch identifier.
+         * @return the number of logs, 0 if the batch is not being sent.
+         */
+        int getSendingLogCount(String batchId) {
+            Integer serializedLogCount = mSendingSerializedBatches.get(batchId);
+            if (serializedLogCount != null) {
+                return serializedLogCount;
+            }
+            List<Log> logs = mSendingBatches.get(batchId);
+            return logs != null ? logs.size() : 0;
+        }
+    }
+
+    /**
+     * Flush request shared by the groups it drains.
+     */
+    private static class FlushRequest {
+
+        /**
+         * Future to complete once all groups are drained.
+         */
+        final DefaultAppCenterFuture<FlushResult> mFuture;
+
+        /**
+         * Number of groups not yet drained.
+         */
+        int mRemainingGroupCount;
+
+        /**
+         * Number of logs sent successfully.
+         */
+        int mSentLogCount;
+
+        /**
+         * Number of logs that failed to be sent.
+         */
+        int mFailedLogCount;
+
+        FlushRequest(DefaultAppCenterFuture<FlushResult> future, int groupCount) {
+            mFuture = future;
+            mRemainingGroupCount = groupCount;
+        }
+
+        void onGroupDrained() {
+            if (--mRemainingGroupCount == 0) {
+                mFuture.complete(new FlushResult(mSentLogCount, mFailedLogCount));
+            }
+        }
+    }
+
+    /**
+     * A log waiting to be persisted, serialized by {@link #mSerializationExecutor} or on the App Center thread.
+     */
+    private static class SerializingLog {
+
+        /**
+         * The log.
+         */
+        final Log mLog;
+
+        /**
+         * Group name.
+         */
+        final String mGroupName;
+
+        /**
+         * Persistence flags.
+         */
+        final int mFlags;
+
+        /**
+         * True once serialization was attempted.
+         */
+        private boolean mSerialized;
+
+        /**
+         * Serialized log, null if serialization failed.
+         */
+        private String mSerializedLog;
+
+        SerializingLog(Log log, String groupName, int flags) {
+            mLog = log;
+            mGroupName = groupName;
+            mFlags = flags;
+        }
+
+        synchronized void serialize(Persistence persistence) {
+            if (!mSerialized) {
+                try {
+                    mSerializedLog = persistence.serializeLog(mLog);
+                } catch (JSONException | RuntimeException e) {
+
+                    /* Persistence serializes the log again and reports the error. */
+                    AppCenterLog.debug(LOG_TAG, "Failed to serialize log of type '" + mLog.getType() + "' ahead of persisting it.");
+                }
+                mSerialized = true;
+            }
+        }
+
+        synchronized boolean isSerialized() {
+            return mSerialized;
+        }
+
+        synchronized String getSerializedLog() {
+            return mSerializedLog;
+        }
     }
 }
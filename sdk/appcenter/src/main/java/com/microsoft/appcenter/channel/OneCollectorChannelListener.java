@@ -41,6 +41,12 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
     @VisibleForTesting
     static final int ONE_COLLECTOR_TRIGGER_MAX_PARALLEL_REQUESTS = 2;
 
+    /**
+     * Maximum size in bytes of logs per request, same as the size limit of a single log.
+     */
+    @VisibleForTesting
+    static final long ONE_COLLECTOR_TRIGGER_MAX_BYTES = (long) (1.9 * 1024 * 1024);
+
     /**
      * Postfix for One Collector's groups.
      */
@@ -107,7 +113,7 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
             return;
         }
         String oneCollectorGroupName = getOneCollectorGroupName(groupName);
-        mChannel.addGroup(oneCollectorGroupName, ONE_COLLECTOR_TRIGGER_COUNT, batchTimeInterval, ONE_COLLECTOR_TRIGGER_MAX_PARALLEL_REQUESTS, mIngestion, groupListener);
+        mChannel.addGroup(oneCollectorGroupName, ONE_COLLECTOR_TRIGGER_COUNT, ONE_COLLECTOR_TRIGGER_MAX_BYTES, batchTimeInterval, ONE_COLLECTOR_TRIGGER_MAX_PARALLEL_REQUESTS, mIngestion, groupListener);
     }
 
     @Override
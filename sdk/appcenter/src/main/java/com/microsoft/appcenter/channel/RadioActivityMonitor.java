@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.net.TrafficStats;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+
+/**
+ * Estimates whether the cellular radio is already in a high-power state from the network traffic of the device,
+ * and counts the radio wake-ups caused by sending logs.
+ */
+class RadioActivityMonitor {
+
+    /**
+     * Time in ms the radio stays in a high-power state after network traffic.
+     */
+    @VisibleForTesting
+    static final long RADIO_TAIL_TIME = 10000;
+
+    /**
+     * Network state helper.
+     */
+    private final NetworkStateHelper mNetworkStateHelper;
+
+    /**
+     * Total bytes received and sent by the device at the last check, -1 before the first check.
+     */
+    private long mLastTrafficBytes = -1;
+
+    /**
+     * Last time network traffic was detected, or time of the first check as activity is unknown before.
+     */
+    private long mLastActivityTime;
+
+    /**
+     * Number of times sending logs woke the radio up.
+     */
+    private int mWakeupCount;
+
+    /**
+     * Init.
+     *
+     * @param networkStateHelper network state helper.
+     */
+    RadioActivityMonitor(@NonNull NetworkStateHelper networkStateHelper) {
+        mNetworkStateHelper = networkStateHelper;
+    }
+
+    /**
+     * Check whether the active network is metered, waking its radio up has a cost.
+     *
+     * @return true if metered.
+     */
+    boolean isNetworkMetered() {
+        return mNetworkStateHelper.isNetworkMetered();
+    }
+
+    /**
+     * Check whether there was network traffic recently enough for the radio to still be in a high-power state.
+     * Traffic is detected by comparing device counters between calls, the first call only takes a baseline.
+     *
+     * @return true if the radio is likely active, or if activity cannot be known yet or at all.
+     */
+    boolean isRadioActive() {
+        long now = System.currentTimeMillis();
+        long rxBytes = TrafficStats.getTotalRxBytes();
+        long txBytes = TrafficStats.getTotalTxBytes();
+        if (rxBytes == TrafficStats.UNSUPPORTED || txBytes == TrafficStats.UNSUPPORTED) {
+            return true;
+        }
+        long trafficBytes = rxBytes + txBytes;
+        if (mLastTrafficBytes < 0 || trafficBytes != mLastTrafficBytes) {
+            mLastActivityTime = now;
+        }
+        mLastTrafficBytes = trafficBytes;
+        return now - mLastActivityTime < RADIO_TAIL_TIME;
+    }
+
+    /**
+     * Called before sending a request, counts a wake-up if the radio of a metered network was idle.
+     */
+    void onSending() {
+        if (isNetworkMetered() && !isRadioActive()) {
+            mWakeupCount++;
+        }
+        mLastActivityTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the number of times sending logs woke the radio up.
+     *
+     * @return number of radio wake-ups.
+     */
+    int getWakeupCount() {
+        return mWakeupCount;
+    }
+}
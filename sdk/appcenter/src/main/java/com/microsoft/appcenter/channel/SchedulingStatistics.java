@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+/**
+ * Result of {@link Channel#getSchedulingStatistics(String)}.
+ */
+public class SchedulingStatistics {
+
+    /**
+     * Number of times the group waited for a request slot.
+     */
+    private final int mQueuedRequestCount;
+
+    /**
+     * Total time spent waiting for request slots, in ms.
+     */
+    private final long mTotalQueueingDelay;
+
+    /**
+     * Longest time spent waiting for a request slot, in ms.
+     */
+    private final long mMaxQueueingDelay;
+
+    /**
+     * Init.
+     *
+     * @param queuedRequestCount number of times the group waited for a request slot.
+     * @param totalQueueingDelay total time spent waiting for request slots, in ms.
+     * @param maxQueueingDelay   longest time spent waiting for a request slot, in ms.
+     */
+    public SchedulingStatistics(int queuedRequestCount, long totalQueueingDelay, long maxQueueingDelay) {
+        mQueuedRequestCount = queuedRequestCount;
+        mTotalQueueingDelay = totalQueueingDelay;
+        mMaxQueueingDelay = maxQueueingDelay;
+    }
+
+    /**
+     * Get the number of times the group waited for a request slot.
+     *
+     * @return number of times the group waited for a request slot.
+     */
+    public int getQueuedRequestCount() {
+        return mQueuedRequestCount;
+    }
+
+    /**
+     * Get the total time spent waiting for request slots.
+     *
+     * @return total queueing delay in ms.
+     */
+    public long getTotalQueueingDelay() {
+        return mTotalQueueingDelay;
+    }
+
+    /**
+     * Get the longest time spent waiting for a request slot.
+     *
+     * @return maximum queueing delay in ms.
+     */
+    public long getMaxQueueingDelay() {
+        return mMaxQueueingDelay;
+    }
+}
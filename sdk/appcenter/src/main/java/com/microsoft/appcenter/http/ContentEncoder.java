@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compression applied to request bodies by {@link DefaultHttpClient}.
+ */
+public interface ContentEncoder {
+
+    /**
+     * Get the value of the Content-Encoding header for bodies encoded by this encoder.
+     *
+     * @return content encoding name.
+     */
+    @NonNull
+    String getContentEncoding();
+
+    /**
+     * Get the minimum body length worth encoding, shorter bodies are sent as is when their length is known.
+     *
+     * @return minimum length in bytes.
+     */
+    int getMinLength();
+
+    /**
+     * Wrap an output stream so that what is written to it is encoded.
+     * Closing the returned stream finishes encoding and closes the wrapped stream.
+     *
+     * @param out stream receiving the encoded body.
+     * @return stream to write the body to.
+     * @throws IOException if the encoding header cannot be written.
+     */
+    @NonNull
+    OutputStream encode(@NonNull OutputStream out) throws IOException;
+}
@@ -5,7 +5,8 @@
 
 package com.microsoft.appcenter.http;
 
-import android.os.AsyncTask;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -14,7 +15,13 @@ import com.microsoft.appcenter.utils.HandlerUtils;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 
@@ -68,22 +75,122 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
      */
     static final String CONTENT_ENCODING_VALUE = "gzip";
 
+    /**
+     * Default maximum number of calls executed in parallel by clients not created by App Center,
+     * which uses {@link com.microsoft.appcenter.AppCenter#setMaxParallelRequests(int)} instead.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 4;
+
+    /**
+     * Default maximum number of calls waiting for a thread.
+     */
+    public static final int DEFAULT_MAX_QUEUED_CALLS = 32;
+
+    /**
+     * Time after which an idle thread is stopped.
+     */
+    @VisibleForTesting
+    static final long THREAD_KEEP_ALIVE_TIME = 30 * 1000;
+
+    /**
+     * Name prefix of the threads executing calls.
+     */
+    @VisibleForTesting
+    static final String THREAD_NAME_PREFIX = "AppCenter.Http-";
+
+    /**
+     * Counter used to name threads.
+     */
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
     /**
      * List of ongoing call tasks.
      */
     private final Set<DefaultHttpClientCallTask> mTasks = new HashSet<>();
 
     /**
-     * Indicates whether compression is enabled.
+     * Encoder compressing request bodies, null if compression is disabled.
+     */
+    private final ContentEncoder mContentEncoder;
+
+    /**
+     * Executor of this client's calls, not shared with the application's AsyncTasks.
      */
-    private final boolean mCompressionEnabled;
+    private final ThreadPoolExecutor mThreadPoolExecutor;
+
+    /**
+     * Executor given to tasks, measures the time calls wait for a thread.
+     */
+    private final Executor mExecutor = new Executor() {
+
+        @Override
+        public void execute(@NonNull final Runnable command) {
+            final long queuedTime = System.currentTimeMillis();
+            mThreadPoolExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    onCallDequeued(System.currentTimeMillis() - queuedTime);
+                    command.run();
+                }
+            });
+        }
+    };
+
+    /**
+     * Number of calls that started executing.
+     */
+    private long mExecutedCallCount;
+
+    /**
+     * Sum of the time calls waited for a thread.
+     */
+    private long mTotalCallWaitTime;
+
+    /**
+     * Longest time a call waited for a thread.
+     */
+    private long mMaxCallWaitTime;
 
     public DefaultHttpClient() {
         this(true);
     }
 
     public DefaultHttpClient(boolean compressionEnabled) {
-        mCompressionEnabled = compressionEnabled;
+        this(compressionEnabled, DEFAULT_MAX_CONCURRENT_CALLS, DEFAULT_MAX_QUEUED_CALLS);
+    }
+
+    /**
+     * Init.
+     *
+     * @param compressionEnabled whether to compress request bodies.
+     * @param maxConcurrentCalls maximum number of calls executed in parallel.
+     * @param maxQueuedCalls     maximum number of calls waiting for a thread, further calls fail
+     *                           with {@link HttpClientBusyException}.
+     */
+    public DefaultHttpClient(boolean compressionEnabled, int maxConcurrentCalls, int maxQueuedCalls) {
+        this(compressionEnabled ? new GzipContentEncoder() : null, maxConcurrentCalls, maxQueuedCalls);
+    }
+
+    /**
+     * Init.
+     *
+     * @param contentEncoder     encoder compressing request bodies, null to disable compression.
+     * @param maxConcurrentCalls maximum number of calls executed in parallel.
+     * @param maxQueuedCalls     maximum number of calls waiting for a thread, further calls fail
+     *                           with {@link HttpClientBusyException}.
+     */
+    public DefaultHttpClient(@Nullable ContentEncoder contentEncoder, int maxConcurrentCalls, int maxQueuedCalls) {
+        mContentEncoder = contentEncoder;
+        mThreadPoolExecutor = new ThreadPoolExecutor(maxConcurrentCalls, maxConcurrentCalls, THREAD_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(maxQueuedCalls), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(runnable, THREAD_NAME_PREFIX + sThreadCount.incrementAndGet());
+            }
+        });
+        mThreadPoolExecutor.allowCoreThreadTimeOut(true);
     }
 
     @VisibleForTesting
@@ -91,24 +198,82 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
         return mTasks;
     }
 
+    @VisibleForTesting
+    Executor getExecutor() {
+        return mExecutor;
+    }
+
+    /**
+     * Get the maximum number of calls executed in parallel.
+     *
+     * @return the maximum number of concurrent calls.
+     */
+    public int getMaxConcurrentCalls() {
+        return mThreadPoolExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * Get the number of calls waiting for a thread.
+     *
+     * @return the number of queued calls.
+     */
+    public int getQueuedCallCount() {
+        return mThreadPoolExecutor.getQueue().size();
+    }
+
+    /**
+     * Get the number of calls that started executing.
+     *
+     * @return the number of executed calls.
+     */
+    public synchronized long getExecutedCallCount() {
+        return mExecutedCallCount;
+    }
+
+    /**
+     * Get the sum of the time calls waited for a thread.
+     *
+     * @return total wait time in milliseconds.
+     */
+    public synchronized long getTotalCallWaitTime() {
+        return mTotalCallWaitTime;
+    }
+
+    /**
+     * Get the longest time a call waited for a thread.
+     *
+     * @return maximum wait time in milliseconds.
+     */
+    public synchronized long getMaxCallWaitTime() {
+        return mMaxCallWaitTime;
+    }
+
+    private synchronized void onCallDequeued(long waitTime) {
+        mExecutedCallCount++;
+        mTotalCallWaitTime += waitTime;
+        mMaxCallWaitTime = Math.max(mMaxCallWaitTime, waitTime);
+    }
+
     @Override
     public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, final ServiceCallback serviceCallback) {
-        final DefaultHttpClientCallTask task = new DefaultHttpClientCallTask(url, method, headers, callTemplate, serviceCallback, this, mCompressionEnabled);
+        final DefaultHttpClientCallTask task = new DefaultHttpClientCallTask(url, method, headers, callTemplate, serviceCallback, this, mContentEncoder, isKeepAliveEnabled());
         try {
-            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            task.executeOnExecutor(mExecutor);
         } catch (final RejectedExecutionException e) {
 
             /*
-             * When executor saturated (shared with app), we should use the retry mechanism
-             * rather than creating more threads to avoid putting too much pressure on the hosting app.
+             * When all threads are busy and the queue is full, report back-pressure so that
+             * the caller sends again once a call completes instead of failing.
              * Also we need to return the method before calling the listener,
              * so we post the callback on handler to make sure of that.
              */
+            AppCenterLog.debug(LOG_TAG, "HTTP executor is saturated, " + getQueuedCallCount() + " call(s) queued.");
+            onFinish(task);
             HandlerUtils.runOnUiThread(new Runnable() {
 
                 @Override
                 public void run() {
-                    serviceCallback.onCallFailed(e);
+                    serviceCallback.onCallFailed(new HttpClientBusyException(e));
                 }
             });
         }
@@ -152,6 +317,15 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
 
     @VisibleForTesting
     boolean isCompressionEnabled() {
-        return mCompressionEnabled;
+        return mContentEncoder != null;
+    }
+
+    /**
+     * Check whether connections are left open after a call so that the next call to the same host reuses them.
+     *
+     * @return true to keep connections alive, false to close them after every call.
+     */
+    boolean isKeepAliveEnabled() {
+        return false;
     }
 }
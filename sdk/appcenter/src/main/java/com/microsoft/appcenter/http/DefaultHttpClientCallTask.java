@@ -11,27 +11,27 @@ import android.util.Log;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CHARSET_NAME;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_ENCODING_KEY;
-import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_ENCODING_VALUE;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_VALUE;
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
@@ -53,9 +53,14 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
     private static final int DEFAULT_STRING_BUILDER_CAPACITY = 16;
 
     /**
-     * Minimum payload length in bytes to use gzip.
+     * Compression buffers larger than this are not kept for the next call.
      */
-    private static final int MIN_GZIP_LENGTH = 1400;
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Buffer receiving compressed payloads of known length, reused by calls on the same thread.
+     */
+    private static final ThreadLocal<PayloadBuffer> sCompressionBuffer = new ThreadLocal<>();
 
     /**
      * Maximum payload length to use prettify for logging.
@@ -89,16 +94,22 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
 
     private final Tracker mTracker;
 
-    private final boolean mCompressionEnabled;
+    private final ContentEncoder mContentEncoder;
+
+    /**
+     * Whether the connection is left open for reuse after a complete response.
+     */
+    private final boolean mKeepAlive;
 
-    DefaultHttpClientCallTask(String url, String method, Map<String, String> headers, HttpClient.CallTemplate callTemplate, ServiceCallback serviceCallback, Tracker tracker, boolean compressionEnabled) {
+    DefaultHttpClientCallTask(String url, String method, Map<String, String> headers, HttpClient.CallTemplate callTemplate, ServiceCallback serviceCallback, Tracker tracker, ContentEncoder contentEncoder, boolean keepAlive) {
         mUrl = url;
         mMethod = method;
         mHeaders = headers;
         mCallTemplate = callTemplate;
         mServiceCallback = serviceCallback;
         mTracker = tracker;
-        mCompressionEnabled = compressionEnabled;
+        mContentEncoder = contentEncoder;
+        mKeepAlive = keepAlive;
     }
 
     private static InputStream getInputStream(HttpsURLConnection httpsURLConnection) throws IOException {
@@ -113,15 +124,40 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
     /**
      * Write payload to output stream.
      */
-    private void writePayload(OutputStream out, byte[] payload) throws IOException {
-        for (int i = 0; i < payload.length; i += WRITE_BUFFER_SIZE) {
-            out.write(payload, i, min(payload.length - i, WRITE_BUFFER_SIZE));
+    private void writePayload(OutputStream out, byte[] payload, int length) throws IOException {
+        for (int i = 0; i < length; i += WRITE_BUFFER_SIZE) {
+            out.write(payload, i, min(length - i, WRITE_BUFFER_SIZE));
             if (isCancelled()) {
                 break;
             }
         }
     }
 
+    /**
+     * Write payload directly to the connection using chunked transfer encoding,
+     * so that the request body is never entirely in memory.
+     *
+     * @return number of bytes sent, after compression.
+     */
+    private long writeStreamingPayload(HttpsURLConnection httpsURLConnection, boolean compress) throws IOException, JSONException {
+        httpsURLConnection.setDoOutput(true);
+        httpsURLConnection.setChunkedStreamingMode(0);
+        CountingOutputStream countingStream = new CountingOutputStream(httpsURLConnection.getOutputStream());
+        OutputStream out = countingStream;
+        if (compress) {
+            out = mContentEncoder.encode(out);
+        }
+        Writer writer = new OutputStreamWriter(out, CHARSET_NAME);
+        ((HttpClient.StreamingCallTemplate) mCallTemplate).writeRequestBody(writer);
+
+        /*
+         * Closing writes the compression trailer and the last chunk, so only do it once the body is complete.
+         * If writing fails, the connection is disconnected instead so that the server never gets a truncated body that looks complete.
+         */
+        writer.close();
+        return countingStream.mCount;
+    }
+
     /**
      * Dump response stream to a string.
      */
@@ -156,8 +192,11 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
      * Do http call.
      */
     private HttpResponse doHttpCall() throws Exception {
+        long startTime = System.currentTimeMillis();
+        long requestSize = 0;
         URL url = new URL(mUrl);
         HttpsURLConnection httpsURLConnection = createHttpsConnection(url);
+        boolean reusable = false;
         try {
 
             /* Build payload now if POST. */
@@ -166,12 +205,19 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             byte[] binaryPayload = null;
             boolean shouldCompress = false;
             boolean isPost = mMethod.equals(METHOD_POST);
-            if (isPost && mCallTemplate != null) {
+
+            /* Stream the body unless it must be logged, the size is unknown so always compress. */
+            boolean streaming = isPost && mCallTemplate instanceof HttpClient.StreamingCallTemplate && AppCenterLog.getLogLevel() > Log.VERBOSE;
+            if (streaming) {
+                shouldCompress = mContentEncoder != null;
+            } else if (isPost && mCallTemplate != null) {
 
                 /* Get bytes, check if large enough to compress. */
                 payload = mCallTemplate.buildRequestBody();
                 binaryPayload = payload.getBytes(CHARSET_NAME);
-                shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                shouldCompress = mContentEncoder != null && binaryPayload.length >= mContentEncoder.getMinLength();
+            }
+            if (isPost && mCallTemplate != null) {
 
                 /* If no content type specified, assume json. */
                 if (!mHeaders.containsKey(CONTENT_TYPE_KEY)) {
@@ -181,7 +227,7 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
 
             /* If about to compress, add corresponding header. */
             if (shouldCompress) {
-                mHeaders.put(CONTENT_ENCODING_KEY, CONTENT_ENCODING_VALUE);
+                mHeaders.put(CONTENT_ENCODING_KEY, mContentEncoder.getContentEncoding());
             }
 
             /* Send headers. */
@@ -198,7 +244,9 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             }
 
             /* Send payload. */
-            if (binaryPayload != null) {
+            if (streaming) {
+                requestSize = writeStreamingPayload(httpsURLConnection, shouldCompress);
+            } else if (binaryPayload != null) {
 
                 /* Log payload. */
                 if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
@@ -211,25 +259,39 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                     AppCenterLog.verbose(LOG_TAG, payload);
                 }
 
-                /* Compress payload if large enough to be worth it. */
+                /* Compress payload if large enough to be worth it, into a buffer reused by the next calls. */
+                int length = binaryPayload.length;
+                PayloadBuffer compressionBuffer = null;
                 if (shouldCompress) {
-                    ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
-                    GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
-                    gzipStream.write(binaryPayload);
-                    gzipStream.close();
-                    binaryPayload = gzipBuffer.toByteArray();
+                    compressionBuffer = sCompressionBuffer.get();
+                    if (compressionBuffer == null) {
+                        compressionBuffer = new PayloadBuffer();
+                        sCompressionBuffer.set(compressionBuffer);
+                    }
+                    compressionBuffer.reset();
+                    OutputStream compressionStream = mContentEncoder.encode(compressionBuffer);
+                    compressionStream.write(binaryPayload);
+                    compressionStream.close();
+                    binaryPayload = compressionBuffer.getBuffer();
+                    length = compressionBuffer.size();
                 }
 
                 /* Send payload on the wire. */
+                requestSize = length;
                 httpsURLConnection.setDoOutput(true);
-                httpsURLConnection.setFixedLengthStreamingMode(binaryPayload.length);
+                httpsURLConnection.setFixedLengthStreamingMode(length);
                 OutputStream out = httpsURLConnection.getOutputStream();
 
                 //noinspection TryFinallyCanBeTryWithResources
                 try {
-                    writePayload(out, binaryPayload);
+                    writePayload(out, binaryPayload, length);
                 } finally {
                     out.close();
+
+                    /* Don't hold on to the memory of an unusually large payload. */
+                    if (compressionBuffer != null && compressionBuffer.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+                        sCompressionBuffer.remove();
+                    }
                 }
             }
             if (isCancelled()) {
@@ -250,11 +312,12 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 }
                 AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status + " payload=" + logPayload);
             }
-            Map<String, String> responseHeaders = new HashMap<>();
-            for (Map.Entry<String, List<String>> header : httpsURLConnection.getHeaderFields().entrySet()) {
-                responseHeaders.put(header.getKey(), header.getValue().iterator().next());
-            }
-            HttpResponse httpResponse = new HttpResponse(status, response, responseHeaders);
+
+            /* Headers are only converted if read, they are usually not on success. */
+            HttpResponse httpResponse = HttpResponse.fromHeaderFields(status, response, httpsURLConnection.getHeaderFields(), requestSize, System.currentTimeMillis() - startTime);
+
+            /* The response was read until the end, the connection can serve the next call. */
+            reusable = !isCancelled();
 
             /* Accept all 2xx codes. */
             if (status >= 200 && status < 300) {
@@ -265,8 +328,13 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             throw new HttpException(httpResponse);
         } finally {
 
-            /* Release connection. */
-            httpsURLConnection.disconnect();
+            /*
+             * Release connection. Disconnecting closes the socket on most Android versions,
+             * so keep it in the connection pool when it is in a clean state.
+             */
+            if (!mKeepAlive || !reusable) {
+                httpsURLConnection.disconnect();
+            }
         }
     }
 
@@ -311,6 +379,43 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         }
     }
 
+    /**
+     * Byte array output stream giving access to its buffer to avoid copying it.
+     */
+    private static class PayloadBuffer extends ByteArrayOutputStream {
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Output stream counting the bytes written to the connection.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * Number of bytes written.
+         */
+        long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+    }
+
     /**
      * The callback used for maintain ongoing call tasks.
      */
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_ENCODING_VALUE;
+import static com.microsoft.appcenter.http.HttpUtils.WRITE_BUFFER_SIZE;
+
+/**
+ * Gzip encoder reusing one {@link Deflater} per thread, unlike {@link java.util.zip.GZIPOutputStream}
+ * that allocates a new native deflater for every body.
+ */
+public class GzipContentEncoder implements ContentEncoder {
+
+    /**
+     * Default minimum body length worth compressing.
+     */
+    public static final int DEFAULT_MIN_LENGTH = 1400;
+
+    /**
+     * Gzip header: magic number, deflate method, no flags, no modification time, no extra flags and OS.
+     */
+    private static final byte[] HEADER = {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * Deflater of each thread, threads executing calls are reused so it is allocated once per thread.
+     */
+    private static final ThreadLocal<Deflater> sDeflater = new ThreadLocal<>();
+
+    /**
+     * Compression level.
+     */
+    private final int mLevel;
+
+    /**
+     * Minimum body length worth compressing.
+     */
+    private final int mMinLength;
+
+    public GzipContentEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION, DEFAULT_MIN_LENGTH);
+    }
+
+    /**
+     * Init.
+     *
+     * @param level     compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+     *                  or {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param minLength minimum body length worth compressing.
+     */
+    public GzipContentEncoder(int level, int minLength) {
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        mLevel = level;
+        mMinLength = minLength;
+    }
+
+    @NonNull
+    @Override
+    public String getContentEncoding() {
+        return CONTENT_ENCODING_VALUE;
+    }
+
+    @Override
+    public int getMinLength() {
+        return mMinLength;
+    }
+
+    /**
+     * Get the compression level.
+     *
+     * @return compression level.
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    @NonNull
+    @Override
+    public OutputStream encode(@NonNull OutputStream out) throws IOException {
+        Deflater deflater = sDeflater.get();
+        if (deflater == null) {
+            deflater = new Deflater(mLevel, true);
+            sDeflater.set(deflater);
+        } else {
+            deflater.reset();
+            deflater.setLevel(mLevel);
+        }
+        out.write(HEADER);
+        return new GzipOutputStream(out, deflater);
+    }
+
+    /**
+     * Deflate stream with gzip trailer, the deflater is not released when closing.
+     */
+    private static class GzipOutputStream extends DeflaterOutputStream {
+
+        /**
+         * Checksum of uncompressed data.
+         */
+        private final CRC32 mCrc = new CRC32();
+
+        GzipOutputStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, WRITE_BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            super.write(buffer, offset, length);
+            mCrc.update(buffer, offset, length);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!def.finished()) {
+                super.finish();
+                writeInt((int) mCrc.getValue());
+                writeInt(def.getTotalIn());
+            }
+        }
+
+        /**
+         * Write a 32-bit integer in little-endian order.
+         */
+        private void writeInt(int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+            out.write((value >> 16) & 0xff);
+            out.write((value >> 24) & 0xff);
+        }
+    }
+}
@@ -8,6 +8,8 @@ package com.microsoft.appcenter.http;
 import org.json.JSONException;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
 import java.net.URL;
 import java.util.Map;
 
@@ -50,6 +52,23 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Call callbacks that can write the request body directly to the connection
+     * instead of building it in memory first.
+     */
+    interface StreamingCallTemplate extends CallTemplate {
+
+        /**
+         * Called when the method is POST to write the request body.
+         * The output is the same as {@link #buildRequestBody()}.
+         *
+         * @param writer where to write the request body, compressed and sent as it is written.
+         * @throws IOException   if writing fails.
+         * @throws JSONException callback can throw this to make the call fail if a JSON error occurs.
+         */
+        void writeRequestBody(Writer writer) throws IOException, JSONException;
+    }
+
     /**
      * Make this client active again after closing.
      */
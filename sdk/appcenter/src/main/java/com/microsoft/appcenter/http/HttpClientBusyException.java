@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reported when a call is rejected because all the HTTP threads are busy and the queue of calls is full.
+ * The call was not attempted, the caller should send it again when one of its calls completes.
+ */
+public class HttpClientBusyException extends RejectedExecutionException {
+
+    /**
+     * Init.
+     *
+     * @param cause the rejection from the executor.
+     */
+    public HttpClientBusyException(RejectedExecutionException cause) {
+        super("Too many HTTP calls in progress.", cause);
+    }
+}
@@ -96,7 +96,9 @@ public class HttpClientRetryer extends HttpClientDecorator {
 
         @Override
         public void onCallFailed(Exception e) {
-            if (mRetryCount < RETRY_INTERVALS.length && HttpUtils.isRecoverableError(e)) {
+
+            /* A busy client is retried by the caller when one of its calls completes. */
+            if (mRetryCount < RETRY_INTERVALS.length && HttpUtils.isRecoverableError(e) && !(e instanceof HttpClientBusyException)) {
                 long delay = 0;
                 if (e instanceof HttpException) {
                     HttpException httpException = (HttpException) e;
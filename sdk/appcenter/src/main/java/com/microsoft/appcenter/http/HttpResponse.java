@@ -8,6 +8,7 @@ package com.microsoft.appcenter.http;
 import androidx.annotation.NonNull;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -26,9 +27,24 @@ public class HttpResponse {
     private final String payload;
 
     /**
-     * HTTP headers.
+     * HTTP headers, converted from {@link #headerFields} when first read.
      */
-    private final Map<String, String> headers;
+    private Map<String, String> headers;
+
+    /**
+     * HTTP header fields as returned by the connection, null once converted.
+     */
+    private Map<String, List<String>> headerFields;
+
+    /**
+     * Size in bytes of the request body as sent on the network, -1 if unknown.
+     */
+    private final long requestSize;
+
+    /**
+     * Time in milliseconds from the call starting to execute to the response being read, -1 if unknown.
+     */
+    private final long callDuration;
 
     /**
      * Init with empty response body.
@@ -57,9 +73,33 @@ public class HttpResponse {
      * @param headers HTTP responseHeaders.
      */
     public HttpResponse(int status, @NonNull String payload, @NonNull Map<String, String> headers) {
+        this(status, payload, headers, null, -1, -1);
+    }
+
+    /**
+     * Init with either converted headers or header fields.
+     */
+    private HttpResponse(int status, @NonNull String payload, Map<String, String> headers, Map<String, List<String>> headerFields, long requestSize, long callDuration) {
         this.payload = payload;
         this.statusCode = status;
         this.headers = headers;
+        this.headerFields = headerFields;
+        this.requestSize = requestSize;
+        this.callDuration = callDuration;
+    }
+
+    /**
+     * Init with header fields of a connection, converted only if headers are read.
+     *
+     * @param status       HTTP status code.
+     * @param payload      HTTP payload.
+     * @param headerFields HTTP header fields.
+     * @param requestSize  size in bytes of the request body as sent on the network.
+     * @param callDuration time in milliseconds the call spent executing.
+     * @return the response.
+     */
+    static HttpResponse fromHeaderFields(int status, @NonNull String payload, @NonNull Map<String, List<String>> headerFields, long requestSize, long callDuration) {
+        return new HttpResponse(status, payload, null, headerFields, requestSize, callDuration);
     }
 
     /**
@@ -88,9 +128,36 @@ public class HttpResponse {
      */
     @NonNull
     public Map<String, String> getHeaders() {
+        if (headerFields != null) {
+            Map<String, String> convertedHeaders = new HashMap<>();
+            for (Map.Entry<String, List<String>> header : headerFields.entrySet()) {
+                convertedHeaders.put(header.getKey(), header.getValue().iterator().next());
+            }
+            headers = convertedHeaders;
+            headerFields = null;
+        }
         return headers;
     }
 
+    /**
+     * Get the size of the request body as sent on the network, after compression.
+     *
+     * @return size in bytes, -1 if unknown.
+     */
+    public long getRequestSize() {
+        return requestSize;
+    }
+
+    /**
+     * Get the time the call spent executing, from opening the connection to reading the response.
+     * Time waiting for a thread or between retries is not included.
+     *
+     * @return duration in milliseconds, -1 if unknown.
+     */
+    public long getCallDuration() {
+        return callDuration;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -101,14 +168,14 @@ public class HttpResponse {
         }
         HttpResponse that = (HttpResponse) o;
 
-        return (statusCode == that.statusCode && payload.equals(that.payload) && headers.equals(that.headers));
+        return (statusCode == that.statusCode && payload.equals(that.payload) && getHeaders().equals(that.getHeaders()));
     }
 
     @Override
     public int hashCode() {
         int result = statusCode;
         result = 31 * result + payload.hashCode();
-        result = 31 * result + headers.hashCode();
+        result = 31 * result + getHeaders().hashCode();
         return result;
     }
 }
@@ -28,6 +28,9 @@ import java.util.regex.Pattern;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLException;
 
+import static com.microsoft.appcenter.http.DefaultHttpClient.DEFAULT_MAX_CONCURRENT_CALLS;
+import static com.microsoft.appcenter.http.DefaultHttpClient.DEFAULT_MAX_QUEUED_CALLS;
+
 /**
  * HTTP utilities.
  */
@@ -89,6 +92,11 @@ public class HttpUtils {
      */
     private static final Pattern API_KEY_PATTERN = Pattern.compile("-[^,]+(,|$)");
 
+    /**
+     * Shared socket factory forcing TLS 1.2, created when first needed.
+     */
+    private static TLS1_2SocketFactory sTls1_2SocketFactory;
+
     @VisibleForTesting
     HttpUtils() {
     }
@@ -188,18 +196,39 @@ public class HttpUtils {
         return TOKEN_VALUE_PATTERN.matcher(tickets).replaceAll(":***");
     }
 
+    /**
+     * Get the socket factory forcing TLS 1.2. It is shared by all connections since connections
+     * are only pooled and TLS sessions only resumed when they use the same factory.
+     *
+     * @return the socket factory.
+     */
+    private static synchronized TLS1_2SocketFactory getTls1_2SocketFactory() {
+        if (sTls1_2SocketFactory == null) {
+            sTls1_2SocketFactory = new TLS1_2SocketFactory();
+        }
+        return sTls1_2SocketFactory;
+    }
+
     public static HttpClient createHttpClient(@NonNull Context context) {
         return createHttpClient(context, true);
     }
 
     public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled) {
+        return createHttpClient(context, compressionEnabled, DEFAULT_MAX_CONCURRENT_CALLS);
+    }
+
+    public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled, int maxConcurrentCalls) {
 
         /* Retryer should be applied last to avoid retries in offline. */
-        return new HttpClientRetryer(createHttpClientWithoutRetryer(context, compressionEnabled));
+        return new HttpClientRetryer(createHttpClientWithoutRetryer(context, compressionEnabled, maxConcurrentCalls));
     }
 
     public static HttpClient createHttpClientWithoutRetryer(@NonNull Context context, boolean compressionEnabled) {
-        HttpClient httpClient = new DefaultHttpClient(compressionEnabled);
+        return createHttpClientWithoutRetryer(context, compressionEnabled, DEFAULT_MAX_CONCURRENT_CALLS);
+    }
+
+    public static HttpClient createHttpClientWithoutRetryer(@NonNull Context context, boolean compressionEnabled, int maxConcurrentCalls) {
+        HttpClient httpClient = new KeepAliveHttpClient(compressionEnabled, maxConcurrentCalls, DEFAULT_MAX_QUEUED_CALLS);
         NetworkStateHelper networkStateHelper = NetworkStateHelper.getSharedInstance(context);
         httpClient = new HttpClientNetworkStateHandler(httpClient, networkStateHelper);
         return httpClient;
@@ -239,7 +268,7 @@ public class HttpUtils {
          * See https://github.com/square/okhttp/issues/2372#issuecomment-244807676
          */
         if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP) {
-            httpsURLConnection.setSSLSocketFactory(new TLS1_2SocketFactory());
+            httpsURLConnection.setSSLSocketFactory(getTls1_2SocketFactory());
         }
 
         /* Configure connection timeouts. */
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import androidx.annotation.Nullable;
+
+/**
+ * HTTP client that keeps connections open between calls so that consecutive calls to the same host
+ * reuse the connection and its TLS session instead of doing a new handshake for every call.
+ * Connections are pooled per host by the platform and are closed after a failed or cancelled call.
+ */
+public class KeepAliveHttpClient extends DefaultHttpClient {
+
+    public KeepAliveHttpClient() {
+        this(true);
+    }
+
+    public KeepAliveHttpClient(boolean compressionEnabled) {
+        this(compressionEnabled, DEFAULT_MAX_CONCURRENT_CALLS, DEFAULT_MAX_QUEUED_CALLS);
+    }
+
+    /**
+     * Init.
+     *
+     * @param compressionEnabled whether to compress request bodies.
+     * @param maxConcurrentCalls maximum number of calls executed in parallel.
+     * @param maxQueuedCalls     maximum number of calls waiting for a thread, further calls fail
+     *                           with {@link HttpClientBusyException}.
+     */
+    public KeepAliveHttpClient(boolean compressionEnabled, int maxConcurrentCalls, int maxQueuedCalls) {
+        super(compressionEnabled, maxConcurrentCalls, maxQueuedCalls);
+    }
+
+    /**
+     * Init.
+     *
+     * @param contentEncoder     encoder compressing request bodies, null to disable compression.
+     * @param maxConcurrentCalls maximum number of calls executed in parallel.
+     * @param maxQueuedCalls     maximum number of calls waiting for a thread, further calls fail
+     *                           with {@link HttpClientBusyException}.
+     */
+    public KeepAliveHttpClient(@Nullable ContentEncoder contentEncoder, int maxConcurrentCalls, int maxQueuedCalls) {
+        super(contentEncoder, maxConcurrentCalls, maxQueuedCalls);
+    }
+
+    @Override
+    boolean isKeepAliveEnabled() {
+        return true;
+    }
+}
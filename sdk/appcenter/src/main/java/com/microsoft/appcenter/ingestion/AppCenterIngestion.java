@@ -12,13 +12,17 @@ import com.microsoft.appcenter.http.AbstractAppCallTemplate;
 import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 
 import org.json.JSONException;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -28,7 +32,7 @@ import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 /**
  * A class to send logs to App Center ingestion service.
  */
-public class AppCenterIngestion extends AbstractAppCenterIngestion {
+public class AppCenterIngestion extends AbstractAppCenterIngestion implements SerializedLogsIngestion {
 
     /**
      * Default log URL.
@@ -48,6 +52,16 @@ public class AppCenterIngestion extends AbstractAppCenterIngestion {
     @VisibleForTesting
     static final String INSTALL_ID = "Install-ID";
 
+    /**
+     * Start of a serialized log container.
+     */
+    private static final String LOGS_PREFIX = "{\"logs\":[";
+
+    /**
+     * End of a serialized log container.
+     */
+    private static final String LOGS_SUFFIX = "]}";
+
     /**
      * Log serializer.
      */
@@ -67,17 +81,30 @@ public class AppCenterIngestion extends AbstractAppCenterIngestion {
     @Override
     public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, final ServiceCallback serviceCallback) throws IllegalArgumentException {
         super.sendAsync(appSecret, installId, logContainer, serviceCallback);
+        HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
+        return getServiceCall(getLogUrl() + API_PATH, METHOD_POST, getHeaders(appSecret, installId), callTemplate, serviceCallback);
+    }
+
+    @Override
+    public ServiceCall sendAsync(String appSecret, UUID installId, SerializedLogContainer serializedLogContainer, ServiceCallback serviceCallback) throws IllegalArgumentException {
+        if (serviceCallback == null) {
+            throw new IllegalArgumentException("serviceCallback cannot be null.");
+        }
+        HttpClient.CallTemplate callTemplate = new SerializedIngestionCallTemplate(serializedLogContainer);
+        return getServiceCall(getLogUrl() + API_PATH, METHOD_POST, getHeaders(appSecret, installId), callTemplate, serviceCallback);
+    }
+
+    private static Map<String, String> getHeaders(String appSecret, UUID installId) {
         Map<String, String> headers = new HashMap<>();
         headers.put(INSTALL_ID, installId.toString());
         headers.put(APP_SECRET, appSecret);
-        HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
-        return getServiceCall(getLogUrl() + API_PATH, METHOD_POST, headers, callTemplate, serviceCallback);
+        return headers;
     }
 
     /**
      * Inner class is used to be able to mock System.currentTimeMillis, does not work if using anonymous inner class...
      */
-    private static class IngestionCallTemplate extends AbstractAppCallTemplate {
+    private static class IngestionCallTemplate extends AbstractAppCallTemplate implements HttpClient.StreamingCallTemplate {
 
         private final LogSerializer mLogSerializer;
 
@@ -94,5 +121,65 @@ public class AppCenterIngestion extends AbstractAppCenterIngestion {
             /* Serialize payload. */
             return mLogSerializer.serializeContainer(mLogContainer);
         }
+
+        @Override
+        public void writeRequestBody(Writer writer) throws IOException, JSONException {
+
+            /* Serializing logs one by one gives the same output as serializing the container. */
+            writer.write(LOGS_PREFIX);
+            List<Log> logs = mLogContainer.getLogs();
+            for (int i = 0; i < logs.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(mLogSerializer.serializeLog(logs.get(i)));
+            }
+            writer.write(LOGS_SUFFIX);
+        }
+    }
+
+    /**
+     * Call template concatenating serialized logs into a log container.
+     */
+    private static class SerializedIngestionCallTemplate extends AbstractAppCallTemplate implements HttpClient.StreamingCallTemplate {
+
+        private final SerializedLogContainer mSerializedLogContainer;
+
+        SerializedIngestionCallTemplate(SerializedLogContainer serializedLogContainer) {
+            mSerializedLogContainer = serializedLogContainer;
+        }
+
+        @Override
+        public String buildRequestBody() {
+
+            /* Same output as serializing a log container, without parsing and writing logs again. */
+            List<String> serializedLogs = mSerializedLogContainer.getSerializedLogs();
+            int length = LOGS_PREFIX.length() + LOGS_SUFFIX.length() + serializedLogs.size();
+            for (String serializedLog : serializedLogs) {
+                length += serializedLog.length();
+            }
+            StringBuilder payload = new StringBuilder(length);
+            payload.append(LOGS_PREFIX);
+            for (int i = 0; i < serializedLogs.size(); i++) {
+                if (i > 0) {
+                    payload.append(',');
+                }
+                payload.append(serializedLogs.get(i));
+            }
+            return payload.append(LOGS_SUFFIX).toString();
+        }
+
+        @Override
+        public void writeRequestBody(Writer writer) throws IOException {
+            writer.write(LOGS_PREFIX);
+            List<String> serializedLogs = mSerializedLogContainer.getSerializedLogs();
+            for (int i = 0; i < serializedLogs.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(serializedLogs.get(i));
+            }
+            writer.write(LOGS_SUFFIX);
+        }
     }
 }
@@ -15,7 +15,9 @@ import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.TicketCache;
@@ -24,6 +26,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -40,7 +43,7 @@ import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 /**
  * A class to send logs to One Collector.
  */
-public class OneCollectorIngestion extends AbstractAppCenterIngestion {
+public class OneCollectorIngestion extends AbstractAppCenterIngestion implements SerializedLogsIngestion {
 
     /**
      * Default log URL.
@@ -87,6 +90,26 @@ public class OneCollectorIngestion extends AbstractAppCenterIngestion {
     @VisibleForTesting
     static final String UPLOAD_TIME_KEY = "Upload-Time";
 
+    /**
+     * Common Schema extensions JSON key.
+     */
+    private static final String EXT = "ext";
+
+    /**
+     * Protocol extension JSON key.
+     */
+    private static final String PROTOCOL = "protocol";
+
+    /**
+     * Ticket keys JSON key.
+     */
+    private static final String TICKET_KEYS = "ticketKeys";
+
+    /**
+     * Ticket keys JSON key as found in a serialized log.
+     */
+    private static final String TICKET_KEYS_JSON_KEY = "\"" + TICKET_KEYS + "\"";
+
     /**
      * Log serializer.
      */
@@ -107,14 +130,61 @@ public class OneCollectorIngestion extends AbstractAppCenterIngestion {
     public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) throws IllegalArgumentException {
         super.sendAsync(appSecret, installId, logContainer, serviceCallback);
 
-        /* Gather API keys from logs. */
-        Map<String, String> headers = new HashMap<>();
+        /* Gather API keys and ticket keys from logs. */
         Set<String> apiKeys = new LinkedHashSet<>();
+        Set<String> ticketKeys = new LinkedHashSet<>();
         for (Log log : logContainer.getLogs()) {
             apiKeys.addAll(log.getTransmissionTargetTokens());
+            List<String> logTicketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
+            if (logTicketKeys != null) {
+                ticketKeys.addAll(logTicketKeys);
+            }
+        }
+
+        /* Make the call. */
+        HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
+        return getServiceCall(getLogUrl(), METHOD_POST, getHeaders(apiKeys, ticketKeys), callTemplate, serviceCallback);
+    }
+
+    @Override
+    public ServiceCall sendAsync(String appSecret, UUID installId, SerializedLogContainer serializedLogContainer, ServiceCallback serviceCallback) throws IllegalArgumentException {
+        if (serviceCallback == null) {
+            throw new IllegalArgumentException("serviceCallback cannot be null.");
+        }
+
+        /* Ticket keys are rare, only parse the logs that have some. */
+        Set<String> ticketKeys = new LinkedHashSet<>();
+        for (String serializedLog : serializedLogContainer.getSerializedLogs()) {
+            if (serializedLog.contains(TICKET_KEYS_JSON_KEY)) {
+                try {
+                    JSONObject protocol = new JSONObject(serializedLog).getJSONObject(EXT).getJSONObject(PROTOCOL);
+                    List<String> logTicketKeys = JSONUtils.readStringArray(protocol, TICKET_KEYS);
+                    if (logTicketKeys != null) {
+                        ticketKeys.addAll(logTicketKeys);
+                    }
+                } catch (JSONException e) {
+                    AppCenterLog.error(LOG_TAG, "Cannot read ticket keys, sending log anonymously", e);
+                }
+            }
         }
 
+        /* Make the call. */
+        HttpClient.CallTemplate callTemplate = new SerializedIngestionCallTemplate(serializedLogContainer);
+        Map<String, String> headers = getHeaders(serializedLogContainer.getTransmissionTargetTokens(), ticketKeys);
+        return getServiceCall(getLogUrl(), METHOD_POST, headers, callTemplate, serviceCallback);
+    }
+
+    /**
+     * Build request headers.
+     *
+     * @param apiKeys    transmission target tokens of the logs.
+     * @param ticketKeys ticket keys of the logs.
+     * @return headers.
+     */
+    private static Map<String, String> getHeaders(Set<String> apiKeys, Set<String> ticketKeys) {
+
         /* Build the header. String.join with iterable is only API level 26+. */
+        Map<String, String> headers = new HashMap<>();
         StringBuilder apiKey = new StringBuilder();
         for (String targetToken : apiKeys) {
             apiKey.append(targetToken).append(",");
@@ -126,19 +196,14 @@ public class OneCollectorIngestion extends AbstractAppCenterIngestion {
 
         /* Gather tokens from logs. */
         JSONObject tickets = new JSONObject();
-        for (Log log : logContainer.getLogs()) {
-            List<String> ticketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
-            if (ticketKeys != null) {
-                for (String ticketKey : ticketKeys) {
-                    String token = TicketCache.getTicket(ticketKey);
-                    if (token != null) {
-                        try {
-                            tickets.put(ticketKey, token);
-                        } catch (JSONException e) {
-                            AppCenterLog.error(LOG_TAG, "Cannot serialize tickets, sending log anonymously", e);
-                            break;
-                        }
-                    }
+        for (String ticketKey : ticketKeys) {
+            String token = TicketCache.getTicket(ticketKey);
+            if (token != null) {
+                try {
+                    tickets.put(ticketKey, token);
+                } catch (JSONException e) {
+                    AppCenterLog.error(LOG_TAG, "Cannot serialize tickets, sending log anonymously", e);
+                    break;
                 }
             }
         }
@@ -162,16 +227,39 @@ public class OneCollectorIngestion extends AbstractAppCenterIngestion {
 
         /* Upload time */
         headers.put(UPLOAD_TIME_KEY, String.valueOf(System.currentTimeMillis()));
+        return headers;
+    }
 
-        /* Make the call. */
-        HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
-        return getServiceCall(getLogUrl(), METHOD_POST, headers, callTemplate, serviceCallback);
+    /**
+     * Log the request before calling.
+     *
+     * @param url     URL.
+     * @param headers headers.
+     */
+    private static void logCall(URL url, Map<String, String> headers) {
+        if (AppCenterLog.getLogLevel() <= VERBOSE) {
+
+            /* Log url. */
+            AppCenterLog.verbose(LOG_TAG, "Calling " + url + "...");
+
+            /* Log headers. */
+            Map<String, String> logHeaders = new HashMap<>(headers);
+            String apiKeys = logHeaders.get(API_KEY);
+            if (apiKeys != null) {
+                logHeaders.put(API_KEY, HttpUtils.hideApiKeys(apiKeys));
+            }
+            String tickets = logHeaders.get(TICKETS);
+            if (tickets != null) {
+                logHeaders.put(TICKETS, HttpUtils.hideTickets(tickets));
+            }
+            AppCenterLog.verbose(LOG_TAG, "Headers: " + logHeaders);
+        }
     }
 
     /**
      * Call template implementation for One Collector.
      */
-    private static class IngestionCallTemplate implements HttpClient.CallTemplate {
+    private static class IngestionCallTemplate implements HttpClient.StreamingCallTemplate {
 
         /**
          * Log serializer.
@@ -205,25 +293,61 @@ public class OneCollectorIngestion extends AbstractAppCenterIngestion {
             return jsonStream.toString();
         }
 
+        @Override
+        public void writeRequestBody(Writer writer) throws IOException, JSONException {
+            for (Log log : mLogContainer.getLogs()) {
+                writer.write(mLogSerializer.serializeLog(log));
+                writer.write('\n');
+            }
+        }
+
         @Override
         public void onBeforeCalling(URL url, Map<String, String> headers) {
-            if (AppCenterLog.getLogLevel() <= VERBOSE) {
+            logCall(url, headers);
+        }
+    }
 
-                /* Log url. */
-                AppCenterLog.verbose(LOG_TAG, "Calling " + url + "...");
+    /**
+     * Call template concatenating serialized logs for One Collector.
+     */
+    private static class SerializedIngestionCallTemplate implements HttpClient.StreamingCallTemplate {
 
-                /* Log headers. */
-                Map<String, String> logHeaders = new HashMap<>(headers);
-                String apiKeys = logHeaders.get(API_KEY);
-                if (apiKeys != null) {
-                    logHeaders.put(API_KEY, HttpUtils.hideApiKeys(apiKeys));
-                }
-                String tickets = logHeaders.get(TICKETS);
-                if (tickets != null) {
-                    logHeaders.put(TICKETS, HttpUtils.hideTickets(tickets));
-                }
-                AppCenterLog.verbose(LOG_TAG, "Headers: " + logHeaders);
+        /**
+         * Serialized logs.
+         */
+        private final SerializedLogContainer mSerializedLogContainer;
+
+        /**
+         * Init.
+         */
+        SerializedIngestionCallTemplate(SerializedLogContainer serializedLogContainer) {
+            mSerializedLogContainer = serializedLogContainer;
+        }
+
+        @Override
+        public String buildRequestBody() {
+            int length = 0;
+            for (String serializedLog : mSerializedLogContainer.getSerializedLogs()) {
+                length += serializedLog.length() + 1;
+            }
+            StringBuilder jsonStream = new StringBuilder(length);
+            for (String serializedLog : mSerializedLogContainer.getSerializedLogs()) {
+                jsonStream.append(serializedLog).append('\n');
             }
+            return jsonStream.toString();
+        }
+
+        @Override
+        public void writeRequestBody(Writer writer) throws IOException {
+            for (String serializedLog : mSerializedLogContainer.getSerializedLogs()) {
+                writer.write(serializedLog);
+                writer.write('\n');
+            }
+        }
+
+        @Override
+        public void onBeforeCalling(URL url, Map<String, String> headers) {
+            logCall(url, headers);
         }
     }
 }
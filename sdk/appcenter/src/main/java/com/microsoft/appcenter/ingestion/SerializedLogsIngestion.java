@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion;
+
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
+
+import java.util.UUID;
+
+/**
+ * Ingestion able to send logs that are already serialized, without deserializing them first.
+ */
+public interface SerializedLogsIngestion extends Ingestion {
+
+    /**
+     * Send logs that are already serialized to the Ingestion service.
+     *
+     * @param appSecret              a unique and secret key used to identify the application.
+     * @param installId              install identifier.
+     * @param serializedLogContainer payload.
+     * @param serviceCallback        the async ServiceCallback to handle successful and failed responses.
+     * @return the {@link ServiceCall} object
+     * @throws IllegalArgumentException thrown if callback is null.
+     */
+    ServiceCall sendAsync(String appSecret, UUID installId, SerializedLogContainer serializedLogContainer, ServiceCallback serviceCallback) throws IllegalArgumentException;
+}
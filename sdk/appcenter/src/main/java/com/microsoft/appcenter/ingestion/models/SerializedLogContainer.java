@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Logs read from storage in their serialized form, sent without deserializing them.
+ */
+public class SerializedLogContainer {
+
+    /**
+     * The list of serialized logs, each one being a complete JSON object.
+     */
+    private final List<String> serializedLogs = new ArrayList<>();
+
+    /**
+     * Transmission target tokens of the logs.
+     */
+    private final Set<String> transmissionTargetTokens = new LinkedHashSet<>();
+
+    /**
+     * Get the serialized logs.
+     *
+     * @return the serialized logs.
+     */
+    public List<String> getSerializedLogs() {
+        return serializedLogs;
+    }
+
+    /**
+     * Get the transmission target tokens of the logs.
+     *
+     * @return the transmission target tokens.
+     */
+    public Set<String> getTransmissionTargetTokens() {
+        return transmissionTargetTokens;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SerializedLogContainer that = (SerializedLogContainer) o;
+        return serializedLogs.equals(that.serializedLogs) && transmissionTargetTokens.equals(that.transmissionTargetTokens);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = serializedLogs.hashCode();
+        result = 31 * result + transmissionTargetTokens.hashCode();
+        return result;
+    }
+}
@@ -28,6 +28,8 @@ public class DefaultLogSerializer implements LogSerializer {
 
     private static final String LOGS = "logs";
 
+    private static final String DEVICE = "device";
+
     private final Map<String, LogFactory> mLogFactories = new HashMap<>();
 
     @NonNull
@@ -58,6 +60,12 @@ public class DefaultLogSerializer implements LogSerializer {
         return writeLog(new JSONStringer(), log).toString();
     }
 
+    @NonNull
+    @Override
+    public String serializeLogWithoutDevice(@NonNull Log log) throws JSONException {
+        return writeLog(new SkipDeviceJSONStringer(), log).toString();
+    }
+
     @NonNull
     @Override
     public Log deserializeLog(@NonNull String json, String type) throws JSONException {
@@ -107,4 +115,92 @@ public class DefaultLogSerializer implements LogSerializer {
     public void addLogFactory(@NonNull String logType, @NonNull LogFactory logFactory) {
         mLogFactories.put(logType, logFactory);
     }
+
+    /**
+     * JSON stringer that drops the device property of the log object while writing it,
+     * so that the log does not have to be modified or the output parsed again.
+     */
+    private static class SkipDeviceJSONStringer extends JSONStringer {
+
+        /**
+         * Current nesting depth of objects and arrays, 1 for the properties of the log.
+         */
+        private int mDepth;
+
+        /**
+         * Depth the device property was found at, 0 when not skipping.
+         */
+        private int mSkipDepth;
+
+        @Override
+        public JSONStringer key(String name) throws JSONException {
+            if (mSkipDepth > 0) {
+                return this;
+            }
+            if (mDepth == 1 && DEVICE.equals(name)) {
+                mSkipDepth = mDepth;
+                return this;
+            }
+            return super.key(name);
+        }
+
+        @Override
+        public JSONStringer object() throws JSONException {
+            mDepth++;
+            return mSkipDepth > 0 ? this : super.object();
+        }
+
+        @Override
+        public JSONStringer endObject() throws JSONException {
+            mDepth--;
+            return endSkippedValue() ? this : super.endObject();
+        }
+
+        @Override
+        public JSONStringer array() throws JSONException {
+            mDepth++;
+            return mSkipDepth > 0 ? this : super.array();
+        }
+
+        @Override
+        public JSONStringer endArray() throws JSONException {
+            mDepth--;
+            return endSkippedValue() ? this : super.endArray();
+        }
+
+        @Override
+        public JSONStringer value(Object value) throws JSONException {
+            return endSkippedValue() ? this : super.value(value);
+        }
+
+        @Override
+        public JSONStringer value(boolean value) throws JSONException {
+            return endSkippedValue() ? this : super.value(value);
+        }
+
+        @Override
+        public JSONStringer value(double value) throws JSONException {
+            return endSkippedValue() ? this : super.value(value);
+        }
+
+        @Override
+        public JSONStringer value(long value) throws JSONException {
+            return endSkippedValue() ? this : super.value(value);
+        }
+
+        /**
+         * Checks if the current token belongs to the skipped device and stops skipping when the device value is complete.
+         *
+         * @return true if the token must be dropped.
+         */
+        private boolean endSkippedValue() {
+            if (mSkipDepth == 0) {
+                return false;
+            }
+            if (mDepth == mSkipDepth) {
+                mSkipDepth = 0;
+            }
+            return true;
+        }
+    }
 }
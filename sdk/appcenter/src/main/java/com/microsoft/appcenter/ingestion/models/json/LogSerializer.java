@@ -20,6 +20,16 @@ public interface LogSerializer {
     @NonNull
     String serializeLog(@NonNull Log log) throws JSONException;
 
+    /**
+     * Serialize a log without its device property, leaving the log unchanged.
+     *
+     * @param log log to serialize.
+     * @return the JSON string without the device.
+     * @throws JSONException if the log cannot be serialized.
+     */
+    @NonNull
+    String serializeLogWithoutDevice(@NonNull Log log) throws JSONException;
+
     @NonNull
     Log deserializeLog(@NonNull String json, String type) throws JSONException;
 
@@ -17,19 +17,25 @@ import androidx.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HashUtils;
 import com.microsoft.appcenter.utils.crypto.CryptoUtils;
 import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import com.microsoft.appcenter.utils.storage.FileManager;
 import com.microsoft.appcenter.utils.storage.SQLiteUtils;
 
 import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -40,7 +46,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.zip.DataFormatException;
 
+import static android.util.Log.DEBUG;
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 import static com.microsoft.appcenter.utils.storage.DatabaseManager.PRIMARY_KEY;
 import static com.microsoft.appcenter.utils.storage.DatabaseManager.SELECT_PRIMARY_KEY;
@@ -66,6 +74,55 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final String COLUMN_LOG = "log";
 
+    /**
+     * Name of compressed log column in the table, used instead of {@link #COLUMN_LOG} when not null.
+     */
+    @VisibleForTesting
+    static final String COLUMN_COMPRESSED_LOG = "compressed_log";
+
+    /**
+     * Name of the column storing the size in bytes of the serialized log.
+     */
+    @VisibleForTesting
+    static final String COLUMN_LOG_SIZE = "log_size";
+
+    /**
+     * Name of the device property in a serialized log.
+     */
+    private static final String DEVICE = "device";
+
+    /**
+     * Beginning of a serialized log with its device, the device snapshot follows.
+     */
+    private static final String SERIALIZED_DEVICE_PREFIX = "{\"" + DEVICE + "\":";
+
+    /**
+     * Name of device snapshot identifier column in the table, the device is not in the log payload when not null.
+     */
+    @VisibleForTesting
+    static final String COLUMN_DEVICE_ID = "device_id";
+
+    /**
+     * Device snapshots table name.
+     */
+    @VisibleForTesting
+    static final String DEVICES_TABLE = "devices";
+
+    /**
+     * Name of device content hash column in the device snapshots table.
+     */
+    private static final String COLUMN_DEVICE_HASH = "hash";
+
+    /**
+     * Name of device JSON column in the device snapshots table.
+     */
+    private static final String COLUMN_DEVICE = "device";
+
+    /**
+     * Columns to select when loading device snapshots.
+     */
+    private static final String[] DEVICE_SNAPSHOT_COLUMNS = {PRIMARY_KEY, COLUMN_DEVICE_HASH, COLUMN_DEVICE};
+
     /**
      * Name of target token column in the table.
      */
@@ -80,10 +137,34 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final int VERSION_TIMESTAMP_COLUMN = 5;
 
+    /**
+     * Version that added the group and target key index.
+     */
+    @VisibleForTesting
+    static final int VERSION_GROUP_INDEX = 7;
+
+    /**
+     * Version that added the compressed log column.
+     */
+    @VisibleForTesting
+    static final int VERSION_COMPRESSED_LOG = 8;
+
+    /**
+     * Version that added device snapshots.
+     */
+    @VisibleForTesting
+    static final int VERSION_DEVICE_SNAPSHOTS = 9;
+
+    /**
+     * Version that added the log size column.
+     */
+    @VisibleForTesting
+    static final int VERSION_LOG_SIZE = 10;
+
     /**
      * Current version of the schema.
      */
-    private static final int VERSION = 6;
+    private static final int VERSION = VERSION_LOG_SIZE;
 
     /**
      * Project identifier part of the target token in clear text (the target token key).
@@ -100,7 +181,8 @@ public class DatabasePersistence extends Persistence {
     /**
      * Name of target token column in the table.
      */
-    private static final String COLUMN_DATA_TYPE = "type";
+    @VisibleForTesting
+    static final String COLUMN_DATA_TYPE = "type";
 
     /**
      * Database name.
@@ -112,7 +194,7 @@ public class DatabasePersistence extends Persistence {
      * Table schema for Persistence.
      */
     @VisibleForTesting
-    static final ContentValues SCHEMA = getContentValues("", "", "", "", "", 0);
+    static final ContentValues SCHEMA = getContentValues("", "", new byte[0], 0L, "", "", "", 0, 0);
 
     /**
      * Order by clause to select logs.
@@ -146,7 +228,10 @@ public class DatabasePersistence extends Persistence {
             "`priority` INTEGER," +
             "`log` TEXT," +
             "`persistence_group` TEXT," +
-            "`target_key` TEXT);";
+            "`target_key` TEXT," +
+            "`compressed_log` BLOB," +
+            "`device_id` INTEGER," +
+            "`log_size` INTEGER);";
 
     /**
      * SQL command to drop logs table
@@ -158,6 +243,44 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String CREATE_PRIORITY_INDEX_LOGS = "CREATE INDEX `ix_logs_priority` ON logs (`priority`)";
 
+    /**
+     * SQL command to create device snapshots table.
+     */
+    private static final String CREATE_DEVICES_SQL = "CREATE TABLE IF NOT EXISTS `devices`" +
+            "(`oid` INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "`hash` TEXT UNIQUE," +
+            "`device` TEXT);";
+
+    /**
+     * SQL command to add the device snapshot identifier column.
+     */
+    private static final String ADD_DEVICE_ID_COLUMN_SQL = "ALTER TABLE `logs` ADD COLUMN `device_id` INTEGER";
+
+    /**
+     * SQL command to add the compressed log column.
+     */
+    private static final String ADD_COMPRESSED_LOG_COLUMN_SQL = "ALTER TABLE `logs` ADD COLUMN `compressed_log` BLOB";
+
+    /**
+     * SQL command to add the log size column.
+     */
+    private static final String ADD_LOG_SIZE_COLUMN_SQL = "ALTER TABLE `logs` ADD COLUMN `log_size` INTEGER";
+
+    /**
+     * SQL command to create index matching the group filter and sort order of {@link #getLogs}.
+     */
+    private static final String CREATE_GROUP_INDEX_LOGS = "CREATE INDEX IF NOT EXISTS `ix_logs_group_target` ON logs (`persistence_group`, `target_key`, `priority`, `oid`)";
+
+    /**
+     * Columns to select for counting logs per group and target key.
+     */
+    private static final String[] COUNT_COLUMNS = {COLUMN_GROUP, COLUMN_TARGET_KEY, "COUNT(*)"};
+
+    /**
+     * Group by clause to count logs per group and target key.
+     */
+    private static final String COUNT_GROUP_BY = COLUMN_GROUP + ", " + COLUMN_TARGET_KEY;
+
     /**
      * Database manager instance to access Persistence database.
      */
@@ -176,6 +299,69 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     final Set<Long> mPendingDbIdentifiers;
 
+    /**
+     * Database identifiers of logs read by {@link #getLogs} whose payload is stored in a separate file.
+     */
+    @VisibleForTesting
+    final Set<Long> mLargePayloadDbIdentifiers;
+
+    /**
+     * Target keys of pending logs that have one, to update log counts when the logs are deleted.
+     */
+    private final Map<Long, String> mPendingTargetKeys;
+
+    /**
+     * Number of logs in the database per group then per target key (null key for logs without a target),
+     * null when it has to be loaded from the database.
+     */
+    @VisibleForTesting
+    Map<String, Map<String, Integer>> mLogCounts;
+
+    /**
+     * Logs waiting to be written to the database within a single transaction.
+     */
+    private final List<BufferedLog> mBufferedLogs;
+
+    /**
+     * Maximum number of logs to buffer before writing them to the database, 1 disables buffering.
+     */
+    private int mMaxBufferedLogs = 1;
+
+    /**
+     * Codec to compress log payloads, null if compression is disabled.
+     */
+    private LogPayloadCodec mPayloadCodec;
+
+    /**
+     * Codec to decompress log payloads, created when the first compressed payload is read.
+     */
+    private LogPayloadCodec mPayloadDecoder;
+
+    /**
+     * Device snapshot identifiers by device JSON hash, null until loaded from the database.
+     */
+    private Map<String, Long> mDeviceSnapshotIds;
+
+    /**
+     * Device snapshots by identifier.
+     */
+    private final Map<Long, Device> mDeviceSnapshots;
+
+    /**
+     * Serialized device snapshots by identifier, to insert them in serialized logs.
+     */
+    private final Map<Long, String> mSerializedDeviceSnapshots;
+
+    /**
+     * Last stored device snapshot, to skip serializing and hashing a device equal to the previous one.
+     */
+    private Device mLastDeviceSnapshot;
+
+    /**
+     * Identifier of {@link #mLastDeviceSnapshot}.
+     */
+    private long mLastDeviceSnapshotId;
+
     /**
      * Application context.
      */
@@ -206,12 +392,69 @@ public class DatabasePersistence extends Persistence {
         mContext = context;
         mPendingDbIdentifiersGroups = new HashMap<>();
         mPendingDbIdentifiers = new HashSet<>();
+        mLargePayloadDbIdentifiers = new HashSet<>();
+        mPendingTargetKeys = new HashMap<>();
+        mDeviceSnapshots = new HashMap<>();
+        mSerializedDeviceSnapshots = new HashMap<>();
+        mBufferedLogs = new ArrayList<>();
         mDatabaseManager = new DatabaseManager(context, DATABASE, TABLE, version, schema, CREATE_LOGS_SQL, new DatabaseManager.Listener() {
 
 
             @Override
             public void onCreate(SQLiteDatabase db) {
                 db.execSQL(CREATE_PRIORITY_INDEX_LOGS);
+                db.execSQL(CREATE_GROUP_INDEX_LOGS);
+                db.execSQL(CREATE_DEVICES_SQL);
+            }
+
+            @Override
+            public DatabaseManager.Migration getMigration(int version) {
+
+                /*
+                 * Schema changes must be added here as a new version keeping existing logs.
+                 * There is no migration to the version that removed the timestamp column.
+                 */
+                switch (version) {
+                    case VERSION_GROUP_INDEX:
+                        return new DatabaseManager.Migration() {
+
+                            @Override
+                            public void migrate(SQLiteDatabase db) {
+                                db.execSQL(CREATE_GROUP_INDEX_LOGS);
+                            }
+                        };
+
+                    case VERSION_COMPRESSED_LOG:
+                        return new DatabaseManager.Migration() {
+
+                            @Override
+                            public void migrate(SQLiteDatabase db) {
+                                db.execSQL(ADD_COMPRESSED_LOG_COLUMN_SQL);
+                            }
+                        };
+
+                    case VERSION_DEVICE_SNAPSHOTS:
+                        return new DatabaseManager.Migration() {
+
+                            @Override
+                            public void migrate(SQLiteDatabase db) {
+                                db.execSQL(CREATE_DEVICES_SQL);
+                                db.execSQL(ADD_DEVICE_ID_COLUMN_SQL);
+                            }
+                        };
+
+                    case VERSION_LOG_SIZE:
+                        return new DatabaseManager.Migration() {
+
+                            @Override
+                            public void migrate(SQLiteDatabase db) {
+                                db.execSQL(ADD_LOG_SIZE_COLUMN_SQL);
+                            }
+                        };
+
+                    default:
+                        return null;
+                }
             }
 
             @Override
@@ -220,12 +463,35 @@ public class DatabasePersistence extends Persistence {
                 /*
                  * With version 3.0 of the SDK we decided to remove timestamp column and as
                  * it's a major SDK version and SQLite does not support removing column we just start over.
-                 * When adding a new column in a future version, update this code by something like
-                 * if (oldVersion <= VERSION_TIMESTAMP_COLUMN) {drop/create} else {add missing columns}
+                 * This is only called when upgrading from version VERSION_TIMESTAMP_COLUMN or older.
                  */
                 db.execSQL(DROP_LOGS_SQL);
                 db.execSQL(CREATE_LOGS_SQL);
                 db.execSQL(CREATE_PRIORITY_INDEX_LOGS);
+                db.execSQL(CREATE_GROUP_INDEX_LOGS);
+                db.execSQL(CREATE_DEVICES_SQL);
+            }
+        });
+        mDatabaseManager.setEvictionListener(COLUMN_GROUP, new DatabaseManager.EvictionListener() {
+
+            @Override
+            public void onEvicted(String group, @NonNull List<Long> ids, long bytes) {
+
+                /* We don't know the target keys of evicted logs, reload counts from the database when needed. */
+                mLogCounts = null;
+                AppCenterLog.warn(LOG_TAG, "Storage is full, deleted " + ids.size() + " log(s) of " + bytes + " bytes from group " + group + " to make room.");
+
+                /* Logs being sent are accounted for when the sending completes, only report the other ones. */
+                int count = 0;
+                for (Long id : ids) {
+                    if (!mPendingDbIdentifiers.contains(id)) {
+                        count++;
+                    }
+                }
+                EvictionListener evictionListener = getEvictionListener();
+                if (evictionListener != null && group != null && count > 0) {
+                    evictionListener.onLogsEvicted(group, count, bytes);
+                }
             }
         });
         mLargePayloadDirectory = new File(Constants.FILES_PATH + PAYLOAD_LARGE_DIRECTORY);
@@ -237,24 +503,63 @@ public class DatabasePersistence extends Persistence {
     /**
      * Instantiates {@link ContentValues} with the give values.
      *
-     * @param group       The group of the storage for the log.
-     * @param logJ        The JSON string for a log.
-     * @param targetToken The target token if the log is common schema.
-     * @param targetKey   The project identifier part of the target token in clear text.
-     * @param priority    The persistence priority.
+     * @param group         The group of the storage for the log.
+     * @param logJ          The JSON string for a log.
+     * @param compressedLog The compressed JSON string for a log, used instead of logJ.
+     * @param deviceId      The device snapshot identifier if the device is not part of the log JSON.
+     * @param targetToken   The target token if the log is common schema.
+     * @param targetKey     The project identifier part of the target token in clear text.
+     * @param priority      The persistence priority.
+     * @param logSize       The size in bytes of the JSON string.
      * @return A {@link ContentValues} instance.
      */
-    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey, int priority) {
+    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, @Nullable byte[] compressedLog, @Nullable Long deviceId, String targetToken, String type, String targetKey, int priority, int logSize) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GROUP, group);
         values.put(COLUMN_LOG, logJ);
+        values.put(COLUMN_COMPRESSED_LOG, compressedLog);
+        values.put(COLUMN_DEVICE_ID, deviceId);
         values.put(COLUMN_TARGET_TOKEN, targetToken);
         values.put(COLUMN_DATA_TYPE, type);
         values.put(COLUMN_TARGET_KEY, targetKey);
         values.put(COLUMN_PRIORITY, priority);
+        values.put(COLUMN_LOG_SIZE, logSize);
         return values;
     }
 
+    /**
+     * Set the maximum number of logs to buffer in memory before writing them to the database
+     * within a single transaction. Critical logs and large payloads are never buffered.
+     * Buffered logs are also written before any read from the database and on {@link #flush()}.
+     *
+     * @param maxBufferedLogs maximum number of buffered logs, 1 to write every log immediately.
+     */
+    public void setMaxBufferedLogs(@IntRange(from = 1) int maxBufferedLogs) {
+        mMaxBufferedLogs = maxBufferedLogs;
+        if (mBufferedLogs.size() >= maxBufferedLogs) {
+            flush();
+        }
+    }
+
+    /**
+     * Enable or disable compression of log payloads written from now on.
+     * Logs already stored are read whether they are compressed or not.
+     *
+     * @param enabled true to compress log payloads stored in the database.
+     */
+    public void setPayloadCompressionEnabled(boolean enabled) {
+        mPayloadCodec = enabled ? new LogPayloadCodec() : null;
+    }
+
+    /**
+     * Enable or disable write-ahead logging and related tuning of the database. Must be called before any other operation.
+     *
+     * @param enabled true to tune the database for high log volume.
+     */
+    public void setWriteAheadLoggingEnabled(boolean enabled) {
+        mDatabaseManager.setWriteAheadLoggingEnabled(enabled);
+    }
+
     @Override
     public boolean setMaxStorageSize(long maxStorageSizeInBytes) {
         return mDatabaseManager.setMaxSize(maxStorageSizeInBytes);
@@ -262,11 +567,44 @@ public class DatabasePersistence extends Persistence {
 
     @Override
     public long putLog(@NonNull Log log, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
+        return putLog(log, null, group, flags);
+    }
+
+    @NonNull
+    @Override
+    public String serializeLog(@NonNull Log log) throws JSONException {
+
+        /*
+         * Store the device separately, it's the same for most logs. Common Schema logs don't serialize it.
+         * The log is not modified as this can run on any thread.
+         */
+        if (log.getDevice() == null || log instanceof CommonSchemaLog) {
+            return super.serializeLog(log);
+        }
+        return getLogSerializer().serializeLogWithoutDevice(log);
+    }
+
+    @Override
+    public long putLog(@NonNull Log log, @Nullable String serializedLog, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
 
         /* Convert log to JSON string and put in the database. */
         try {
-            AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with flags=" + flags);
-            String payload = getLogSerializer().serializeLog(log);
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Storing a log to the Persistence database for log type " + log.getType() + " with flags=" + flags);
+            }
+
+            /* The device is stored separately unless the snapshot cannot be saved, then it stays in the log. */
+            Device device = log.getDevice();
+            boolean storeDeviceSnapshot = device != null && !(log instanceof CommonSchemaLog);
+            Long deviceId = storeDeviceSnapshot ? getDeviceSnapshotId(device) : null;
+            String payload;
+            if (storeDeviceSnapshot && deviceId == null) {
+                payload = getLogSerializer().serializeLog(log);
+            } else if (serializedLog != null) {
+                payload = serializedLog;
+            } else {
+                payload = serializeLog(log);
+            }
             ContentValues contentValues;
 
             //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
@@ -293,12 +631,36 @@ public class DatabasePersistence extends Persistence {
                 throw new PersistenceException("Log is too large (" + payloadSize + " bytes) to store in database. " +
                         "Current maximum database size is " + maxSize + " bytes.");
             }
-            contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, Flags.getPersistenceFlag(flags, false));
+            int priority = Flags.getPersistenceFlag(flags, false);
+            if (isLargePayload) {
+                contentValues = getContentValues(group, null, null, deviceId, targetToken, log.getType(), targetKey, priority, payloadSize);
+            } else if (mPayloadCodec != null) {
+                contentValues = getContentValues(group, null, mPayloadCodec.compress(payload), deviceId, targetToken, log.getType(), targetKey, priority, payloadSize);
+            } else {
+                contentValues = getContentValues(group, payload, null, deviceId, targetToken, log.getType(), targetKey, priority, payloadSize);
+            }
+
+            /* Buffer the log to write it later along with others in a single transaction. */
+            if (mMaxBufferedLogs > 1 && !isLargePayload && priority != Flags.CRITICAL) {
+                mBufferedLogs.add(new BufferedLog(log, group, targetKey, contentValues));
+                if (AppCenterLog.getLogLevel() <= DEBUG) {
+                    AppCenterLog.debug(LOG_TAG, "Buffered a log for log type " + log.getType() + ", buffer size=" + mBufferedLogs.size());
+                }
+                if (mBufferedLogs.size() >= mMaxBufferedLogs) {
+                    flush();
+                }
+                return BUFFERED_LOG_ID;
+            }
+
+            /* Keep insertion order with logs buffered so far. */
+            flush();
             long databaseId = mDatabaseManager.put(contentValues, COLUMN_PRIORITY);
             if (databaseId == -1) {
                 throw new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
             }
-            AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
+            }
             if (isLargePayload) {
                 AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing payload in a separate file.");
                 File directory = getLargePayloadGroupDirectory(group);
@@ -316,6 +678,7 @@ public class DatabasePersistence extends Persistence {
                 }
                 AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
             }
+            updateLogCount(group, targetKey, 1);
             return databaseId;
         } catch (JSONException e) {
             throw new PersistenceException("Cannot convert to JSON string.", e);
@@ -324,6 +687,145 @@ public class DatabasePersistence extends Persistence {
         }
     }
 
+    @Override
+    public void flush() {
+        if (mBufferedLogs.isEmpty()) {
+            return;
+        }
+        AppCenterLog.debug(LOG_TAG, "Writing " + mBufferedLogs.size() + " buffered log(s) to the Persistence database.");
+        List<ContentValues> valuesList = new ArrayList<>(mBufferedLogs.size());
+        for (BufferedLog bufferedLog : mBufferedLogs) {
+            valuesList.add(bufferedLog.mValues);
+        }
+        long[] databaseIds = mDatabaseManager.put(valuesList, COLUMN_PRIORITY);
+        List<BufferedLog> failedLogs = new ArrayList<>();
+        for (int i = 0; i < databaseIds.length; i++) {
+            BufferedLog bufferedLog = mBufferedLogs.get(i);
+            if (databaseIds[i] == -1) {
+                failedLogs.add(bufferedLog);
+            } else {
+                updateLogCount(bufferedLog.mGroup, bufferedLog.mTargetKey, 1);
+            }
+        }
+        mBufferedLogs.clear();
+
+        /* The caller was told the logs were buffered, report the ones that could not be written. */
+        if (!failedLogs.isEmpty()) {
+            AppCenterLog.error(LOG_TAG, "Failed to store " + failedLogs.size() + " buffered log(s) to the Persistence database.");
+            FlushFailureListener flushFailureListener = getFlushFailureListener();
+            if (flushFailureListener != null) {
+                for (BufferedLog bufferedLog : failedLogs) {
+                    PersistenceException exception = new PersistenceException("Failed to store a log to the Persistence database for log type " + bufferedLog.mLog.getType() + ".");
+                    flushFailureListener.onFlushFailed(bufferedLog.mGroup, bufferedLog.mLog, exception);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasBufferedLogs() {
+        return !mBufferedLogs.isEmpty();
+    }
+
+    /**
+     * Get the device snapshot identifier for a device, storing a new snapshot if needed.
+     *
+     * @param device device to store.
+     * @return device snapshot identifier or null if the snapshot could not be stored.
+     * @throws JSONException if the device cannot be serialized.
+     */
+    @Nullable
+    private Long getDeviceSnapshotId(@NonNull Device device) throws JSONException {
+        if (device.equals(mLastDeviceSnapshot)) {
+            return mLastDeviceSnapshotId;
+        }
+        loadDeviceSnapshots();
+        JSONStringer writer = new JSONStringer();
+        writer.object();
+        device.write(writer);
+        writer.endObject();
+        String deviceJson = writer.toString();
+        String hash = HashUtils.sha256(deviceJson);
+        Long deviceId = mDeviceSnapshotIds.get(hash);
+        if (deviceId == null) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_DEVICE_HASH, hash);
+            values.put(COLUMN_DEVICE, deviceJson);
+            long insertedId = mDatabaseManager.insert(DEVICES_TABLE, values);
+            if (insertedId == -1) {
+                return null;
+            }
+            deviceId = insertedId;
+            mDeviceSnapshotIds.put(hash, deviceId);
+            AppCenterLog.debug(LOG_TAG, "Stored device snapshot with id=" + deviceId);
+        }
+
+        /* Keep a copy so that later changes to the given instance are detected. */
+        Device snapshot = mDeviceSnapshots.get(deviceId);
+        if (snapshot == null) {
+            snapshot = new Device();
+            snapshot.read(new JSONObject(deviceJson));
+            mDeviceSnapshots.put(deviceId, snapshot);
+            mSerializedDeviceSnapshots.put(deviceId, deviceJson);
+        }
+        mLastDeviceSnapshot = snapshot;
+        mLastDeviceSnapshotId = deviceId;
+        return deviceId;
+    }
+
+    /**
+     * Load device snapshots from the database if not already done,
+     * deleting the ones that are not used by any log.
+     */
+    private void loadDeviceSnapshots() {
+        if (mDeviceSnapshotIds != null) {
+            return;
+        }
+        mDeviceSnapshotIds = new HashMap<>();
+        try {
+            Set<Long> usedDeviceIds = new HashSet<>();
+            Cursor cursor = mDatabaseManager.getCursor(null, new String[]{COLUMN_DEVICE_ID}, null, COLUMN_DEVICE_ID, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    if (!cursor.isNull(0)) {
+                        usedDeviceIds.add(cursor.getLong(0));
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            List<Long> unusedDeviceIds = new ArrayList<>();
+            cursor = mDatabaseManager.getCursor(DEVICES_TABLE, null, DEVICE_SNAPSHOT_COLUMNS, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    long deviceId = cursor.getLong(0);
+                    if (usedDeviceIds.contains(deviceId)) {
+                        Device device = new Device();
+                        try {
+                            device.read(new JSONObject(cursor.getString(2)));
+                        } catch (JSONException e) {
+                            AppCenterLog.error(LOG_TAG, "Cannot deserialize device snapshot with id=" + deviceId, e);
+                            continue;
+                        }
+                        mDeviceSnapshotIds.put(cursor.getString(1), deviceId);
+                        mDeviceSnapshots.put(deviceId, device);
+                        mSerializedDeviceSnapshots.put(deviceId, cursor.getString(2));
+                    } else {
+                        unusedDeviceIds.add(deviceId);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            for (Long deviceId : unusedDeviceIds) {
+                mDatabaseManager.delete(DEVICES_TABLE, PRIMARY_KEY, deviceId);
+            }
+            AppCenterLog.debug(LOG_TAG, "Loaded " + mDeviceSnapshots.size() + " device snapshot(s), deleted " + unusedDeviceIds.size() + " unused one(s).");
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to load device snapshots: ", e);
+        }
+    }
+
     @NonNull
     @VisibleForTesting
     File getLargePayloadGroupDirectory(String group) {
@@ -340,24 +842,52 @@ public class DatabasePersistence extends Persistence {
 
         //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
         getLargePayloadFile(groupLargePayloadDirectory, id).delete();
+        mLargePayloadDbIdentifiers.remove(id);
         mDatabaseManager.delete(id);
+
+        /* We don't know the group and target key of that log, reload counts from the database when needed. */
+        mLogCounts = null;
     }
 
     @Override
     public void deleteLogs(@NonNull String group, @NonNull String id) {
 
         /* Log. */
-        AppCenterLog.debug(LOG_TAG, "Deleting logs from the Persistence database for " + group + " with " + id);
-        AppCenterLog.debug(LOG_TAG, "The IDs for deleting log(s) is/are:");
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "Deleting logs from the Persistence database for " + group + " with " + id);
+            AppCenterLog.debug(LOG_TAG, "The IDs for deleting log(s) is/are:");
+        }
 
         /* Delete logs. */
         List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + id);
-        File directory = getLargePayloadGroupDirectory(group);
         if (dbIdentifiers != null) {
+            File directory = getLargePayloadGroupDirectory(group);
             for (Long dbIdentifier : dbIdentifiers) {
-                AppCenterLog.debug(LOG_TAG, "\t" + dbIdentifier);
-                deleteLog(directory, dbIdentifier);
+                if (AppCenterLog.getLogLevel() <= DEBUG) {
+                    AppCenterLog.debug(LOG_TAG, "\t" + dbIdentifier);
+                }
+
+                /* Only touch the file system for logs that were read from a file. */
+                if (mLargePayloadDbIdentifiers.remove(dbIdentifier)) {
+
+                    //noinspection ResultOfMethodCallIgnored SQLite delete does not have return type either.
+                    getLargePayloadFile(directory, dbIdentifier).delete();
+                }
                 mPendingDbIdentifiers.remove(dbIdentifier);
+                updateLogCount(group, mPendingTargetKeys.remove(dbIdentifier), -1);
+            }
+            mDatabaseManager.delete(dbIdentifiers);
+        }
+    }
+
+    @Override
+    public void releaseLogs(@NonNull String group, @NonNull String id) {
+        List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + id);
+        if (dbIdentifiers != null) {
+            AppCenterLog.debug(LOG_TAG, "Releasing " + dbIdentifiers.size() + " log(s) of " + group + " with " + id);
+            for (Long dbIdentifier : dbIdentifiers) {
+                mPendingDbIdentifiers.remove(dbIdentifier);
+                mPendingTargetKeys.remove(dbIdentifier);
             }
         }
     }
@@ -368,6 +898,13 @@ public class DatabasePersistence extends Persistence {
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Deleting all logs from the Persistence database for " + group);
 
+        /* Discard buffered logs of the group, no need to write them. */
+        for (Iterator<BufferedLog> iterator = mBufferedLogs.iterator(); iterator.hasNext(); ) {
+            if (group.equals(iterator.next().mGroup)) {
+                iterator.remove();
+            }
+        }
+
         /* Delete large payload files. */
         File directory = getLargePayloadGroupDirectory(group);
         File[] files = directory.listFiles();
@@ -385,6 +922,9 @@ public class DatabasePersistence extends Persistence {
         /* Delete from database. */
         int deletedCount = mDatabaseManager.delete(COLUMN_GROUP, group);
         AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " logs.");
+        if (mLogCounts != null) {
+            mLogCounts.remove(group);
+        }
 
         /* Delete from pending state. */
         for (Iterator<String> iterator = mPendingDbIdentifiersGroups.keySet().iterator(); iterator.hasNext(); ) {
@@ -397,31 +937,128 @@ public class DatabasePersistence extends Persistence {
 
     @Override
     public int countLogs(@NonNull String group) {
+        flush();
 
-        /* Query database and get scanner. */
-        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
-        builder.appendWhere(COLUMN_GROUP + " = ?");
+        /* Counts are loaded once with a single query then maintained in memory. */
+        if (mLogCounts == null) {
+            mLogCounts = loadLogCounts();
+            if (mLogCounts == null) {
+                return 0;
+            }
+        }
         int count = 0;
+        Map<String, Integer> groupCounts = mLogCounts.get(group);
+        if (groupCounts != null) {
+            for (Integer targetKeyCount : groupCounts.values()) {
+                count += targetKeyCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count logs in the database per group and target key.
+     *
+     * @return log counts or null if the database could not be queried.
+     */
+    @Nullable
+    private Map<String, Map<String, Integer>> loadLogCounts() {
+        Map<String, Map<String, Integer>> logCounts = new HashMap<>();
         try {
-            Cursor cursor = mDatabaseManager.getCursor(builder, new String[]{"COUNT(*)"}, new String[]{group}, null);
+            Cursor cursor = mDatabaseManager.getCursor(null, COUNT_COLUMNS, null, COUNT_GROUP_BY, null, null);
             try {
-                cursor.moveToNext();
-                count = cursor.getInt(0);
+                while (cursor.moveToNext()) {
+                    String group = cursor.getString(0);
+                    String targetKey = cursor.isNull(1) ? null : cursor.getString(1);
+                    Map<String, Integer> groupCounts = logCounts.get(group);
+                    if (groupCounts == null) {
+                        groupCounts = new HashMap<>();
+                        logCounts.put(group, groupCounts);
+                    }
+                    groupCounts.put(targetKey, cursor.getInt(2));
+                }
             } finally {
                 cursor.close();
             }
         } catch (RuntimeException e) {
             AppCenterLog.error(LOG_TAG, "Failed to get logs count: ", e);
+            return null;
+        }
+        return logCounts;
+    }
+
+    /**
+     * Update in memory log count after logs were added or removed from the database.
+     *
+     * @param group     The group of the logs.
+     * @param targetKey The target key of the logs, null for logs without a target.
+     * @param delta     Number of logs added, negative for removed logs.
+     */
+    private void updateLogCount(String group, String targetKey, int delta) {
+
+        /* Nothing to update if counts were not loaded yet, they will be read from the database. */
+        if (mLogCounts == null) {
+            return;
+        }
+        Map<String, Integer> groupCounts = mLogCounts.get(group);
+        if (groupCounts == null) {
+            groupCounts = new HashMap<>();
+            mLogCounts.put(group, groupCounts);
+        }
+        Integer count = groupCounts.get(targetKey);
+        int newCount = (count == null ? 0 : count) + delta;
+        if (newCount > 0) {
+            groupCounts.put(targetKey, newCount);
+        } else {
+            groupCounts.remove(targetKey);
         }
-        return count;
     }
 
     @Override
     @Nullable
     public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+        return getLogs(group, pausedTargetKeys, limit, 0, outLogs);
+    }
+
+    @Override
+    @Nullable
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 0) long maxBytes, @NonNull List<Log> outLogs) {
+        return getLogs(group, pausedTargetKeys, limit, maxBytes, null, null, outLogs);
+    }
+
+    @Override
+    public boolean supportsSerializedLogs() {
+        return true;
+    }
+
+    @Override
+    @Nullable
+    public String getSerializedLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 0) long maxBytes,
+                                    @NonNull SerializedLogContainer outContainer, @NonNull Collection<String> logTypes, @NonNull List<Log> outLogs) {
+        return getLogs(group, pausedTargetKeys, limit, maxBytes, outContainer, logTypes, outLogs);
+    }
+
+    /**
+     * Gets logs either deserialized or in their serialized form.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param maxBytes         The max total size in bytes of logs to be returned, 0 for no limit.
+     * @param outContainer     A container to receive serialized logs, null to only get {@link Log} objects.
+     * @param logTypes         Types of the logs to also deserialize when {@code outContainer} is not null.
+     * @param outLogs          A list to receive {@link Log} objects.
+     * @return An ID for the logs. {@code null} if no logs exist.
+     */
+    @Nullable
+    private String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, int limit, long maxBytes,
+                           @Nullable SerializedLogContainer outContainer, @Nullable Collection<String> logTypes, @NonNull List<Log> outLogs) {
 
         /* Log. */
-        AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
+        }
+        flush();
 
         /* Query database. */
         SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
@@ -439,16 +1076,32 @@ public class DatabasePersistence extends Persistence {
             selectionArgs.addAll(pausedTargetKeys);
         }
 
+        /*
+         * Exclude logs that are already part of a batch being sent so that the query limit applies to fresh logs only.
+         * Identifiers are numbers so they are inlined to avoid hitting the SQLite bound variables limit.
+         */
+        if (!mPendingDbIdentifiers.isEmpty()) {
+            StringBuilder filter = new StringBuilder();
+            for (Long dbIdentifier : mPendingDbIdentifiers) {
+                filter.append(dbIdentifier).append(",");
+            }
+            filter.deleteCharAt(filter.length() - 1);
+            builder.appendWhere(" AND ");
+            builder.appendWhere(PRIMARY_KEY + " NOT IN (" + filter.toString() + ")");
+        }
+
         /* Add logs to output parameter after deserialization if logs are not already sent. */
         int count = 0;
+        long totalSize = 0;
         Map<Long, Log> candidates = new LinkedHashMap<>();
+        Map<Long, String> serializedCandidates = new LinkedHashMap<>();
         List<Long> failedDbIdentifiers = new ArrayList<>();
         File largePayloadGroupDirectory = getLargePayloadGroupDirectory(group);
         String[] selectionArgsArray = selectionArgs.toArray(new String[0]);
         Cursor cursor = null;
         ContentValues values;
         try {
-            cursor = mDatabaseManager.getCursor(builder, null, selectionArgsArray, GET_SORT_ORDER);
+            cursor = mDatabaseManager.getCursor(builder, null, selectionArgsArray, GET_SORT_ORDER, String.valueOf(limit));
         } catch (RuntimeException e) {
             AppCenterLog.error(LOG_TAG, "Failed to get logs: ", e);
         }
@@ -467,7 +1120,7 @@ public class DatabasePersistence extends Persistence {
                 AppCenterLog.error(LOG_TAG, "Empty database record, probably content was larger than 2MB, need to delete as it's now corrupted.");
                 List<Long> corruptedIds = getLogsIds(builder, selectionArgsArray);
                 for (Long corruptedId : corruptedIds) {
-                    if (!mPendingDbIdentifiers.contains(corruptedId) && !candidates.containsKey(corruptedId)) {
+                    if (!mPendingDbIdentifiers.contains(corruptedId) && !candidates.containsKey(corruptedId) && !serializedCandidates.containsKey(corruptedId)) {
 
                         /* Found the record to delete that we could not read when selecting all fields. */
                         deleteLog(largePayloadGroupDirectory, corruptedId);
@@ -480,12 +1133,24 @@ public class DatabasePersistence extends Persistence {
 
             /* If the log is already in pending state, then skip. Otherwise put the log to candidate container. */
             if (!mPendingDbIdentifiers.contains(dbIdentifier)) {
+
+                /* Stop before exceeding the size limit, the size is unknown for logs stored before the column existed. */
+                Integer logSize = values.getAsInteger(COLUMN_LOG_SIZE);
+                if (maxBytes > 0 && count > 0 && logSize != null && totalSize + logSize > maxBytes) {
+                    break;
+                }
                 try {
 
                     /* Deserialize JSON to Log. */
                     String logPayload;
                     String databasePayload = values.getAsString(COLUMN_LOG);
-                    if (databasePayload == null) {
+                    byte[] compressedPayload = values.getAsByteArray(COLUMN_COMPRESSED_LOG);
+                    if (compressedPayload != null) {
+                        if (mPayloadDecoder == null) {
+                            mPayloadDecoder = mPayloadCodec != null ? mPayloadCodec : new LogPayloadCodec();
+                        }
+                        logPayload = mPayloadDecoder.decompress(compressedPayload);
+                    } else if (databasePayload == null) {
                         File file = getLargePayloadFile(largePayloadGroupDirectory, dbIdentifier);
                         AppCenterLog.debug(LOG_TAG, "Read payload file " + file);
                         logPayload = FileManager.read(file);
@@ -495,20 +1160,68 @@ public class DatabasePersistence extends Persistence {
                     } else {
                         logPayload = databasePayload;
                     }
-                    String databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
-                    Log log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
+                    if (logSize == null) {
 
-                    /* Restore target token. */
+                        //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
+                        logSize = logPayload.getBytes("UTF-8").length;
+                        if (maxBytes > 0 && count > 0 && totalSize + logSize > maxBytes) {
+                            break;
+                        }
+                    }
+                    if (compressedPayload == null && databasePayload == null) {
+                        mLargePayloadDbIdentifiers.add(dbIdentifier);
+                    }
+                    Long deviceId = values.getAsLong(COLUMN_DEVICE_ID);
                     String targetToken = values.getAsString(COLUMN_TARGET_TOKEN);
-                    if (targetToken != null) {
-                        CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken);
-                        log.addTransmissionTarget(data.getDecryptedData());
+                    String databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
+                    if (outContainer == null || logTypes.contains(databasePayloadType)) {
+                        Log log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
+
+                        /* Restore device. */
+                        if (deviceId != null) {
+                            loadDeviceSnapshots();
+                            Device device = mDeviceSnapshots.get(deviceId);
+                            if (device == null) {
+                                throw new JSONException("Device snapshot not found for id=" + deviceId);
+                            }
+                            log.setDevice(device);
+                        }
+
+                        /* Restore target token. */
+                        if (targetToken != null) {
+                            CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken);
+                            log.addTransmissionTarget(data.getDecryptedData());
+                        }
+
+                        /* Add log to list. */
+                        candidates.put(dbIdentifier, log);
+                    }
+                    if (outContainer != null) {
+
+                        /* Insert the device as the first property, the payload is a JSON object. */
+                        if (deviceId != null) {
+                            loadDeviceSnapshots();
+                            String serializedDevice = mSerializedDeviceSnapshots.get(deviceId);
+                            if (serializedDevice == null) {
+                                throw new JSONException("Device snapshot not found for id=" + deviceId);
+                            }
+                            logPayload = SERIALIZED_DEVICE_PREFIX + serializedDevice + "," + logPayload.substring(1);
+                        }
+                        if (targetToken != null) {
+                            CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken);
+                            outContainer.getTransmissionTargetTokens().add(data.getDecryptedData());
+                        }
+                        serializedCandidates.put(dbIdentifier, logPayload);
                     }
 
-                    /* Add log to list and count. */
-                    candidates.put(dbIdentifier, log);
+                    /* Count log. */
+                    String targetKey = values.getAsString(COLUMN_TARGET_KEY);
+                    if (targetKey != null) {
+                        mPendingTargetKeys.put(dbIdentifier, targetKey);
+                    }
+                    totalSize += logSize;
                     count++;
-                } catch (JSONException e) {
+                } catch (JSONException | DataFormatException | UnsupportedEncodingException e) {
 
                     /* If it is not able to deserialize, delete and get another log. */
                     AppCenterLog.error(LOG_TAG, "Cannot deserialize a log in the database", e);
@@ -534,7 +1247,8 @@ public class DatabasePersistence extends Persistence {
         }
 
         /* No logs found. */
-        if (candidates.size() <= 0) {
+        Set<Long> candidateIds = outContainer != null ? serializedCandidates.keySet() : candidates.keySet();
+        if (candidateIds.size() <= 0) {
             AppCenterLog.debug(LOG_TAG, "No logs found in the Persistence database at the moment");
             return null;
         }
@@ -543,11 +1257,12 @@ public class DatabasePersistence extends Persistence {
         String id = UUID.randomUUID().toString();
 
         /* Log. */
-        AppCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
-        AppCenterLog.debug(LOG_TAG, "The SID/ID pairs for returning log(s) is/are:");
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "Returning " + candidateIds.size() + " log(s) with an ID, " + id);
+            AppCenterLog.debug(LOG_TAG, "The SID/ID pairs for returning log(s) is/are:");
+        }
         List<Long> pendingDbIdentifiersGroup = new ArrayList<>();
-        for (Map.Entry<Long, Log> entry : candidates.entrySet()) {
-            Long dbIdentifier = entry.getKey();
+        for (Long dbIdentifier : candidateIds) {
 
             /* Change a database identifier to pending state. */
             mPendingDbIdentifiers.add(dbIdentifier);
@@ -555,11 +1270,19 @@ public class DatabasePersistence extends Persistence {
             /* Store a database identifier to a group of the ID. */
             pendingDbIdentifiersGroup.add(dbIdentifier);
 
-            /* Add to output parameter. */
-            outLogs.add(entry.getValue());
+            /* Add to output parameters, only logs of the requested types are deserialized along serialized logs. */
+            if (outContainer != null) {
+                outContainer.getSerializedLogs().add(serializedCandidates.get(dbIdentifier));
+            }
+            Log log = candidates.get(dbIdentifier);
+            if (log != null) {
+                outLogs.add(log);
+            }
 
             /* Log. */
-            AppCenterLog.debug(LOG_TAG, "\t" + entry.getValue().getSid() + " / " + dbIdentifier);
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "\t" + (log != null ? log.getSid() : null) + " / " + dbIdentifier);
+            }
         }
 
         /* Update pending IDs. */
@@ -571,11 +1294,13 @@ public class DatabasePersistence extends Persistence {
     public void clearPendingLogState() {
         mPendingDbIdentifiers.clear();
         mPendingDbIdentifiersGroups.clear();
+        mPendingTargetKeys.clear();
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
     }
 
     @Override
     public void close() {
+        flush();
         mDatabaseManager.close();
     }
 
@@ -597,4 +1322,37 @@ public class DatabasePersistence extends Persistence {
         }
         return result;
     }
+
+    /**
+     * A log waiting to be written to the database by {@link #flush()}.
+     */
+    private static class BufferedLog {
+
+        /**
+         * The log, to report it if it cannot be written.
+         */
+        final Log mLog;
+
+        /**
+         * Group of the log.
+         */
+        final String mGroup;
+
+        /**
+         * Target key of the log, null if the log has no target.
+         */
+        final String mTargetKey;
+
+        /**
+         * Values to insert in the database.
+         */
+        final ContentValues mValues;
+
+        BufferedLog(Log log, String group, String targetKey, ContentValues values) {
+            mLog = log;
+            mGroup = group;
+            mTargetKey = targetKey;
+            mValues = values;
+        }
+    }
 }
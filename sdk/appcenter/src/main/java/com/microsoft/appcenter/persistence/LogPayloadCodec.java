@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses log payloads stored in the database with deflate and a preset dictionary.
+ * Not thread safe: the deflater and inflater are reused between calls.
+ */
+class LogPayloadCodec {
+
+    /**
+     * Identifier of {@link #DICTIONARY}, stored as first byte of compressed payloads.
+     * A new identifier must be used if the dictionary changes, old ones must still be decoded.
+     */
+    @VisibleForTesting
+    static final byte DICTIONARY_VERSION = 1;
+
+    /**
+     * Preset dictionary built from typical log shapes, most frequent strings at the end.
+     */
+    private static final byte[] DICTIONARY = getBytes("" +
+            "\"wrapperSdkVersion\":\"\",\"wrapperSdkName\":\"\",\"wrapperRuntimeVersion\":\"\"," +
+            "\"liveUpdateReleaseLabel\":\"\",\"liveUpdateDeploymentKey\":\"\",\"liveUpdatePackageHash\":\"\"," +
+            "{\"type\":\"managedError\",\"id\":\"\",\"fatal\":false,\"exception\":{\"type\":\"java.lang.\",\"message\":\"\",\"frames\":[{\"className\":\"\",\"methodName\":\"\",\"lineNumber\":,\"fileName\":\".java\"}]}," +
+            "\"processId\":,\"processName\":\"\",\"errorThreadId\":,\"errorThreadName\":\"main\",\"appLaunchTimestamp\":\"\",\"architecture\":\"\"," +
+            "{\"type\":\"startService\",\"services\":[\"Analytics\",\"Crashes\",\"Distribute\"]}," +
+            "{\"type\":\"commonSchemaEvent\",\"ver\":\"3.0\",\"name\":\"\",\"time\":\"\",\"popSample\":100,\"iKey\":\"o:\",\"flags\":,\"cV\":\"\"," +
+            "\"ext\":{\"protocol\":{\"devMake\":\"\",\"devModel\":\"\"},\"user\":{\"localId\":\"a:\",\"locale\":\"\"},\"os\":{\"name\":\"Android\",\"ver\":\"\"}," +
+            "\"app\":{\"id\":\"\",\"ver\":\"\",\"locale\":\"\"},\"net\":{\"provider\":\"\"},\"sdk\":{\"libVer\":\"appcenter.android-\",\"epoch\":\"\",\"seq\":,\"installId\":\"\"},\"loc\":{\"tz\":\"\"}}," +
+            "\"data\":{\"baseType\":\"\",\"baseData\":{}}," +
+            "{\"type\":\"page\",{\"type\":\"startSession\",{\"type\":\"event\",\"id\":\"\",\"name\":\"\",\"properties\":{}," +
+            "\"typedProperties\":[{\"type\":\"string\",\"name\":\"\",\"value\":\"\"},{\"type\":\"long\",{\"type\":\"double\",{\"type\":\"boolean\",{\"type\":\"dateTime\"]," +
+            "\"distributionGroupId\":\"\",\"userId\":\"\"," +
+            "\"device\":{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"\",\"model\":\"\",\"oemName\":\"\",\"osName\":\"Android\"," +
+            "\"osVersion\":\"\",\"osBuild\":\"\",\"osApiLevel\":,\"locale\":\"en_US\",\"timeZoneOffset\":,\"screenSize\":\"\"," +
+            "\"appVersion\":\"\",\"carrierName\":\"\",\"carrierCountry\":\"\",\"appBuild\":\"\",\"appNamespace\":\"com.\"}," +
+            "{\"type\":\"\",\"timestamp\":\"T:Z\",\"sid\":\"\",");
+
+    /**
+     * Buffer size for compression and decompression.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Reused compressor.
+     */
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+    /**
+     * Reused decompressor.
+     */
+    private final Inflater mInflater = new Inflater();
+
+    /**
+     * Reused buffer.
+     */
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+    private static byte[] getBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+
+            /* UTF-8 is always supported. */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Compress a log payload.
+     *
+     * @param payload log JSON.
+     * @return compressed payload prefixed by the dictionary version.
+     */
+    @NonNull
+    byte[] compress(@NonNull String payload) {
+        byte[] input = getBytes(payload);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 4 + 16);
+        output.write(DICTIONARY_VERSION);
+        mDeflater.reset();
+        mDeflater.setDictionary(DICTIONARY);
+        mDeflater.setInput(input);
+        mDeflater.finish();
+        while (!mDeflater.finished()) {
+            int length = mDeflater.deflate(mBuffer);
+            output.write(mBuffer, 0, length);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Decompress a log payload.
+     *
+     * @param compressedPayload value returned by {@link #compress}.
+     * @return log JSON.
+     * @throws DataFormatException if the data is corrupted or uses an unknown dictionary.
+     */
+    @NonNull
+    String decompress(@NonNull byte[] compressedPayload) throws DataFormatException {
+        if (compressedPayload.length == 0 || compressedPayload[0] != DICTIONARY_VERSION) {
+            throw new DataFormatException("Unknown compressed payload dictionary.");
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(compressedPayload.length * 4);
+        mInflater.reset();
+        mInflater.setInput(compressedPayload, 1, compressedPayload.length - 1);
+        while (!mInflater.finished()) {
+            int length = mInflater.inflate(mBuffer);
+            if (length == 0) {
+                if (mInflater.needsDictionary()) {
+                    try {
+                        mInflater.setDictionary(DICTIONARY);
+                    } catch (IllegalArgumentException e) {
+                        throw new DataFormatException("Compressed payload dictionary mismatch.");
+                    }
+                } else if (mInflater.needsInput() && !mInflater.finished()) {
+                    throw new DataFormatException("Truncated compressed payload.");
+                }
+            }
+            output.write(mBuffer, 0, length);
+        }
+        try {
+            return output.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+
+            /* UTF-8 is always supported. */
+            throw new IllegalStateException(e);
+        }
+    }
+}
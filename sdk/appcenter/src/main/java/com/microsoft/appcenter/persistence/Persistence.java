@@ -11,35 +11,98 @@ import androidx.annotation.Nullable;
 
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
 /**
  * Abstract class for Persistence service.
  */
 public abstract class Persistence implements Closeable {
 
+    /**
+     * Identifier returned by {@link #putLog(Log, String, int)} when the log is buffered and not yet written to the storage.
+     * If writing the log fails later, the {@link FlushFailureListener} is notified.
+     */
+    public static final long BUFFERED_LOG_ID = 0;
+
     /**
      * Log serializer override.
      */
     private LogSerializer mLogSerializer;
 
+    /**
+     * Eviction listener.
+     */
+    private EvictionListener mEvictionListener;
+
+    /**
+     * Flush failure listener.
+     */
+    private FlushFailureListener mFlushFailureListener;
+
     /**
      * Writes a log to the storage with the given {@code group}.
      *
      * @param log   The log to be placed in the storage.
      * @param group The group of the storage for the log.
      * @param flags The persistence flags.
-     * @return Log identifier from persistence after saving.
+     * @return Log identifier from persistence after saving, or {@link #BUFFERED_LOG_ID} if the log is buffered until the next {@link #flush()}.
      * @throws PersistenceException Exception will be thrown if Persistence cannot write a log to the storage.
      */
     public abstract long putLog(@NonNull Log log, @NonNull String group,
                                 @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException;
 
+    /**
+     * Writes a log already serialized with {@link #serializeLog(Log)} to the storage with the given {@code group}.
+     *
+     * @param log           The log to be placed in the storage.
+     * @param serializedLog The log serialized by {@link #serializeLog(Log)}, or null to serialize it now.
+     * @param group         The group of the storage for the log.
+     * @param flags         The persistence flags.
+     * @return Log identifier from persistence after saving, or {@link #BUFFERED_LOG_ID} if the log is buffered until the next {@link #flush()}.
+     * @throws PersistenceException Exception will be thrown if Persistence cannot write a log to the storage.
+     */
+    public long putLog(@NonNull Log log, @Nullable String serializedLog, @NonNull String group,
+                       @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
+        return putLog(log, group, flags);
+    }
+
+    /**
+     * Serializes a log the way it is stored, so that it can be done ahead of {@link #putLog(Log, String, String, int)}.
+     * Unlike other methods, this one can be called from any thread as long as the log is not modified meanwhile.
+     *
+     * @param log The log to serialize.
+     * @return The serialized log.
+     * @throws JSONException if the log cannot be serialized.
+     */
+    @NonNull
+    public String serializeLog(@NonNull Log log) throws JSONException {
+        return getLogSerializer().serializeLog(log);
+    }
+
+    /**
+     * Writes all buffered logs to the storage. Buffered logs are also written before any read from the storage.
+     */
+    public abstract void flush();
+
+    /**
+     * Checks if some logs are buffered and waiting for a {@link #flush()}.
+     *
+     * @return true if there are buffered logs, false otherwise.
+     */
+    public abstract boolean hasBufferedLogs();
+
     /**
      * Deletes a log with the give ID from the {@code group}.
      *
@@ -48,6 +111,14 @@ public abstract class Persistence implements Closeable {
      */
     public abstract void deleteLogs(@NonNull String group, @NonNull String batchId);
 
+    /**
+     * Releases the logs of a batch that could not be sent so that they are read again by a next call to get logs.
+     *
+     * @param group   The group of the storage for logs.
+     * @param batchId The ID for a set of logs.
+     */
+    public abstract void releaseLogs(@NonNull String group, @NonNull String batchId);
+
     /**
      * Deletes all logs for the given {@code group}.
      *
@@ -75,6 +146,71 @@ public abstract class Persistence implements Closeable {
     @Nullable
     public abstract String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs);
 
+    /**
+     * Gets an array of logs for the given {@code group}, stopping before the total size of their
+     * serialized form exceeds {@code maxBytes}. The first log is always returned even if larger.
+     * The default implementation ignores the size limit.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param maxBytes         The max total size in bytes of logs to be returned, 0 for no limit.
+     * @param outLogs          A list to receive {@link Log} objects.
+     * @return An ID for {@code outLogs}. {@code null} if no logs exist.
+     */
+    @Nullable
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 0) long maxBytes, @NonNull List<Log> outLogs) {
+        return getLogs(group, pausedTargetKeys, limit, outLogs);
+    }
+
+    /**
+     * Checks whether logs can be read in their serialized form with
+     * {@link #getSerializedLogs(String, Collection, int, long, SerializedLogContainer, Collection, List)}
+     * without deserializing them first.
+     *
+     * @return true if reading serialized logs is cheaper than reading {@link Log} objects.
+     */
+    public boolean supportsSerializedLogs() {
+        return false;
+    }
+
+    /**
+     * Gets logs for the given {@code group} in the serialized form they are sent, without deserializing them
+     * except for logs of the given types.
+     * Logs are put in pending state the same way as {@link #getLogs(String, Collection, int, long, List)}.
+     * The default implementation reads {@link Log} objects and serializes them again.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys List of target token keys to exclude from the log query.
+     * @param limit            The max number of logs to be returned.
+     * @param maxBytes         The max total size in bytes of logs to be returned, 0 for no limit.
+     * @param outContainer     A container to receive serialized logs and their transmission target tokens.
+     * @param logTypes         Types of the logs to also return as {@link Log} objects.
+     * @param outLogs          A list to receive the {@link Log} objects of the given types.
+     * @return An ID for the logs added to {@code outContainer}. {@code null} if no logs exist.
+     */
+    @Nullable
+    public String getSerializedLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 0) long maxBytes,
+                                    @NonNull SerializedLogContainer outContainer, @NonNull Collection<String> logTypes, @NonNull List<Log> outLogs) {
+        List<Log> logs = new ArrayList<>();
+        String id = getLogs(group, pausedTargetKeys, limit, maxBytes, logs);
+        for (Log log : logs) {
+            try {
+                outContainer.getSerializedLogs().add(serializeLog(log));
+            } catch (JSONException e) {
+
+                /* The log is still deleted along the others once the batch is sent. */
+                AppCenterLog.error(LOG_TAG, "Cannot serialize a log read from storage", e);
+                continue;
+            }
+            outContainer.getTransmissionTargetTokens().addAll(log.getTransmissionTargetTokens());
+            if (logTypes.contains(log.getType())) {
+                outLogs.add(log);
+            }
+        }
+        return id;
+    }
+
     /**
      * Clears all associations between logs of the {@code group} and ids returned by {@link #getLogs(String, Collection, int, List)}}.
      */
@@ -101,6 +237,44 @@ public abstract class Persistence implements Closeable {
         mLogSerializer = logSerializer;
     }
 
+    /**
+     * Gets the {@link EvictionListener}.
+     *
+     * @return The eviction listener or null if not set.
+     */
+    @Nullable
+    EvictionListener getEvictionListener() {
+        return mEvictionListener;
+    }
+
+    /**
+     * Sets a listener notified when logs are deleted to make room for new ones when the storage is full.
+     *
+     * @param evictionListener The eviction listener or null to remove it.
+     */
+    public void setEvictionListener(@Nullable EvictionListener evictionListener) {
+        mEvictionListener = evictionListener;
+    }
+
+    /**
+     * Gets the {@link FlushFailureListener}.
+     *
+     * @return The flush failure listener or null if not set.
+     */
+    @Nullable
+    FlushFailureListener getFlushFailureListener() {
+        return mFlushFailureListener;
+    }
+
+    /**
+     * Sets a listener notified when buffered logs cannot be written to the storage.
+     *
+     * @param flushFailureListener The flush failure listener or null to remove it.
+     */
+    public void setFlushFailureListener(@Nullable FlushFailureListener flushFailureListener) {
+        mFlushFailureListener = flushFailureListener;
+    }
+
     /**
      * Set maximum SQLite database size.
      *
@@ -109,6 +283,38 @@ public abstract class Persistence implements Closeable {
      */
     public abstract boolean setMaxStorageSize(long maxStorageSizeInBytes);
 
+    /**
+     * Listener for logs deleted to make room for new ones when the storage is full.
+     */
+    public interface EvictionListener {
+
+        /**
+         * Called after logs of a group were deleted to make room for a new log.
+         * Logs that were being sent are not counted, they are still deleted or released by the sender.
+         *
+         * @param group The group of the deleted logs.
+         * @param count The number of deleted logs that were not being sent.
+         * @param bytes The estimated size in bytes of the deleted logs.
+         */
+        void onLogsEvicted(@NonNull String group, int count, long bytes);
+    }
+
+    /**
+     * Listener for buffered logs that could not be written to the storage.
+     */
+    public interface FlushFailureListener {
+
+        /**
+         * Called when a log for which {@link #putLog(Log, String, int)} returned {@link #BUFFERED_LOG_ID}
+         * could not be written to the storage. The log is discarded.
+         *
+         * @param group     The group of the log.
+         * @param log       The log that was not stored.
+         * @param exception The reason why the log was not stored.
+         */
+        void onFlushFailed(@NonNull String group, @NonNull Log log, @NonNull PersistenceException exception);
+    }
+
     /**
      * Thrown when {@link Persistence} cannot write a log to the storage.
      */
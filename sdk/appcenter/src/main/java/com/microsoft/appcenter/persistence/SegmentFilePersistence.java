@@ -0,0 +1,952 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import android.content.Context;
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
+import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.crypto.CryptoUtils;
+import com.microsoft.appcenter.utils.storage.FileManager;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static android.util.Log.DEBUG;
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Persistence storing logs in append-only segment files instead of a database.
+ * Each group has its own segments for each priority, logs are appended to the last segment
+ * and deleted logs are recorded in a small index of acknowledged offsets next to the segment.
+ * A segment file is removed when all its logs are deleted, or as a whole when the storage is full.
+ */
+@SuppressWarnings("TryFinallyCanBeTryWithResources")
+public class SegmentFilePersistence extends Persistence {
+
+    /**
+     * Sub path for directory where to store segments, each group has its own sub directory.
+     */
+    private static final String SEGMENTS_DIRECTORY = "/appcenter/segments";
+
+    /**
+     * Segment file extension.
+     */
+    @VisibleForTesting
+    static final String SEGMENT_FILE_EXTENSION = ".seg";
+
+    /**
+     * Acknowledged offsets index file extension.
+     */
+    @VisibleForTesting
+    static final String ACK_FILE_EXTENSION = ".ack";
+
+    /**
+     * Size of the fixed record prefix: header length, payload length and checksum.
+     */
+    private static final int RECORD_PREFIX_SIZE = 12;
+
+    /**
+     * Size of an entry in the acknowledged offsets index.
+     */
+    private static final int ACK_ENTRY_SIZE = 4;
+
+    /**
+     * Default maximum size of all segments in bytes, same as the default maximum storage size of App Center.
+     */
+    private static final long DEFAULT_MAX_STORAGE_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Smallest segment size: logs are evicted segment by segment when the storage is full,
+     * so segments are a fraction of the maximum storage size between this and {@link #MAX_SEGMENT_SIZE}.
+     */
+    private static final long MIN_SEGMENT_SIZE = 4 * 1024;
+
+    /**
+     * Largest segment size.
+     */
+    private static final long MAX_SEGMENT_SIZE = 256 * 1024;
+
+    /**
+     * Number of segments that fit in the maximum storage size when not bounded by {@link #MAX_SEGMENT_SIZE}.
+     */
+    private static final int SEGMENTS_PER_STORAGE = 16;
+
+    /**
+     * Maximum size of a Common Schema log.
+     */
+    private static final int PAYLOAD_MAX_SIZE = (int) (1.9 * 1024 * 1024);
+
+    /**
+     * Orders segments by descending priority then ascending sequence number.
+     */
+    private static final Comparator<Segment> SEND_ORDER = new Comparator<Segment>() {
+
+        @Override
+        public int compare(Segment lhs, Segment rhs) {
+            if (lhs.mPriority != rhs.mPriority) {
+                return rhs.mPriority - lhs.mPriority;
+            }
+            return lhs.mSequence < rhs.mSequence ? -1 : (lhs.mSequence == rhs.mSequence ? 0 : 1);
+        }
+    };
+
+    /**
+     * Application context.
+     */
+    private final Context mContext;
+
+    /**
+     * Root directory of segments.
+     */
+    private final File mDirectory;
+
+    /**
+     * Pending log records grouped by group name and batch identifier.
+     */
+    private final Map<String, List<Record>> mPendingRecordsGroups = new HashMap<>();
+
+    /**
+     * Identifiers of logs returned by {@link #getLogs} and not yet deleted.
+     */
+    private final Set<Long> mPendingIdentifiers = new HashSet<>();
+
+    /**
+     * Segments by group in sequence order, loaded from disk on first access.
+     */
+    private Map<String, List<Segment>> mSegments;
+
+    /**
+     * Total size of segments and indexes in bytes.
+     */
+    private long mStorageSize;
+
+    /**
+     * Maximum total size of segments and indexes in bytes.
+     */
+    private long mMaxStorageSize = DEFAULT_MAX_STORAGE_SIZE;
+
+    /**
+     * Size after which a new segment is started.
+     */
+    private long mSegmentMaxSize = MAX_SEGMENT_SIZE;
+
+    /**
+     * Sequence number of the next segment, increasing across groups so that eviction removes the oldest segment.
+     */
+    private long mNextSequence;
+
+    /**
+     * Identifier of the next log, only valid for the process lifetime.
+     */
+    private long mNextIdentifier = 1;
+
+    /**
+     * Initializes segment persistence in the files directory of the application.
+     *
+     * @param context application context.
+     */
+    public SegmentFilePersistence(Context context) {
+        this(context, new File(Constants.FILES_PATH + SEGMENTS_DIRECTORY));
+    }
+
+    /**
+     * Initializes segment persistence.
+     *
+     * @param context   application context.
+     * @param directory root directory of segments.
+     */
+    @VisibleForTesting
+    SegmentFilePersistence(Context context, File directory) {
+        mContext = context;
+        mDirectory = directory;
+    }
+
+    @Override
+    public boolean setMaxStorageSize(long maxStorageSizeInBytes) {
+
+        /* Like the database, do not shrink below the size of the logs already stored. */
+        loadSegments();
+        if (mStorageSize > maxStorageSizeInBytes) {
+            AppCenterLog.error(LOG_TAG, "Could not change maximum segments size to " + maxStorageSizeInBytes + " bytes, current size is " + mStorageSize + " bytes.");
+            return false;
+        }
+        mMaxStorageSize = maxStorageSizeInBytes;
+        mSegmentMaxSize = Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxStorageSizeInBytes / SEGMENTS_PER_STORAGE));
+        AppCenterLog.info(LOG_TAG, "Changed maximum segments size to " + maxStorageSizeInBytes + " bytes.");
+        return true;
+    }
+
+    @Override
+    public long putLog(@NonNull Log log, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
+        return putLog(log, null, group, flags);
+    }
+
+    @Override
+    public long putLog(@NonNull Log log, @Nullable String serializedLog, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException {
+        try {
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Storing a log to the segment files for log type " + log.getType() + " with flags=" + flags);
+            }
+            String payload = serializedLog != null ? serializedLog : serializeLog(log);
+            String targetKey;
+            String targetToken;
+            if (log instanceof CommonSchemaLog) {
+                targetToken = log.getTransmissionTargetTokens().iterator().next();
+                targetKey = PartAUtils.getTargetKey(targetToken);
+                targetToken = CryptoUtils.getInstance(mContext).encrypt(targetToken);
+            } else {
+                targetKey = null;
+                targetToken = null;
+            }
+
+            //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
+            byte[] payloadBytes = payload.getBytes("UTF-8");
+            if (targetKey != null && payloadBytes.length >= PAYLOAD_MAX_SIZE) {
+                throw new PersistenceException("Log is larger than " + PAYLOAD_MAX_SIZE + " bytes, cannot send to OneCollector.");
+            }
+            byte[] record = encodeRecord(log.getType(), targetToken, targetKey, payloadBytes);
+            if (record.length + ACK_ENTRY_SIZE > mMaxStorageSize) {
+                throw new PersistenceException("Log is too large (" + record.length + " bytes) to store in segment files. " +
+                        "Current maximum storage size is " + mMaxStorageSize + " bytes.");
+            }
+
+            /* Evict before choosing the segment as eviction may delete the segment we would append to. */
+            loadSegments();
+            int priority = Flags.getPersistenceFlag(flags, false);
+            if (!makeRoom(record.length, priority)) {
+                throw new PersistenceException("Storage is full and no log of lower or same priority can be evicted.");
+            }
+            Segment segment = getWritableSegment(group, priority, record.length);
+            long offset = segment.mSize;
+            try {
+                segment.getOutput().write(record);
+            } catch (IOException e) {
+
+                /* The segment may end with a partial record, stop appending to it, the tail is truncated when loading. */
+                segment.seal();
+                throw e;
+            }
+            segment.mSize += record.length;
+            mStorageSize += record.length;
+            long id = mNextIdentifier++;
+            segment.mRecords.put(id, new Record(segment, id, offset, record.length, targetKey));
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, "Stored a log to " + segment.mFile.getName() + " at offset " + offset + " with id=" + id);
+            }
+            return id;
+        } catch (JSONException e) {
+            throw new PersistenceException("Cannot convert to JSON string.", e);
+        } catch (IOException e) {
+            throw new PersistenceException("Cannot write log to a segment file.", e);
+        }
+    }
+
+    @Override
+    public void flush() {
+
+        /* Records are written to the file as soon as they are put. */
+    }
+
+    @Override
+    public boolean hasBufferedLogs() {
+        return false;
+    }
+
+    @Override
+    public void deleteLogs(@NonNull String group, @NonNull String batchId) {
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "Deleting logs from the segment files for " + group + " with " + batchId);
+        }
+        List<Record> records = mPendingRecordsGroups.remove(group + batchId);
+        if (records != null) {
+            for (Record record : records) {
+                mPendingIdentifiers.remove(record.mId);
+            }
+            acknowledge(records);
+        }
+    }
+
+    @Override
+    public void releaseLogs(@NonNull String group, @NonNull String batchId) {
+        List<Record> records = mPendingRecordsGroups.remove(group + batchId);
+        if (records != null) {
+            AppCenterLog.debug(LOG_TAG, "Releasing " + records.size() + " log(s) of " + group + " with " + batchId);
+            for (Record record : records) {
+                mPendingIdentifiers.remove(record.mId);
+            }
+        }
+    }
+
+    @Override
+    public void deleteLogs(String group) {
+        AppCenterLog.debug(LOG_TAG, "Deleting all logs from the segment files for " + group);
+        loadSegments();
+        List<Segment> segments = mSegments.remove(group);
+        if (segments != null) {
+            int deletedCount = 0;
+            for (Segment segment : segments) {
+                deletedCount += segment.mRecords.size();
+                segment.seal();
+                mStorageSize -= segment.mSize + segment.mAckSize;
+            }
+            AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " logs.");
+        }
+        FileManager.deleteDirectory(new File(mDirectory, group));
+
+        /* Delete from pending state. */
+        for (Iterator<Map.Entry<String, List<Record>>> iterator = mPendingRecordsGroups.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, List<Record>> entry = iterator.next();
+            if (entry.getKey().startsWith(group)) {
+                for (Record record : entry.getValue()) {
+                    mPendingIdentifiers.remove(record.mId);
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public int countLogs(@NonNull String group) {
+        loadSegments();
+        int count = 0;
+        List<Segment> segments = mSegments.get(group);
+        if (segments != null) {
+            for (Segment segment : segments) {
+                count += segment.mRecords.size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    @Nullable
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+        return getLogs(group, pausedTargetKeys, limit, 0, outLogs);
+    }
+
+    @Override
+    @Nullable
+    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @IntRange(from = 0) long maxBytes, @NonNull List<Log> outLogs) {
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the segment files for " + group);
+        }
+        loadSegments();
+        List<Segment> segments = mSegments.get(group);
+        if (segments == null) {
+            AppCenterLog.debug(LOG_TAG, "No logs found in the segment files at the moment");
+            return null;
+        }
+
+        /* Read logs in priority order, then oldest first. */
+        segments = new ArrayList<>(segments);
+        Collections.sort(segments, SEND_ORDER);
+        Map<Record, Log> candidates = new LinkedHashMap<>();
+        List<Record> failedRecords = new ArrayList<>();
+        long totalSize = 0;
+        boolean full = false;
+        for (Segment segment : segments) {
+            if (full || candidates.size() >= limit) {
+                break;
+            }
+            RandomAccessFile file = null;
+            try {
+                for (Record record : segment.mRecords.values()) {
+                    if (candidates.size() >= limit) {
+                        break;
+                    }
+                    if (mPendingIdentifiers.contains(record.mId) || (record.mTargetKey != null && pausedTargetKeys.contains(record.mTargetKey))) {
+                        continue;
+                    }
+                    if (maxBytes > 0 && !candidates.isEmpty() && totalSize + record.mSize > maxBytes) {
+                        full = true;
+                        break;
+                    }
+                    try {
+                        if (file == null) {
+                            file = new RandomAccessFile(segment.mFile, "r");
+                        }
+                        candidates.put(record, readLog(file, record));
+                        totalSize += record.mSize;
+                    } catch (JSONException | IOException e) {
+
+                        /* If it is not able to read or deserialize, delete and get another log. */
+                        AppCenterLog.error(LOG_TAG, "Cannot read a log in " + segment.mFile.getName(), e);
+                        failedRecords.add(record);
+                    }
+                }
+            } finally {
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+        }
+
+        /* Delete any logs that cannot be read. */
+        if (failedRecords.size() > 0) {
+            acknowledge(failedRecords);
+            AppCenterLog.warn(LOG_TAG, "Deleted logs that cannot be deserialized");
+        }
+
+        /* No logs found. */
+        if (candidates.size() <= 0) {
+            AppCenterLog.debug(LOG_TAG, "No logs found in the segment files at the moment");
+            return null;
+        }
+
+        /* Generate an ID and move logs to pending state. */
+        String id = UUID.randomUUID().toString();
+        if (AppCenterLog.getLogLevel() <= DEBUG) {
+            AppCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
+        }
+        List<Record> pendingRecordsGroup = new ArrayList<>(candidates.size());
+        for (Map.Entry<Record, Log> entry : candidates.entrySet()) {
+            Record record = entry.getKey();
+            mPendingIdentifiers.add(record.mId);
+            pendingRecordsGroup.add(record);
+            outLogs.add(entry.getValue());
+        }
+        mPendingRecordsGroups.put(group + id, pendingRecordsGroup);
+        return id;
+    }
+
+    @Override
+    public void clearPendingLogState() {
+        mPendingIdentifiers.clear();
+        mPendingRecordsGroups.clear();
+        AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
+    }
+
+    @Override
+    public void close() {
+        if (mSegments != null) {
+            for (List<Segment> segments : mSegments.values()) {
+                for (Segment segment : segments) {
+                    segment.closeOutput();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the total size of segments and indexes.
+     *
+     * @return size in bytes.
+     */
+    @VisibleForTesting
+    long getStorageSize() {
+        loadSegments();
+        return mStorageSize;
+    }
+
+    /**
+     * Encodes a log record: header length, payload length, checksum, header then payload.
+     */
+    private static byte[] encodeRecord(String type, @Nullable String targetToken, @Nullable String targetKey, byte[] payloadBytes) throws IOException {
+        ByteArrayOutputStream headerStream = new ByteArrayOutputStream();
+        DataOutputStream headerOutput = new DataOutputStream(headerStream);
+        headerOutput.writeUTF(type);
+        headerOutput.writeUTF(targetToken != null ? targetToken : "");
+        headerOutput.writeUTF(targetKey != null ? targetKey : "");
+        headerOutput.flush();
+        byte[] header = headerStream.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(header);
+        checksum.update(payloadBytes);
+        ByteArrayOutputStream recordStream = new ByteArrayOutputStream(RECORD_PREFIX_SIZE + header.length + payloadBytes.length);
+        DataOutputStream recordOutput = new DataOutputStream(recordStream);
+        recordOutput.writeInt(header.length);
+        recordOutput.writeInt(payloadBytes.length);
+        recordOutput.writeInt((int) checksum.getValue());
+        recordOutput.write(header);
+        recordOutput.write(payloadBytes);
+        recordOutput.flush();
+        return recordStream.toByteArray();
+    }
+
+    /**
+     * Reads and deserializes a log record.
+     */
+    private Log readLog(RandomAccessFile file, Record record) throws IOException, JSONException {
+        file.seek(record.mOffset);
+        int headerLength = file.readInt();
+        int payloadLength = file.readInt();
+        int expectedChecksum = file.readInt();
+        byte[] header = new byte[headerLength];
+        file.readFully(header);
+        byte[] payloadBytes = new byte[payloadLength];
+        file.readFully(payloadBytes);
+        CRC32 checksum = new CRC32();
+        checksum.update(header);
+        checksum.update(payloadBytes);
+        if ((int) checksum.getValue() != expectedChecksum) {
+            throw new IOException("Log record checksum mismatch at offset " + record.mOffset);
+        }
+        DataInputStream headerInput = new DataInputStream(new ByteArrayInputStream(header));
+        String type = headerInput.readUTF();
+        String targetToken = headerInput.readUTF();
+
+        //noinspection CharsetObjectCanBeUsed min API level 19 required to fix this warning.
+        Log log = getLogSerializer().deserializeLog(new String(payloadBytes, "UTF-8"), type);
+        if (!targetToken.isEmpty()) {
+            CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken);
+            log.addTransmissionTarget(data.getDecryptedData());
+        }
+        return log;
+    }
+
+    /**
+     * Gets the segment to append a record to, starting a new one when the last one is full.
+     */
+    private Segment getWritableSegment(String group, int priority, int recordLength) {
+        List<Segment> segments = mSegments.get(group);
+        if (segments == null) {
+            segments = new ArrayList<>();
+            mSegments.put(group, segments);
+        }
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (segment.mPriority == priority) {
+                if (!segment.mSealed && (segment.mSize == 0 || segment.mSize + recordLength <= mSegmentMaxSize)) {
+                    return segment;
+                }
+                segment.seal();
+                break;
+            }
+        }
+        File directory = new File(mDirectory, group);
+
+        //noinspection ResultOfMethodCallIgnored we'll get an error anyway at write time.
+        directory.mkdirs();
+        Segment segment = new Segment(group, directory, priority, mNextSequence++);
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Evicts the oldest segments of lowest priority until a record fits in the storage.
+     * Segments with logs being sent are skipped, they are deleted or released when the sending completes.
+     *
+     * @param recordLength size of the record to write.
+     * @param maxPriority  highest priority of logs that can be evicted.
+     * @return true if the record fits, false otherwise.
+     */
+    private boolean makeRoom(long recordLength, int maxPriority) {
+        while (mStorageSize + recordLength > mMaxStorageSize) {
+            Segment oldest = null;
+            for (List<Segment> segments : mSegments.values()) {
+                for (Segment segment : segments) {
+                    if (segment.mPriority <= maxPriority && (oldest == null ||
+                            segment.mPriority < oldest.mPriority ||
+                            (segment.mPriority == oldest.mPriority && segment.mSequence < oldest.mSequence)) &&
+                            !hasPendingRecords(segment)) {
+                        oldest = segment;
+                    }
+                }
+            }
+            if (oldest == null) {
+                return false;
+            }
+            int count = oldest.mRecords.size();
+            long bytes = oldest.mSize;
+            deleteSegment(oldest);
+            AppCenterLog.warn(LOG_TAG, "Storage is full, evicted " + count + " log(s) of group " + oldest.mGroup + " (" + bytes + " bytes).");
+            EvictionListener evictionListener = getEvictionListener();
+            if (evictionListener != null && count > 0) {
+                evictionListener.onLogsEvicted(oldest.mGroup, count, bytes);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a segment contains logs being sent.
+     */
+    private boolean hasPendingRecords(Segment segment) {
+        if (!mPendingIdentifiers.isEmpty()) {
+            for (Long id : segment.mRecords.keySet()) {
+                if (mPendingIdentifiers.contains(id)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes logs from their segments, recording their offsets in the acknowledged index
+     * or deleting the segment when it has no log left.
+     */
+    private void acknowledge(Collection<Record> records) {
+        Map<Segment, List<Record>> recordsBySegment = new LinkedHashMap<>();
+        for (Record record : records) {
+            if (record.mSegment.mRecords.remove(record.mId) != null) {
+                List<Record> segmentRecords = recordsBySegment.get(record.mSegment);
+                if (segmentRecords == null) {
+                    segmentRecords = new ArrayList<>();
+                    recordsBySegment.put(record.mSegment, segmentRecords);
+                }
+                segmentRecords.add(record);
+            }
+        }
+        for (Map.Entry<Segment, List<Record>> entry : recordsBySegment.entrySet()) {
+            Segment segment = entry.getKey();
+            if (segment.mRecords.isEmpty()) {
+                deleteSegment(segment);
+                continue;
+            }
+            List<Record> segmentRecords = entry.getValue();
+            DataOutputStream output = null;
+            try {
+                output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment.mAckFile, true)));
+                for (Record record : segmentRecords) {
+                    output.writeInt((int) record.mOffset);
+                }
+                output.flush();
+                segment.mAckSize += segmentRecords.size() * ACK_ENTRY_SIZE;
+                mStorageSize += segmentRecords.size() * ACK_ENTRY_SIZE;
+            } catch (IOException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to acknowledge logs in " + segment.mAckFile.getName(), e);
+            } finally {
+                if (output != null) {
+                    try {
+                        output.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes a segment and its index.
+     */
+    private void deleteSegment(Segment segment) {
+        segment.seal();
+        segment.mRecords.clear();
+        List<Segment> segments = mSegments.get(segment.mGroup);
+        if (segments != null) {
+            segments.remove(segment);
+            if (segments.isEmpty()) {
+                mSegments.remove(segment.mGroup);
+            }
+        }
+        mStorageSize -= segment.mSize + segment.mAckSize;
+        FileManager.delete(segment.mFile);
+        FileManager.delete(segment.mAckFile);
+    }
+
+    /**
+     * Loads the index of all segments if not already done.
+     */
+    private void loadSegments() {
+        if (mSegments != null) {
+            return;
+        }
+        mSegments = new HashMap<>();
+        File[] directories = mDirectory.listFiles();
+        if (directories == null) {
+            return;
+        }
+        for (File directory : directories) {
+            String group = directory.getName();
+            File[] files = directory.listFiles();
+            if (files == null) {
+                continue;
+            }
+            List<Segment> segments = new ArrayList<>();
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(SEGMENT_FILE_EXTENSION)) {
+                    continue;
+                }
+                Segment segment;
+                try {
+                    String[] parts = name.substring(0, name.length() - SEGMENT_FILE_EXTENSION.length()).split("-");
+                    segment = new Segment(group, directory, Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+                } catch (RuntimeException e) {
+                    AppCenterLog.warn(LOG_TAG, "Ignoring unexpected file " + file);
+                    continue;
+                }
+                loadSegment(segment);
+                mNextSequence = Math.max(mNextSequence, segment.mSequence + 1);
+                if (segment.mRecords.isEmpty()) {
+                    FileManager.delete(segment.mFile);
+                    FileManager.delete(segment.mAckFile);
+                } else {
+                    segments.add(segment);
+                    mStorageSize += segment.mSize + segment.mAckSize;
+                }
+            }
+            if (segments.isEmpty()) {
+                FileManager.deleteDirectory(directory);
+            } else {
+                Collections.sort(segments, SEND_ORDER);
+                mSegments.put(group, segments);
+            }
+        }
+        AppCenterLog.debug(LOG_TAG, "Loaded segment files, total size is " + mStorageSize + " bytes.");
+    }
+
+    /**
+     * Reads record headers of a segment, skipping acknowledged ones and truncating a partially written tail.
+     */
+    private void loadSegment(Segment segment) {
+        Set<Integer> acknowledgedOffsets = new HashSet<>();
+        if (segment.mAckFile.exists()) {
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.mAckFile)));
+                long entries = segment.mAckFile.length() / ACK_ENTRY_SIZE;
+                for (long i = 0; i < entries; i++) {
+                    acknowledgedOffsets.add(input.readInt());
+                }
+            } catch (IOException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to read " + segment.mAckFile.getName(), e);
+            } finally {
+                closeQuietly(input);
+            }
+            segment.mAckSize = segment.mAckFile.length();
+        }
+        long length = segment.mFile.length();
+        long offset = 0;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.mFile)));
+            while (offset + RECORD_PREFIX_SIZE <= length) {
+                int headerLength = input.readInt();
+                int payloadLength = input.readInt();
+                input.readInt();
+                long recordLength = RECORD_PREFIX_SIZE + (long) headerLength + payloadLength;
+                if (headerLength < 0 || payloadLength < 0 || offset + recordLength > length) {
+                    break;
+                }
+                byte[] header = new byte[headerLength];
+                input.readFully(header);
+                skipFully(input, payloadLength);
+                if (!acknowledgedOffsets.contains((int) offset)) {
+                    DataInputStream headerInput = new DataInputStream(new ByteArrayInputStream(header));
+                    headerInput.readUTF();
+                    headerInput.readUTF();
+                    String targetKey = headerInput.readUTF();
+                    long id = mNextIdentifier++;
+                    segment.mRecords.put(id, new Record(segment, id, offset, (int) recordLength, targetKey.isEmpty() ? null : targetKey));
+                }
+                offset += recordLength;
+            }
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to read " + segment.mFile.getName() + " after offset " + offset, e);
+        } finally {
+            closeQuietly(input);
+        }
+
+        /* Remove a record that was not completely written. */
+        if (offset < length) {
+            AppCenterLog.warn(LOG_TAG, "Truncating " + segment.mFile.getName() + " from " + length + " to " + offset + " bytes.");
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(segment.mFile, "rw");
+                file.setLength(offset);
+            } catch (IOException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to truncate " + segment.mFile.getName(), e);
+            } finally {
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+        }
+        segment.mSize = offset;
+
+        /* Segments of a previous process are only read, new logs go to new segments. */
+        segment.mSealed = true;
+    }
+
+    private static void skipFully(DataInputStream input, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = input.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static void closeQuietly(@Nullable DataInputStream input) {
+        if (input != null) {
+            try {
+                input.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * A segment file and its acknowledged offsets index.
+     */
+    private static class Segment {
+
+        /**
+         * Group of the logs.
+         */
+        final String mGroup;
+
+        /**
+         * Persistence priority of the logs.
+         */
+        final int mPriority;
+
+        /**
+         * Sequence number, higher for newer segments.
+         */
+        final long mSequence;
+
+        /**
+         * Segment file.
+         */
+        final File mFile;
+
+        /**
+         * Acknowledged offsets index file.
+         */
+        final File mAckFile;
+
+        /**
+         * Logs not yet deleted by identifier, in offset order.
+         */
+        final Map<Long, Record> mRecords = new LinkedHashMap<>();
+
+        /**
+         * Size of the segment file.
+         */
+        long mSize;
+
+        /**
+         * Size of the index file.
+         */
+        long mAckSize;
+
+        /**
+         * True if no more records can be appended.
+         */
+        boolean mSealed;
+
+        /**
+         * Output stream used to append records, opened on first write.
+         */
+        private FileOutputStream mOutput;
+
+        Segment(String group, File directory, int priority, long sequence) {
+            mGroup = group;
+            mPriority = priority;
+            mSequence = sequence;
+            String name = priority + "-" + sequence;
+            mFile = new File(directory, name + SEGMENT_FILE_EXTENSION);
+            mAckFile = new File(directory, name + ACK_FILE_EXTENSION);
+        }
+
+        FileOutputStream getOutput() throws IOException {
+            if (mOutput == null) {
+                mOutput = new FileOutputStream(mFile, true);
+            }
+            return mOutput;
+        }
+
+        void seal() {
+            mSealed = true;
+            closeOutput();
+        }
+
+        void closeOutput() {
+            if (mOutput != null) {
+                try {
+                    mOutput.close();
+                } catch (IOException e) {
+                    AppCenterLog.error(LOG_TAG, "Failed to close " + mFile.getName(), e);
+                }
+                mOutput = null;
+            }
+        }
+    }
+
+    /**
+     * Location of a log in a segment.
+     */
+    private static class Record {
+
+        /**
+         * Segment containing the log.
+         */
+        final Segment mSegment;
+
+        /**
+         * Log identifier.
+         */
+        final long mId;
+
+        /**
+         * Offset of the record in the segment file.
+         */
+        final long mOffset;
+
+        /**
+         * Size of the record in bytes.
+         */
+        final int mSize;
+
+        /**
+         * Target key of Common Schema logs, null otherwise.
+         */
+        final String mTargetKey;
+
+        Record(Segment segment, long id, long offset, int size, String targetKey) {
+            mSegment = segment;
+            mId = id;
+            mOffset = offset;
+            mSize = size;
+            mTargetKey = targetKey;
+        }
+    }
+}
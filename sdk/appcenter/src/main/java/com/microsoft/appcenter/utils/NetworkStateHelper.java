@@ -132,6 +132,20 @@ public class NetworkStateHelper implements Closeable {
         return mConnected.get() || isAnyNetworkConnected();
     }
 
+    /**
+     * Check whether the active network is metered, such as a cellular network.
+     *
+     * @return true if metered, false if not metered or unknown.
+     */
+    public boolean isNetworkMetered() {
+        try {
+            return mConnectivityManager.isActiveNetworkMetered();
+        } catch (RuntimeException e) {
+            AppCenterLog.debug(LOG_TAG, "Cannot check if network is metered.");
+            return false;
+        }
+    }
+
     /**
      * Check if any network is connected.
      *
@@ -10,9 +10,11 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -21,7 +23,12 @@ import androidx.annotation.VisibleForTesting;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static com.microsoft.appcenter.utils.AppCenterLog.LOG_TAG;
 
@@ -40,6 +47,12 @@ public class DatabaseManager implements Closeable {
      */
     public static final String[] SELECT_PRIMARY_KEY = {PRIMARY_KEY};
 
+    /**
+     * Page cache size in KiB used with write-ahead logging.
+     */
+    @VisibleForTesting
+    static final int WRITE_AHEAD_LOGGING_CACHE_SIZE_KIB = 4096;
+
     /**
      * Application context instance.
      */
@@ -70,6 +83,46 @@ public class DatabaseManager implements Closeable {
      */
     private SQLiteOpenHelper mSQLiteOpenHelper;
 
+    /**
+     * Whether write-ahead logging and related tuning are applied when opening the database.
+     */
+    private boolean mWriteAheadLoggingEnabled;
+
+    /**
+     * Compiled insert statements for the default table, by column list.
+     */
+    private final Map<String, SQLiteStatement> mInsertStatements = new HashMap<>();
+
+    /**
+     * Compiled statement to delete an entry by identifier from the default table.
+     */
+    private SQLiteStatement mDeleteStatement;
+
+    /**
+     * Database on which statements were compiled.
+     */
+    private SQLiteDatabase mStatementsDatabase;
+
+    /**
+     * Number of entries deleted to make room for new ones since this instance was created.
+     */
+    private long mEvictionCount;
+
+    /**
+     * Estimated size in bytes of entries deleted to make room for new ones since this instance was created.
+     */
+    private long mEvictedBytes;
+
+    /**
+     * Column used to report evicted entries per group, null to report them all at once.
+     */
+    private String mEvictionGroupColumn;
+
+    /**
+     * Eviction listener.
+     */
+    private EvictionListener mEvictionListener;
+
     /**
      * Initializes the table in the database.
      *
@@ -89,6 +142,15 @@ public class DatabaseManager implements Closeable {
         mListener = listener;
         mSQLiteOpenHelper = new SQLiteOpenHelper(context, database, null, version) {
 
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+                if (mWriteAheadLoggingEnabled) {
+                    db.enableWriteAheadLogging();
+                    db.execSQL("PRAGMA synchronous = NORMAL");
+                    db.execSQL("PRAGMA cache_size = -" + WRITE_AHEAD_LOGGING_CACHE_SIZE_KIB);
+                }
+            }
+
             @Override
             public void onCreate(SQLiteDatabase db) {
                 db.execSQL(sqlCreateCommand);
@@ -97,11 +159,47 @@ public class DatabaseManager implements Closeable {
 
             @Override
             public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-                mListener.onUpgrade(db, oldVersion, newVersion);
+
+                /* Apply incremental migrations in order if every step can be migrated, this runs in the upgrade transaction. */
+                List<Migration> migrations = new ArrayList<>();
+                for (int version = oldVersion + 1; version <= newVersion; version++) {
+                    Migration migration = mListener.getMigration(version);
+                    if (migration == null) {
+                        AppCenterLog.warn(LOG_TAG, "No migration to version " + version + " of " + mDatabase + ", recreating schema.");
+                        mListener.onUpgrade(db, oldVersion, newVersion);
+                        return;
+                    }
+                    migrations.add(migration);
+                }
+                for (Migration migration : migrations) {
+                    migration.migrate(db);
+                }
+                AppCenterLog.debug(LOG_TAG, "Migrated " + mDatabase + " from version " + oldVersion + " to " + newVersion);
             }
         };
     }
 
+    /**
+     * Enables write-ahead logging with normal synchronization and a larger page cache. It's applied
+     * the next time the database is opened so this must be called before any other operation.
+     *
+     * @param enabled true to enable write-ahead logging and related tuning.
+     */
+    public void setWriteAheadLoggingEnabled(boolean enabled) {
+        mWriteAheadLoggingEnabled = enabled;
+    }
+
+    /**
+     * Sets a listener notified when entries are deleted to make room for new ones.
+     *
+     * @param groupColumn column used to group evicted entries when notifying the listener, null for no grouping.
+     * @param listener    listener or null to remove it.
+     */
+    public void setEvictionListener(@Nullable String groupColumn, @Nullable EvictionListener listener) {
+        mEvictionGroupColumn = groupColumn;
+        mEvictionListener = listener;
+    }
+
     /**
      * Converts a cursor to an entry.
      *
@@ -180,44 +278,221 @@ public class DatabaseManager implements Closeable {
      * @return If a log was inserted, the database identifier. Otherwise -1.
      */
     public long put(@NonNull ContentValues values, @NonNull String priorityColumn) {
-        Long id = null;
-        Cursor cursor = null;
         try {
-            while (id == null) {
+            long bytesToFree = Math.max(1, getEstimatedSize(values));
+            while (true) {
                 try {
 
                     /* Insert data. */
-                    id = getDatabase().insertOrThrow(mDefaultTable, null, values);
+                    return insert(values);
                 } catch (SQLiteFullException e) {
 
-                    /* Delete the oldest log. */
-                    AppCenterLog.debug(LOG_TAG, "Storage is full, trying to delete the oldest log that has the lowest priority which is lower or equal priority than the new log");
-                    if (cursor == null) {
-                        String priority = values.getAsString(priorityColumn);
-                        SQLiteQueryBuilder queryBuilder = SQLiteUtils.newSQLiteQueryBuilder();
-                        queryBuilder.appendWhere(priorityColumn + " <= ?");
-                        cursor = getCursor(queryBuilder, SELECT_PRIMARY_KEY, new String[]{priority}, priorityColumn + " , " + PRIMARY_KEY);
-                    }
-                    if (cursor.moveToNext()) {
-                        long deletedId = cursor.getLong(0);
-                        delete(deletedId);
-                        AppCenterLog.debug(LOG_TAG, "Deleted log id=" + deletedId);
-                    } else {
+                    /*
+                     * Delete enough of the oldest logs to fit the new one in a single statement.
+                     * Freed space might not be reusable right away because of page fragmentation,
+                     * so try to free twice as much if the insert fails again.
+                     */
+                    AppCenterLog.debug(LOG_TAG, "Storage is full, trying to delete " + bytesToFree + " bytes of the oldest logs that have the lowest priority which is lower or equal priority than the new log");
+                    if (evict(values.getAsString(priorityColumn), priorityColumn, bytesToFree) == 0) {
                         throw e;
                     }
+                    bytesToFree *= 2;
                 }
             }
         } catch (RuntimeException e) {
-            id = -1L;
             AppCenterLog.error(LOG_TAG, String.format("Failed to insert values (%s) to database %s.", values.toString(), mDatabase), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Estimates the storage size of an entry.
+     *
+     * @param values The entry.
+     * @return Estimated size in bytes.
+     */
+    private static long getEstimatedSize(@NonNull ContentValues values) {
+        long size = 0;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                size += ((String) value).length();
+            } else if (value instanceof byte[]) {
+                size += ((byte[]) value).length;
+            } else {
+                size += 8;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Deletes the oldest entries of lowest priority until the given size is freed.
+     * Must not be called within a transaction, the eviction listener is notified as soon as entries are deleted.
+     *
+     * @param priority       Maximum priority of deleted entries.
+     * @param priorityColumn Priority column name.
+     * @param bytesToFree    Minimum estimated size to free.
+     * @return Number of deleted entries.
+     * @throws RuntimeException If an error occurs.
+     */
+    private int evict(String priority, @NonNull String priorityColumn, long bytesToFree) {
+
+        /* Select identifiers with estimated row size, at least 1 byte so that each pass deletes something. */
+        StringBuilder rowSize = new StringBuilder("MAX(1, 0");
+        if (mSchema != null) {
+            for (String column : mSchema.keySet()) {
+                rowSize.append(" + IFNULL(LENGTH(CAST(`").append(column).append("` AS BLOB)), 0)");
+            }
         }
-        if (cursor != null) {
+        rowSize.append(")");
+        String[] columns = mEvictionGroupColumn == null ?
+                new String[]{PRIMARY_KEY, rowSize.toString()} :
+                new String[]{PRIMARY_KEY, rowSize.toString(), mEvictionGroupColumn};
+        SQLiteQueryBuilder queryBuilder = SQLiteUtils.newSQLiteQueryBuilder();
+        queryBuilder.appendWhere(priorityColumn + " <= ?");
+        List<Long> ids = new ArrayList<>();
+        Map<String, List<Long>> groupIds = new HashMap<>();
+        Map<String, Long> groupBytes = new HashMap<>();
+        long freedBytes = 0;
+        Cursor cursor = getCursor(queryBuilder, columns, new String[]{priority}, priorityColumn + " , " + PRIMARY_KEY);
+        try {
+            while (freedBytes < bytesToFree && cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                ids.add(id);
+                long size = cursor.getLong(1);
+                freedBytes += size;
+                String group = mEvictionGroupColumn == null ? null : cursor.getString(2);
+                List<Long> evictedIds = groupIds.get(group);
+                if (evictedIds == null) {
+                    evictedIds = new ArrayList<>();
+                    groupIds.put(group, evictedIds);
+                    groupBytes.put(group, 0L);
+                }
+                evictedIds.add(id);
+                groupBytes.put(group, groupBytes.get(group) + size);
+            }
+        } finally {
             try {
                 cursor.close();
             } catch (RuntimeException ignore) {
             }
         }
-        return id;
+
+        /* Delete in one statement. */
+        int deletedCount = delete(ids);
+        if (deletedCount == 0) {
+            return 0;
+        }
+        mEvictionCount += deletedCount;
+        mEvictedBytes += freedBytes;
+        AppCenterLog.debug(LOG_TAG, "Deleted " + deletedCount + " logs of " + freedBytes + " bytes to make room.");
+        if (mEvictionListener != null) {
+            for (Map.Entry<String, List<Long>> entry : groupIds.entrySet()) {
+                mEvictionListener.onEvicted(entry.getKey(), entry.getValue(), groupBytes.get(entry.getKey()));
+            }
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Stores the entries to the table within a single transaction.
+     * If the table is full, the transaction is rolled back, the oldest entries are discarded
+     * the same way as {@link #put(ContentValues, String)} does but outside of the transaction,
+     * then all the entries are inserted again. If no more room can be made, only the first
+     * entries that fit are stored.
+     *
+     * @param valuesList     The entries to be stored.
+     * @param priorityColumn When storage full and deleting data, use this column to determine which entries to delete first.
+     * @return The database identifiers in the same order as the entries, -1 for each entry that was not inserted.
+     */
+    @NonNull
+    public long[] put(@NonNull List<ContentValues> valuesList, @NonNull String priorityColumn) {
+        long[] ids = new long[valuesList.size()];
+        int insertCount = ids.length;
+        long bytesToFree = 0;
+        for (ContentValues values : valuesList) {
+            bytesToFree += getEstimatedSize(values);
+        }
+        bytesToFree = Math.max(1, bytesToFree);
+        while (true) {
+            int fullIndex;
+            try {
+                fullIndex = insertInTransaction(valuesList, insertCount, ids);
+            } catch (RuntimeException e) {
+                AppCenterLog.error(LOG_TAG, String.format("Failed to insert %d values to database %s.", ids.length, mDatabase), e);
+                Arrays.fill(ids, -1L);
+                return ids;
+            }
+            if (fullIndex < 0) {
+                return ids;
+            }
+
+            /*
+             * SQLite may have rolled back the whole transaction, so evicted entries would come back
+             * if they were deleted in it: make room in a separate statement before inserting again.
+             */
+            int evictedCount;
+            try {
+                AppCenterLog.debug(LOG_TAG, "Storage is full, trying to delete " + bytesToFree + " bytes of the oldest logs before inserting " + insertCount + " logs again.");
+                evictedCount = evict(valuesList.get(fullIndex).getAsString(priorityColumn), priorityColumn, bytesToFree);
+            } catch (RuntimeException e) {
+                AppCenterLog.error(LOG_TAG, String.format("Failed to make room for %d values in database %s.", insertCount, mDatabase), e);
+                evictedCount = 0;
+            }
+            if (evictedCount > 0) {
+                bytesToFree *= 2;
+            } else if (fullIndex > 0) {
+
+                /* Store the entries that fit. */
+                insertCount = fullIndex;
+            } else {
+                return ids;
+            }
+        }
+    }
+
+    /**
+     * Inserts the first entries of a list within a single transaction, rolling it back if the table is full.
+     *
+     * @param valuesList The entries to be stored.
+     * @param count      The number of entries to store from the beginning of the list.
+     * @param ids        Receives the database identifiers, -1 for each entry that was not inserted.
+     * @return The index of the entry that did not fit if the transaction was rolled back, -1 if it was committed.
+     * @throws RuntimeException If an error other than the table being full occurs, the transaction is then rolled back.
+     */
+    private int insertInTransaction(@NonNull List<ContentValues> valuesList, int count, @NonNull long[] ids) {
+        Arrays.fill(ids, -1L);
+        SQLiteDatabase database = getDatabase();
+        database.beginTransaction();
+        int fullIndex = -1;
+        try {
+            for (int i = 0; i < count; i++) {
+                try {
+                    ids[i] = insert(valuesList.get(i));
+                } catch (SQLiteFullException e) {
+                    fullIndex = i;
+                    break;
+                }
+            }
+            if (fullIndex < 0) {
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            try {
+                database.endTransaction();
+            } catch (RuntimeException e) {
+
+                /* Rolling back fails if SQLite already did it because of the full table. */
+                if (fullIndex < 0) {
+                    throw e;
+                }
+            }
+        }
+        if (fullIndex >= 0) {
+            Arrays.fill(ids, -1L);
+        }
+        return fullIndex;
     }
 
     /**
@@ -226,7 +501,120 @@ public class DatabaseManager implements Closeable {
      * @param id The database identifier.
      */
     public void delete(@IntRange(from = 0) long id) {
-        delete(mDefaultTable, PRIMARY_KEY, id);
+        try {
+            SQLiteDatabase database = getDatabase();
+            invalidateStatements(database);
+            if (mDeleteStatement == null) {
+                mDeleteStatement = database.compileStatement("DELETE FROM `" + mDefaultTable + "` WHERE " + PRIMARY_KEY + " = ?");
+            }
+            mDeleteStatement.bindLong(1, id);
+            mDeleteStatement.executeUpdateDelete();
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to delete value with id=%s from database %s.", id, mDatabase), e);
+        }
+    }
+
+    /**
+     * Deletes the entries by identifiers from the database in a single statement.
+     *
+     * @param ids The database identifiers.
+     * @return the number of rows affected.
+     */
+    public int delete(@NonNull Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        /* Identifiers are numbers so they are inlined to avoid hitting the SQLite bound variables limit. */
+        StringBuilder idList = new StringBuilder();
+        for (Long id : ids) {
+            idList.append(id).append(",");
+        }
+        idList.deleteCharAt(idList.length() - 1);
+        String whereClause = PRIMARY_KEY + " IN (" + idList + ")";
+        try {
+            return getDatabase().delete(mDefaultTable, whereClause, null);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to delete values that match condition=\"%s\" from database %s.", whereClause, mDatabase), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Inserts the entry in the default table.
+     *
+     * @param values The entry to be stored.
+     * @return The database identifier.
+     * @throws RuntimeException If an error occurs, including {@link SQLiteFullException}.
+     */
+    private long insert(@NonNull ContentValues values) {
+
+        /* Reuse a compiled statement for this column list. */
+        SQLiteDatabase database = getDatabase();
+        invalidateStatements(database);
+        Object[] args = new Object[values.size()];
+        StringBuilder columns = new StringBuilder();
+        int i = 0;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            columns.append(i == 0 ? "" : ",").append('`').append(entry.getKey()).append('`');
+            args[i++] = entry.getValue();
+        }
+        String columnList = columns.toString();
+        SQLiteStatement statement = mInsertStatements.get(columnList);
+        if (statement == null) {
+            StringBuilder sql = new StringBuilder("INSERT INTO `").append(mDefaultTable).append("`(").append(columnList).append(") VALUES (");
+            for (int j = 0; j < args.length; j++) {
+                sql.append(j == 0 ? "?" : ",?");
+            }
+            sql.append(")");
+            statement = database.compileStatement(sql.toString());
+            mInsertStatements.put(columnList, statement);
+        }
+        statement.clearBindings();
+        for (int j = 0; j < args.length; j++) {
+            DatabaseUtils.bindObjectToProgram(statement, j + 1, args[j]);
+        }
+        long id = statement.executeInsert();
+        if (id == -1) {
+            throw new SQLiteException("Failed to insert values in " + mDefaultTable);
+        }
+        return id;
+    }
+
+    /**
+     * Inserts an entry in another table than the default one, without evicting entries if the database is full.
+     *
+     * @param table  The table to perform the operation on.
+     * @param values The entry to be stored.
+     * @return The database identifier or -1 if the entry could not be stored.
+     */
+    public long insert(@NonNull String table, @NonNull ContentValues values) {
+        try {
+            return getDatabase().insertOrThrow(table, null, values);
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, String.format("Failed to insert values (%s) to database %s.", values.toString(), mDatabase), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Releases compiled statements if they were compiled on another database connection than the given one.
+     *
+     * @param database The database currently in use, or null to release statements unconditionally.
+     */
+    private void invalidateStatements(@Nullable SQLiteDatabase database) {
+        if (database != null && database == mStatementsDatabase) {
+            return;
+        }
+        for (SQLiteStatement statement : mInsertStatements.values()) {
+            statement.close();
+        }
+        mInsertStatements.clear();
+        if (mDeleteStatement != null) {
+            mDeleteStatement.close();
+            mDeleteStatement = null;
+        }
+        mStatementsDatabase = database;
     }
 
     /**
@@ -248,7 +636,7 @@ public class DatabaseManager implements Closeable {
      * @param value The optional value for query.
      * @return the number of rows affected.
      */
-    private int delete(@NonNull String table, @NonNull String key, @Nullable Object value) {
+    public int delete(@NonNull String table, @NonNull String key, @Nullable Object value) {
         String[] whereArgs = new String[]{String.valueOf(value)};
         try {
             return getDatabase().delete(table, key + " = ?", whereArgs);
@@ -277,6 +665,7 @@ public class DatabaseManager implements Closeable {
         try {
 
             /* Close opened database (do not force open). */
+            invalidateStatements(null);
             mSQLiteOpenHelper.close();
         } catch (RuntimeException e) {
             AppCenterLog.error(LOG_TAG, "Failed to close the database.", e);
@@ -308,7 +697,38 @@ public class DatabaseManager implements Closeable {
      * @throws RuntimeException If an error occurs.
      */
     public Cursor getCursor(@Nullable SQLiteQueryBuilder queryBuilder, String[] columns, @Nullable String[] selectionArgs, @Nullable String sortOrder) throws RuntimeException {
-        return getCursor(mDefaultTable, queryBuilder, columns, selectionArgs, sortOrder);
+        return getCursor(mDefaultTable, queryBuilder, columns, selectionArgs, null, sortOrder, null);
+    }
+
+    /**
+     * Gets a cursor for at most {@code limit} rows in the table that match the query.
+     *
+     * @param queryBuilder  The query builder that contains SQL query.
+     * @param columns       Columns to select, null for all.
+     * @param selectionArgs The array of values for selection.
+     * @param sortOrder     Sorting order (ORDER BY clause without ORDER BY itself).
+     * @param limit         Maximum number of rows to return (LIMIT clause without LIMIT itself), null for no limit.
+     * @return A cursor for the rows that match the given criteria.
+     * @throws RuntimeException If an error occurs.
+     */
+    public Cursor getCursor(@Nullable SQLiteQueryBuilder queryBuilder, String[] columns, @Nullable String[] selectionArgs, @Nullable String sortOrder, @Nullable String limit) throws RuntimeException {
+        return getCursor(mDefaultTable, queryBuilder, columns, selectionArgs, null, sortOrder, limit);
+    }
+
+    /**
+     * Gets a cursor for an aggregate query on the table.
+     *
+     * @param queryBuilder  The query builder that contains SQL query.
+     * @param columns       Columns to select, including aggregate functions.
+     * @param selectionArgs The array of values for selection.
+     * @param groupBy       GROUP BY clause without GROUP BY itself.
+     * @param sortOrder     Sorting order (ORDER BY clause without ORDER BY itself).
+     * @param limit         Maximum number of rows to return (LIMIT clause without LIMIT itself), null for no limit.
+     * @return A cursor for the rows that match the given criteria.
+     * @throws RuntimeException If an error occurs.
+     */
+    public Cursor getCursor(@Nullable SQLiteQueryBuilder queryBuilder, String[] columns, @Nullable String[] selectionArgs, @Nullable String groupBy, @Nullable String sortOrder, @Nullable String limit) throws RuntimeException {
+        return getCursor(mDefaultTable, queryBuilder, columns, selectionArgs, groupBy, sortOrder, limit);
     }
 
     /**
@@ -318,16 +738,18 @@ public class DatabaseManager implements Closeable {
      * @param queryBuilder  The query builder that contains SQL query.
      * @param columns       Columns to select, null for all.
      * @param selectionArgs The array of values for selection.
+     * @param groupBy       GROUP BY clause without GROUP BY itself, null for no grouping.
      * @param sortOrder     Sorting order (ORDER BY clause without ORDER BY itself).
+     * @param limit         Maximum number of rows to return (LIMIT clause without LIMIT itself), null for no limit.
      * @return A cursor for all rows that matches the given criteria.
      * @throws RuntimeException If an error occurs.
      */
-    Cursor getCursor(@NonNull String table, @Nullable SQLiteQueryBuilder queryBuilder, String[] columns, @Nullable String[] selectionArgs, @Nullable String sortOrder) throws RuntimeException {
+    public Cursor getCursor(@NonNull String table, @Nullable SQLiteQueryBuilder queryBuilder, String[] columns, @Nullable String[] selectionArgs, @Nullable String groupBy, @Nullable String sortOrder, @Nullable String limit) throws RuntimeException {
         if (queryBuilder == null) {
             queryBuilder = SQLiteUtils.newSQLiteQueryBuilder();
         }
         queryBuilder.setTables(table);
-        return queryBuilder.query(getDatabase(), columns, null, selectionArgs, null, null, sortOrder);
+        return queryBuilder.query(getDatabase(), columns, null, selectionArgs, groupBy, null, sortOrder, limit);
     }
 
     /**
@@ -404,6 +826,24 @@ public class DatabaseManager implements Closeable {
         }
     }
 
+    /**
+     * Gets the number of entries deleted by {@link #put} to make room for new ones since this instance was created.
+     *
+     * @return The number of evicted entries.
+     */
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Gets the estimated size of entries deleted by {@link #put} to make room for new ones since this instance was created.
+     *
+     * @return The estimated size of evicted entries in bytes.
+     */
+    public long getEvictedBytes() {
+        return mEvictedBytes;
+    }
+
     /**
      * Gets the maximum size of the database.
      *
@@ -431,10 +871,19 @@ public class DatabaseManager implements Closeable {
         void onCreate(SQLiteDatabase db);
 
         /**
-         * Called when upgrade is performed on the database.
-         * You can use this callback to alter table schema without losing data.
-         * If schema is not migrated, return false and table will be recreated with new schema,
-         * deleting old data.
+         * Gets the migration that upgrades the schema from the previous version to the given one.
+         * Migrations are applied in version order when upgrading across several versions.
+         *
+         * @param version version of the schema after the migration.
+         * @return migration or null if data cannot be migrated to that version,
+         * {@link #onUpgrade} is then called instead of any migration.
+         */
+        @Nullable
+        Migration getMigration(int version);
+
+        /**
+         * Called when upgrade is performed on the database and at least one version has no migration.
+         * The schema must be recreated at the new version, old data can be deleted.
          *
          * @param db         database being upgraded.
          * @param oldVersion version of the schema the database was at open time.
@@ -442,4 +891,32 @@ public class DatabaseManager implements Closeable {
          */
         void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
     }
+
+    /**
+     * Listener for entries deleted to make room for new ones when the database is full.
+     */
+    public interface EvictionListener {
+
+        /**
+         * Called after entries were deleted to make room for a new one.
+         *
+         * @param group value of the group column of the deleted entries, null if no group column is set.
+         * @param ids   identifiers of the deleted entries in the group.
+         * @param bytes estimated size in bytes of the deleted entries in the group.
+         */
+        void onEvicted(@Nullable String group, @NonNull List<Long> ids, long bytes);
+    }
+
+    /**
+     * Schema migration from one version to the next, keeping existing data.
+     */
+    public interface Migration {
+
+        /**
+         * Migrate the schema, for example by creating an index or adding a column with ALTER TABLE.
+         *
+         * @param db database being upgraded.
+         */
+        void migrate(SQLiteDatabase db);
+    }
 }
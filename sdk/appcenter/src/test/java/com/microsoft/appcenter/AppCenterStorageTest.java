@@ -5,15 +5,24 @@
 
 package com.microsoft.appcenter;
 
+import android.content.Context;
+import android.os.Handler;
+
+import com.microsoft.appcenter.channel.DefaultChannel;
+import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 public class AppCenterStorageTest extends AbstractAppCenterTest {
@@ -106,4 +115,39 @@ public class AppCenterStorageTest extends AbstractAppCenterTest {
         /* And result returned to developer. */
         assertTrue(future.get());
     }
+
+    @Test
+    public void configureStorageBeforeStart() throws Exception {
+
+        /* Invalid backend is ignored. */
+        AppCenter.setStorageBackend(42);
+
+        /* Configure database options independently before start. */
+        AppCenter.setStorageWriteAheadLoggingEnabled(true);
+        AppCenter.setStorageCompressionEnabled(true);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+
+        /* Verify settings applied to channel. */
+        verifyNew(DefaultChannel.class).withArguments(any(Context.class), eq(DUMMY_APP_SECRET), any(LogSerializer.class), any(HttpClient.class), any(Handler.class), eq(StorageBackend.DATABASE), eq(true), eq(true));
+    }
+
+    @Test
+    public void configureStorageBackendBeforeStart() throws Exception {
+        AppCenter.setStorageBackend(StorageBackend.SEGMENT_FILES);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verifyNew(DefaultChannel.class).withArguments(any(Context.class), eq(DUMMY_APP_SECRET), any(LogSerializer.class), any(HttpClient.class), any(Handler.class), eq(StorageBackend.SEGMENT_FILES), eq(false), eq(false));
+    }
+
+    @Test
+    public void cannotConfigureStorageAfterStart() throws Exception {
+
+        /* Start AppCenter. */
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+
+        /* Configure after start is ignored. */
+        AppCenter.setStorageBackend(StorageBackend.SEGMENT_FILES);
+        AppCenter.setStorageWriteAheadLoggingEnabled(true);
+        AppCenter.setStorageCompressionEnabled(true);
+        verifyNew(DefaultChannel.class).withArguments(any(Context.class), eq(DUMMY_APP_SECRET), any(LogSerializer.class), any(HttpClient.class), any(Handler.class), eq(StorageBackend.DATABASE), eq(false), eq(false));
+    }
 }
@@ -18,6 +18,7 @@ import com.microsoft.appcenter.utils.ApplicationLifecycleListener;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.PrefStorageConstants;
 import com.microsoft.appcenter.utils.ShutdownHelper;
+import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Assert;
@@ -1095,6 +1096,36 @@ public class AppCenterTest extends AbstractAppCenterTest {
         }));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flush() {
+
+        /* Not configured. */
+        FlushResult result = AppCenter.flush().get();
+        assertEquals(0, result.getSentLogCount());
+        assertEquals(0, result.getFailedLogCount());
+
+        /* Forward to channel. */
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((DefaultAppCenterFuture<FlushResult>) invocation.getArguments()[0]).complete(new FlushResult(3, 1));
+                return null;
+            }
+        }).when(mChannel).flushAll(any(DefaultAppCenterFuture.class));
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        result = AppCenter.flush().get();
+        assertEquals(3, result.getSentLogCount());
+        assertEquals(1, result.getFailedLogCount());
+
+        /* Disabled. */
+        when(SharedPreferencesManager.getBoolean(KEY_ENABLED, true)).thenReturn(false);
+        result = AppCenter.flush().get();
+        assertEquals(0, result.getSentLogCount());
+        verify(mChannel).flushAll(any(DefaultAppCenterFuture.class));
+    }
+
     @Test
     public void useApplicationLifecycleListener() {
 
@@ -1251,4 +1282,48 @@ public class AppCenterTest extends AbstractAppCenterTest {
         verifyStatic();
         SharedPreferencesManager.getBoolean(eq(PrefStorageConstants.ALLOWED_NETWORK_REQUEST), eq(false));
     }
+
+    @Test
+    public void transmissionDeferralIsDisabledByDefault() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel).setTransmissionMaxLatency(0);
+    }
+
+    @Test
+    public void configureTransmissionMaxLatencyBeforeStart() {
+
+        /* Invalid value is ignored. */
+        AppCenter.setTransmissionMaxLatency(-1);
+
+        /* Configure before start. */
+        AppCenter.setTransmissionMaxLatency(30000);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel).setTransmissionMaxLatency(30000);
+
+        /* Configure after start is ignored. */
+        AppCenter.setTransmissionMaxLatency(60000);
+        verify(mChannel, never()).setTransmissionMaxLatency(60000);
+    }
+
+    @Test
+    public void maxParallelRequestsDefault() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel).setMaxParallelRequests(Constants.DEFAULT_MAX_PARALLEL_REQUESTS);
+    }
+
+    @Test
+    public void configureMaxParallelRequestsBeforeStart() {
+
+        /* Invalid value is ignored. */
+        AppCenter.setMaxParallelRequests(0);
+
+        /* Configure before start. */
+        AppCenter.setMaxParallelRequests(2);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class);
+        verify(mChannel).setMaxParallelRequests(2);
+
+        /* Configure after start is ignored. */
+        AppCenter.setMaxParallelRequests(3);
+        verify(mChannel, never()).setMaxParallelRequests(3);
+    }
 }
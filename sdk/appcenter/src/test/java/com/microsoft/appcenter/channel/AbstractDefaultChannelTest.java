@@ -74,8 +74,9 @@ public class AbstractDefaultChannelTest {
             public String answer(InvocationOnMock invocation) {
                 Object[] args = invocation.getArguments();
                 int length = size >= 0 ? size : (int) args[2];
-                if (args[3] instanceof ArrayList) {
-                    ArrayList logs = (ArrayList) args[3];
+                Object outLogs = args[args.length - 1];
+                if (outLogs instanceof ArrayList) {
+                    ArrayList logs = (ArrayList) outLogs;
                     for (int i = 0; i < length; i++) {
                         logs.add(mock(Log.class));
                     }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import org.junit.Test;
+
+import static com.microsoft.appcenter.channel.AdaptiveBatching.ADDITIVE_INCREASE;
+import static com.microsoft.appcenter.channel.AdaptiveBatching.MAX_REQUEST_SIZE;
+import static com.microsoft.appcenter.channel.AdaptiveBatching.MIN_THROUGHPUT;
+import static com.microsoft.appcenter.channel.AdaptiveBatching.TARGET_LATENCY;
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveBatchingTest {
+
+    @Test
+    public void boundsAreClamped() {
+        AdaptiveBatching batching = new AdaptiveBatching(0, -1, 0, 100);
+        assertEquals(1, batching.getLogsPerBatch());
+        assertEquals(1, batching.getParallelBatches());
+        batching = new AdaptiveBatching(10, 50, 3, 5);
+        assertEquals(10, batching.getLogsPerBatch());
+        batching = new AdaptiveBatching(10, 50, 3, 500);
+        assertEquals(50, batching.getLogsPerBatch());
+    }
+
+    @Test
+    public void increaseWhileFullBatchesAreFast() {
+        AdaptiveBatching batching = new AdaptiveBatching(10, 30, 2, 20);
+        batching.onSuccess(20, 1024, 100);
+        assertEquals(20 + ADDITIVE_INCREASE, batching.getLogsPerBatch());
+        assertEquals(1, batching.getParallelBatches());
+        batching.onSuccess(25, 1024, 100);
+        assertEquals(30, batching.getLogsPerBatch());
+
+        /* Batch size at maximum: open more parallel batches up to the limit. */
+        batching.onSuccess(30, 1024, 100);
+        assertEquals(30, batching.getLogsPerBatch());
+        assertEquals(2, batching.getParallelBatches());
+        batching.onSuccess(30, 1024, 100);
+        assertEquals(2, batching.getParallelBatches());
+    }
+
+    @Test
+    public void doNotIncreaseWithoutBacklog() {
+        AdaptiveBatching batching = new AdaptiveBatching(10, 30, 2, 20);
+        batching.onSuccess(5, 1024, 100);
+        assertEquals(20, batching.getLogsPerBatch());
+        assertEquals(1, batching.getParallelBatches());
+    }
+
+    @Test
+    public void decreaseWhenSlow() {
+        AdaptiveBatching batching = new AdaptiveBatching(10, 60, 4, 60);
+        batching.onSuccess(60, 1024, 0);
+        batching.onSuccess(60, 1024, 0);
+        assertEquals(3, batching.getParallelBatches());
+        batching.onSuccess(60, 1024, TARGET_LATENCY + 1);
+        assertEquals(30, batching.getLogsPerBatch());
+        assertEquals(1, batching.getParallelBatches());
+        batching.onSuccess(30, 1024, TARGET_LATENCY + 1);
+        assertEquals(15, batching.getLogsPerBatch());
+        batching.onSuccess(15, 1024, TARGET_LATENCY + 1);
+        assertEquals(10, batching.getLogsPerBatch());
+    }
+
+    @Test
+    public void largeRequestsCanTakeLonger() {
+        AdaptiveBatching batching = new AdaptiveBatching(10, 60, 4, 20);
+
+        /* Slower than the target latency but fast for its size. */
+        long requestSize = MIN_THROUGHPUT * 10;
+        batching.onSuccess(20, requestSize, TARGET_LATENCY + 1);
+        assertEquals(20 + ADDITIVE_INCREASE, batching.getLogsPerBatch());
+
+        /* Slow for its size. */
+        batching.onSuccess(25, requestSize, 10 * 1000 + 1);
+        assertEquals(12, batching.getLogsPerBatch());
+    }
+
+    @Test
+    public void largeRequestsGrowInParallel() {
+        AdaptiveBatching batching = new AdaptiveBatching(10, 60, 2, 20);
+        batching.onSuccess(20, MAX_REQUEST_SIZE, 100);
+        assertEquals(20, batching.getLogsPerBatch());
+        assertEquals(2, batching.getParallelBatches());
+    }
+
+    @Test
+    public void unknownLatencyIsNotSlow() {
+        AdaptiveBatching batching = new AdaptiveBatching(10, 60, 2, 20);
+        batching.onSuccess(20, -1, -1);
+        assertEquals(20 + ADDITIVE_INCREASE, batching.getLogsPerBatch());
+    }
+
+    @Test
+    public void decreaseOnFailure() {
+        AdaptiveBatching batching = new AdaptiveBatching(1, 50, 3, 50);
+        batching.onFailure();
+        assertEquals(25, batching.getLogsPerBatch());
+        batching.onFailure();
+        assertEquals(12, batching.getLogsPerBatch());
+        assertEquals(1, batching.getParallelBatches());
+    }
+}
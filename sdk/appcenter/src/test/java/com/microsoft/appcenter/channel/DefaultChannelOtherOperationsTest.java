@@ -5,20 +5,34 @@
 
 package com.microsoft.appcenter.channel;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import androidx.annotation.NonNull;
 
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.persistence.Persistence;
 
+import org.json.JSONException;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.net.SocketException;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -28,9 +42,11 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -107,9 +123,218 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
 
         channel.shutdown();
         verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
+        verify(mockPersistence).flush();
         verify(mockPersistence).clearPendingLogState();
     }
 
+    @Test
+    public void flushBufferedLogs() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.hasBufferedLogs()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Enqueuing 2 events schedules a single flush. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(runnable.capture(), eq(DefaultChannel.PERSISTENCE_FLUSH_INTERVAL));
+        verify(mockPersistence, never()).flush();
+
+        /* Flush when timer fires. */
+        runnable.getValue().run();
+        verify(mockPersistence).flush();
+
+        /* Next enqueue schedules a new flush. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mAppCenterHandler, times(2)).postDelayed(any(Runnable.class), eq(DefaultChannel.PERSISTENCE_FLUSH_INTERVAL));
+
+        /* Shutdown cancels the timer and flushes synchronously. */
+        channel.shutdown();
+        verify(mAppCenterHandler).removeCallbacks(runnable.getValue());
+        verify(mockPersistence, times(2)).flush();
+    }
+
+    @Test
+    public void evictedLogsAreNoLongerPending() {
+        Persistence mockPersistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        for (int i = 0; i < 3; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        assertEquals(3, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Evictions decrement pending log count. */
+        ArgumentCaptor<Persistence.EvictionListener> listener = ArgumentCaptor.forClass(Persistence.EvictionListener.class);
+        verify(mockPersistence).setEvictionListener(listener.capture());
+        listener.getValue().onLogsEvicted(TEST_GROUP, 2, 100);
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        listener.getValue().onLogsEvicted(TEST_GROUP, 2, 100);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Unknown group is ignored. */
+        listener.getValue().onLogsEvicted("other", 1, 10);
+    }
+
+    @Test
+    public void bufferedLogsThatFailToBeWrittenAreReported() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        Log log = mock(Log.class);
+        channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* A log that could not be written is no longer pending and fails. */
+        ArgumentCaptor<Persistence.FlushFailureListener> listener = ArgumentCaptor.forClass(Persistence.FlushFailureListener.class);
+        verify(mockPersistence).setFlushFailureListener(listener.capture());
+        Persistence.PersistenceException exception = new Persistence.PersistenceException("mock", null);
+        listener.getValue().onFlushFailed(TEST_GROUP, log, exception);
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(mockListener).onBeforeSending(log);
+        verify(mockListener).onFailure(log, exception);
+
+        /* Unknown group is ignored. */
+        listener.getValue().onFlushFailed("other", log, exception);
+        verify(mockListener).onFailure(any(Log.class), any(Exception.class));
+    }
+
+    @Test
+    public void serializeLogsInBackgroundAndPersistInOrder() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        when(mockPersistence.serializeLog(log1)).thenReturn("log1");
+        when(mockPersistence.serializeLog(log2)).thenReturn("log2");
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        Executor executor = mock(Executor.class);
+        channel.setSerializationExecutor(executor);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(log1, TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(log2, TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<Runnable> serializations = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor, times(2)).execute(serializations.capture());
+        verify(mockPersistence, never()).putLog(any(Log.class), anyString(), anyString(), anyInt());
+
+        /* Second log serialized first waits for the first one. */
+        serializations.getAllValues().get(1).run();
+        verify(mockPersistence, never()).putLog(any(Log.class), anyString(), anyString(), anyInt());
+        serializations.getAllValues().get(0).run();
+        InOrder inOrder = inOrder(mockPersistence);
+        inOrder.verify(mockPersistence).putLog(log1, "log1", TEST_GROUP, Flags.DEFAULTS);
+        inOrder.verify(mockPersistence).putLog(log2, "log2", TEST_GROUP, Flags.DEFAULTS);
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void shutdownStopsSerializationThreads() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        when(mockPersistence.serializeLog(log1)).thenReturn("log1");
+        when(mockPersistence.serializeLog(log2)).thenReturn("log2");
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        ExecutorService executor = mock(ExecutorService.class);
+        channel.setSerializationExecutor(executor);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(log1, TEST_GROUP, Flags.DEFAULTS);
+
+        /* Shutdown persists the log being serialized and stops the executor. */
+        channel.shutdown();
+        verify(mockPersistence).putLog(log1, "log1", TEST_GROUP, Flags.DEFAULTS);
+        verify(executor).shutdown();
+
+        /* Logs are then serialized on the App Center thread. */
+        channel.setEnabled(true);
+        channel.enqueue(log2, TEST_GROUP, Flags.DEFAULTS);
+        verify(executor).execute(any(Runnable.class));
+        verify(mockPersistence).putLog(log2, TEST_GROUP, Flags.DEFAULTS);
+    }
+
+    @Test
+    public void clearPersistsLogsBeingSerialized() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        Log log = mock(Log.class);
+        when(mockPersistence.serializeLog(log)).thenReturn("log");
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        Executor executor = mock(Executor.class);
+        channel.setSerializationExecutor(executor);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<Runnable> serialization = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).execute(serialization.capture());
+
+        /* Clear persists the log first so that it's deleted as well. */
+        channel.clear(TEST_GROUP);
+        InOrder inOrder = inOrder(mockPersistence);
+        inOrder.verify(mockPersistence).serializeLog(log);
+        inOrder.verify(mockPersistence).putLog(log, "log", TEST_GROUP, Flags.DEFAULTS);
+        inOrder.verify(mockPersistence).deleteLogs(TEST_GROUP);
+
+        /* Background serialization finishing late has no effect. */
+        serialization.getValue().run();
+        verify(mockPersistence).serializeLog(log);
+        verify(mockPersistence).putLog(log, "log", TEST_GROUP, Flags.DEFAULTS);
+    }
+
+    @Test
+    public void serializeOnAppCenterThreadWhenTooManyLogsAreWaiting() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.serializeLog(any(Log.class))).thenReturn("log");
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        Executor executor = mock(Executor.class);
+        channel.setSerializationExecutor(executor);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        for (int i = 0; i <= DefaultChannel.MAX_SERIALIZING_LOGS; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(executor, times(DefaultChannel.MAX_SERIALIZING_LOGS)).execute(any(Runnable.class));
+        verify(mockPersistence, times(DefaultChannel.MAX_SERIALIZING_LOGS + 1)).putLog(any(Log.class), eq("log"), eq(TEST_GROUP), eq(Flags.DEFAULTS));
+    }
+
+    @Test
+    public void backgroundSerializationFailureLetsPersistenceReportIt() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        Log log = mock(Log.class);
+        when(mockPersistence.serializeLog(log)).thenThrow(new JSONException("mock"));
+        Persistence.PersistenceException exception = new Persistence.PersistenceException("mock", null);
+        when(mockPersistence.putLog(log, TEST_GROUP, Flags.DEFAULTS)).thenThrow(exception);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.setSerializationExecutor(new Executor() {
+
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        });
+        Channel.GroupListener groupListener = mock(Channel.GroupListener.class);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, groupListener);
+        channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        verify(groupListener).onBeforeSending(log);
+        verify(groupListener).onFailure(log, exception);
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void flushBufferedLogsOnTrimMemory() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Context mockContext = mock(Context.class);
+        DefaultChannel channel = new DefaultChannel(mockContext, UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        ArgumentCaptor<ComponentCallbacks2> callbacks = ArgumentCaptor.forClass(ComponentCallbacks2.class);
+        verify(mockContext).registerComponentCallbacks(callbacks.capture());
+        callbacks.getValue().onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        verify(mockPersistence).flush();
+        callbacks.getValue().onLowMemory();
+        verify(mockPersistence, times(2)).flush();
+
+        /* Callbacks are unregistered on shutdown. */
+        channel.shutdown();
+        verify(mockContext).unregisterComponentCallbacks(callbacks.getValue());
+    }
+
     @Test
     public void filter() throws Persistence.PersistenceException {
 
@@ -202,6 +427,88 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
         verify(listener).onGroupRemoved(TEST_GROUP);
     }
 
+    @Test
+    public void adaptiveBatching() {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        AppCenterIngestion ingestion = mock(AppCenterIngestion.class);
+        when(ingestion.isEnabled()).thenReturn(true);
+        when(ingestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
+
+        /* Unknown group. */
+        channel.enableAdaptiveBatching(TEST_GROUP, 5, 20, 2);
+        assertEquals(0, channel.getMaxLogsPerBatch(TEST_GROUP));
+        assertEquals(0, channel.getMaxParallelBatches(TEST_GROUP));
+
+        /* Adaptive batching starts from the group batch size and a single batch in flight. */
+        channel.addGroup(TEST_GROUP, 10, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        assertEquals(10, channel.getMaxLogsPerBatch(TEST_GROUP));
+        assertEquals(MAX_PARALLEL_BATCHES, channel.getMaxParallelBatches(TEST_GROUP));
+        channel.enableAdaptiveBatching(TEST_GROUP, 5, 20, 2);
+        assertEquals(10, channel.getMaxLogsPerBatch(TEST_GROUP));
+        assertEquals(1, channel.getMaxParallelBatches(TEST_GROUP));
+
+        /* A full batch sent fast grows the next batch. */
+        for (int i = 0; i < 10; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(persistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(10), anyListOf(Log.class));
+        assertEquals(10 + AdaptiveBatching.ADDITIVE_INCREASE, channel.getMaxLogsPerBatch(TEST_GROUP));
+        for (int i = 0; i < 15; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(persistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(15), anyListOf(Log.class));
+
+        /* A failure shrinks it. */
+        when(ingestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new SocketException()));
+        for (int i = 0; i < 20; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(persistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(20), anyListOf(Log.class));
+        assertEquals(10, channel.getMaxLogsPerBatch(TEST_GROUP));
+
+        /* A request slow on the network for its size shrinks it. */
+        final HttpResponse slowResponse = mock(HttpResponse.class);
+        when(slowResponse.getRequestSize()).thenReturn(1000L);
+        when(slowResponse.getCallDuration()).thenReturn(AdaptiveBatching.TARGET_LATENCY + 1);
+        when(ingestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((ServiceCallback) invocation.getArguments()[3]).onCallSucceeded(slowResponse);
+                return null;
+            }
+        });
+        channel.setEnabled(true);
+        assertEquals(5, channel.getMaxLogsPerBatch(TEST_GROUP));
+
+        /* Disabling restores the group settings. */
+        channel.disableAdaptiveBatching(TEST_GROUP);
+        assertEquals(10, channel.getMaxLogsPerBatch(TEST_GROUP));
+        assertEquals(MAX_PARALLEL_BATCHES, channel.getMaxParallelBatches(TEST_GROUP));
+    }
+
+    @Test
+    public void sizeLimitedBatches() {
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.countLogs(TEST_GROUP)).thenReturn(5);
+
+        /* The size limit lets only 2 logs per batch. */
+        when(persistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyLong(), anyListOf(Log.class))).then(getGetLogsAnswer(2));
+        AppCenterIngestion ingestion = mock(AppCenterIngestion.class);
+        when(ingestion.isEnabled()).thenReturn(true);
+        when(ingestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, ingestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 5, 1024, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Logs left out of a batch by the size limit are still counted as pending. */
+        verify(persistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(5), eq(1024L), anyListOf(Log.class));
+        verify(persistence, never()).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        verify(ingestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(3, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
     @Test
     public void checkSetStorageSizeForwarding() {
 
@@ -21,7 +21,7 @@ import org.junit.Test;
 import java.util.Collections;
 import java.util.UUID;
 
-import static com.microsoft.appcenter.channel.DefaultChannel.START_TIMER_PREFIX;
+import static com.microsoft.appcenter.channel.DefaultChannel.START_TIMERS_KEY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -276,7 +276,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
         int batchTimeInterval = 10000;
         channel.addGroup(TEST_GROUP, 10, batchTimeInterval, MAX_PARALLEL_BATCHES, mockIngestion, mock(Channel.GroupListener.class));
         verifyStatic(never());
-        SharedPreferencesManager.putLong(eq(START_TIMER_PREFIX + TEST_GROUP), anyLong());
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), anyString());
         verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
         verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), anyLong());
 
@@ -288,12 +288,11 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
 
         /* Verify that timer does not start but that the current time is saved for future reference. */
         verifyStatic();
-        SharedPreferencesManager.putLong(eq(START_TIMER_PREFIX + TEST_GROUP), eq(now));
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), eq(now + ":" + TEST_GROUP));
         verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
         verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), anyLong());
 
         /* When we resume later (before interval is due) */
-        when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(now);
         now = 3000;
         long expectedTimeToWait = 8000;
         when(System.currentTimeMillis()).thenReturn(now);
@@ -320,7 +319,7 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
         int batchTimeInterval = 10000;
         channel.addGroup(TEST_GROUP, 10, batchTimeInterval, MAX_PARALLEL_BATCHES, mockIngestion, mock(Channel.GroupListener.class));
         verifyStatic(never());
-        SharedPreferencesManager.putLong(eq(START_TIMER_PREFIX + TEST_GROUP), anyLong());
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), anyString());
         verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
         verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), anyLong());
 
@@ -332,12 +331,11 @@ public class DefaultChannelPauseResumeTest extends AbstractDefaultChannelTest {
 
         /* Verify that timer does not start but that the current time is saved for future reference. */
         verifyStatic();
-        SharedPreferencesManager.putLong(eq(START_TIMER_PREFIX + TEST_GROUP), eq(now));
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), eq(now + ":" + TEST_GROUP));
         verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
         verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), anyLong());
 
         /* When we resume later (after interval is due) */
-        when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(now);
         when(System.currentTimeMillis()).thenReturn(now + batchTimeInterval + 1);
         channel.resumeGroup(TEST_GROUP, null);
 
@@ -7,9 +7,12 @@ package com.microsoft.appcenter.channel;
 
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.os.Handler;
 
 import com.microsoft.appcenter.CancellationException;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.FlushResult;
+import com.microsoft.appcenter.http.HttpClientBusyException;
 import com.microsoft.appcenter.http.HttpException;
 import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.ServiceCallback;
@@ -18,12 +21,15 @@ import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
+import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Matchers;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -31,19 +37,29 @@ import org.mockito.stubbing.Answer;
 import java.io.IOException;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.channel.DefaultChannel.START_TIMERS_KEY;
 import static com.microsoft.appcenter.channel.DefaultChannel.START_TIMER_PREFIX;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -979,10 +995,36 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Verify that timer starts and current time is saved into preferences. */
         verifyStatic();
-        SharedPreferencesManager.putLong(eq(START_TIMER_PREFIX + TEST_GROUP), eq(now));
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), eq(now + ":" + TEST_GROUP));
         verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(CUSTOM_INTERVAL));
     }
 
+    @Test
+    public void shutdownWritesScheduledStartTime() {
+
+        /* Mock current time. */
+        long now = 1;
+        when(System.currentTimeMillis()).thenReturn(now);
+
+        /* Do not run posted tasks, as if the process was killed before. */
+        Handler appCenterHandler = mock(Handler.class);
+
+        /* Create channel and group. */
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, appCenterHandler);
+        channel.addGroup(TEST_GROUP, 10, CUSTOM_INTERVAL, MAX_PARALLEL_BATCHES, mockIngestion, mock(Channel.GroupListener.class));
+        verifyStatic(never());
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), anyString());
+
+        /* Start time is written synchronously on shutdown. */
+        channel.shutdown();
+        verifyStatic();
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), eq(now + ":" + TEST_GROUP));
+    }
+
     @Test
     public void checkPendingLogsDoesNotStartTimerWithoutLogs() {
 
@@ -1000,7 +1042,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Verify that timer isn't started. */
         verifyStatic(never());
-        SharedPreferencesManager.putLong(eq(START_TIMER_PREFIX + TEST_GROUP), eq(now));
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), eq(now + ":" + TEST_GROUP));
         verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), eq(CUSTOM_INTERVAL));
     }
 
@@ -1009,7 +1051,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Mock stored start time. */
         long startTime = 1000;
-        when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTime);
+        when(SharedPreferencesManager.getString(START_TIMERS_KEY)).thenReturn(startTime + ":" + TEST_GROUP);
 
         /* Mock current time - before end of interval. */
         long now = 5000;
@@ -1025,12 +1067,37 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Do not replace start timer value. */
         verifyStatic(never());
-        SharedPreferencesManager.putLong(eq(START_TIMER_PREFIX + TEST_GROUP), any(long.class));
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), anyString());
 
         /* Start timer for remaining time. */
         verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(CUSTOM_INTERVAL - (now - startTime)));
     }
 
+    @Test
+    public void checkPendingLogsMigratesLegacyStartTime() {
+
+        /* Mock start time stored by a previous version. */
+        long startTime = 1000;
+        when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTime);
+        long now = 5000;
+        when(System.currentTimeMillis()).thenReturn(now);
+
+        /* Create channel and group. */
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(5);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 10, CUSTOM_INTERVAL, MAX_PARALLEL_BATCHES, mockIngestion, mock(Channel.GroupListener.class));
+
+        /* Start time is moved to the single record and the timer resumes. */
+        verifyStatic();
+        SharedPreferencesManager.remove(START_TIMER_PREFIX + TEST_GROUP);
+        verifyStatic();
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), eq(startTime + ":" + TEST_GROUP));
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(CUSTOM_INTERVAL - (now - startTime)));
+    }
+
     @Test
     public void checkPendingLogsReplacesInvalidStartTime() {
 
@@ -1040,7 +1107,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Mock stored start time. */
         long startTime = 10000;
-        when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTime);
+        when(SharedPreferencesManager.getString(START_TIMERS_KEY)).thenReturn(startTime + ":" + TEST_GROUP);
 
         /* Create channel and group. */
         Persistence mockPersistence = mock(Persistence.class);
@@ -1052,7 +1119,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Verify that start time is replaced. */
         verifyStatic();
-        SharedPreferencesManager.putLong(eq(START_TIMER_PREFIX + TEST_GROUP), any(long.class));
+        SharedPreferencesManager.putString(eq(START_TIMERS_KEY), eq(now + ":" + TEST_GROUP));
 
         /* Start timer for whole interval. */
         verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(CUSTOM_INTERVAL));
@@ -1067,7 +1134,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Mock stored start time. */
         long startTime = 1000;
-        when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTime);
+        when(SharedPreferencesManager.getString(START_TIMERS_KEY)).thenReturn(startTime + ":" + TEST_GROUP);
 
         /* Create channel and group. */
         Persistence mockPersistence = mock(Persistence.class);
@@ -1094,7 +1161,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Mock stored start time. */
         long startTimer = 1000;
-        when(SharedPreferencesManager.getLong(eq(START_TIMER_PREFIX + TEST_GROUP))).thenReturn(startTimer);
+        when(SharedPreferencesManager.getString(START_TIMERS_KEY)).thenReturn(startTimer + ":" + TEST_GROUP);
 
         /* Mock persistence. */
         Persistence mockPersistence = mock(Persistence.class);
@@ -1190,4 +1257,495 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         channel.setNetworkRequests(true);
         verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
     }
+
+    @Test
+    public void groupsShareTimer() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup("other", 50, BATCH_TIME_INTERVAL + DefaultChannel.TIMER_ALIGNMENT_WINDOW / 2, MAX_PARALLEL_BATCHES, null, null);
+        ArgumentCaptor<Runnable> delayedRunnable = ArgumentCaptor.forClass(Runnable.class);
+        when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
+
+        /* Both groups wait for a single wake-up. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), "other", Flags.DEFAULTS);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), anyLong());
+
+        /* Cancelling one group timer keeps the wake-up for the other. */
+        channel.cancelTimer(channel.getGroupState("other"));
+        verify(mAppCenterHandler, never()).removeCallbacks(any(Runnable.class));
+        channel.checkPendingLogs(channel.getGroupState("other"));
+
+        /* Both groups are sent at the wake-up. */
+        delayedRunnable.getValue().run();
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        verify(mockPersistence).getLogs(eq("other"), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void sendAgainWhenHttpClientIsBusy() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Send 2 batches. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+
+        /* The second one is rejected: its logs are released without disabling the channel. */
+        callback.getAllValues().get(1).onCallFailed(new HttpClientBusyException(new RejectedExecutionException()));
+        verify(mockPersistence).releaseLogs(eq(TEST_GROUP), anyString());
+        verify(mockPersistence, never()).clearPendingLogState();
+        verify(mockIngestion, never()).close();
+        assertTrue(channel.isEnabled());
+
+        /* They are sent again when the first batch completes. */
+        callback.getAllValues().get(0).onCallSucceeded(mock(HttpResponse.class));
+        verify(mockIngestion, times(3)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, times(3)).getLogs(eq(TEST_GROUP), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+    }
+
+    @Test
+    public void retryQueuedGroupsWhenAllCallsFailBecauseHttpClientIsBusy() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setMaxParallelRequests(1);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup("other", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        ArgumentCaptor<Runnable> delayedRunnable = ArgumentCaptor.forClass(Runnable.class);
+        when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
+
+        /* The first group takes the only request slot, the other one waits for it. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), "other", Flags.DEFAULTS);
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+
+        /* The only call in flight is rejected: both groups wait and a retry is scheduled. */
+        callback.getValue().onCallFailed(new HttpClientBusyException(new RejectedExecutionException()));
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(DefaultChannel.BUSY_RETRY_INITIAL_DELAY));
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* The retry serves a waiting group, rejected again the next retry is delayed twice as long. */
+        delayedRunnable.getValue().run();
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+        callback.getValue().onCallFailed(new HttpClientBusyException(new RejectedExecutionException()));
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(DefaultChannel.BUSY_RETRY_INITIAL_DELAY * 2));
+
+        /* Once a call succeeds, the remaining group is served. */
+        delayedRunnable.getValue().run();
+        verify(mockIngestion, times(3)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+        callback.getValue().onCallSucceeded(mock(HttpResponse.class));
+        verify(mockIngestion, times(4)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+        callback.getValue().onCallSucceeded(mock(HttpResponse.class));
+        verify(mockPersistence, times(2)).deleteLogs(anyString(), anyString());
+    }
+
+    @Test
+    public void deferTimedBatchesWhileRadioIsIdle() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        RadioActivityMonitor radioActivityMonitor = mock(RadioActivityMonitor.class);
+        when(radioActivityMonitor.isNetworkMetered()).thenReturn(true);
+        when(radioActivityMonitor.getWakeupCount()).thenReturn(1);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setRadioActivityMonitor(radioActivityMonitor);
+        long maxLatency = 30000;
+        channel.setTransmissionMaxLatency(maxLatency);
+        channel.addGroup("low", 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup("high", 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.setGroupPriority("low", Channel.GROUP_PRIORITY_LOW, 1);
+        channel.setGroupPriority("high", Channel.GROUP_PRIORITY_HIGH, 1);
+        ArgumentCaptor<Runnable> delayedRunnable = ArgumentCaptor.forClass(Runnable.class);
+        when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
+
+        /* Low priority batch is deferred while the radio is idle. */
+        channel.enqueue(mock(Log.class), "low", Flags.DEFAULTS);
+        delayedRunnable.getValue().run();
+        verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL + DefaultChannel.RADIO_CHECK_INTERVAL));
+
+        /* It is sent along with a high priority batch. */
+        channel.enqueue(mock(Log.class), "high", Flags.DEFAULTS);
+        delayedRunnable.getValue().run();
+        verify(mockPersistence).getLogs(eq("low"), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        verify(mockPersistence).getLogs(eq("high"), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        verify(radioActivityMonitor, times(2)).onSending();
+
+        /* A deferred batch is sent once the maximum latency is reached. */
+        channel.enqueue(mock(Log.class), "low", Flags.DEFAULTS);
+        delayedRunnable.getValue().run();
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        when(System.currentTimeMillis()).thenReturn(BATCH_TIME_INTERVAL + maxLatency);
+        delayedRunnable.getValue().run();
+        verify(mockIngestion, times(3)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(1, channel.getRadioWakeupCount());
+    }
+
+    @Test
+    public void flushDrainsBacklogWithoutWaitingForTimer() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(25);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+
+        /* Logs wait for the custom interval. */
+        channel.addGroup(TEST_GROUP, 10, CUSTOM_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(CUSTOM_INTERVAL));
+        verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Flush sends everything now. */
+        DefaultAppCenterFuture<FlushResult> future = new DefaultAppCenterFuture<>();
+        channel.flush(TEST_GROUP, future);
+        assertTrue(future.isDone());
+        assertEquals(25, future.get().getSentLogCount());
+        assertEquals(0, future.get().getFailedLogCount());
+        verify(mockIngestion, times(3)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* Back to normal scheduling. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockIngestion, times(3)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Unknown group. */
+        future = new DefaultAppCenterFuture<>();
+        channel.flush("unknown", future);
+        assertEquals(0, future.get().getSentLogCount());
+    }
+
+    @Test
+    public void flushStopsOnFailure() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.countLogs(anyString())).thenReturn(5);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new SocketException()));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 10, CUSTOM_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(TEST_GROUP + "2", 10, CUSTOM_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* The first failure suspends the channel and completes the flush of all groups. */
+        DefaultAppCenterFuture<FlushResult> future = new DefaultAppCenterFuture<>();
+        channel.flushAll(future);
+        assertTrue(future.isDone());
+        assertEquals(0, future.get().getSentLogCount());
+        assertEquals(5, future.get().getFailedLogCount());
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void prefetchNextBatchWhileSending() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        final List<ServiceCallback> callbacks = new ArrayList<>();
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                callbacks.add((ServiceCallback) invocation.getArguments()[3]);
+                return null;
+            }
+        });
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 10, BATCH_TIME_INTERVAL, 1, null, null);
+        channel.setPrefetchEnabled(TEST_GROUP, true);
+
+        /* First batch is sent. */
+        for (int i = 0; i < 10; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Incomplete batch is not prefetched. */
+        for (int i = 0; i < 5; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+
+        /* Next full batch is read while the first one is being sent. */
+        for (int i = 0; i < 5; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence, times(2)).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+
+        /* It is sent without reading storage again once the first request completes. */
+        callbacks.get(0).onCallSucceeded(new HttpResponse(200, ""));
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, times(2)).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        assertEquals(2, callbacks.size());
+
+        /* Disabling the channel discards the prefetched batch. */
+        for (int i = 0; i < 10; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence, times(3)).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        channel.setEnabled(false);
+        assertNull(channel.getGroupState(TEST_GROUP).mPrefetchedBatchId);
+    }
+
+    @Test
+    public void sendSerializedLogsWithoutListener() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.supportsSerializedLogs()).thenReturn(true);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        when(mockPersistence.getSerializedLogs(anyString(), anyListOf(String.class), anyInt(), anyLong(), any(SerializedLogContainer.class), anyCollectionOf(String.class), anyListOf(Log.class))).then(getGetSerializedLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        final List<ServiceCallback> callbacks = new ArrayList<>();
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(SerializedLogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                callbacks.add((ServiceCallback) invocation.getArguments()[3]);
+                return null;
+            }
+        });
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, 1, null, null);
+        channel.addGroup(TEST_GROUP + "2", 2, BATCH_TIME_INTERVAL, 1, null, mockListener);
+
+        /* Logs of the group without listener are sent as stored. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), argThat(new ArgumentMatcher<SerializedLogContainer>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                return ((SerializedLogContainer) argument).getSerializedLogs().size() == 2;
+            }
+        }), any(ServiceCallback.class));
+        verify(mockPersistence, never()).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        assertEquals(1, channel.getGroupState(TEST_GROUP).getSendingBatchCount());
+
+        /* Success deletes the batch. */
+        callbacks.get(0).onCallSucceeded(new HttpResponse(200, ""));
+        verify(mockPersistence).deleteLogs(TEST_GROUP, "serializedBatch");
+        assertEquals(0, channel.getGroupState(TEST_GROUP).getSendingBatchCount());
+
+        /* Logs are deserialized for the group with a listener. */
+        channel.enqueue(mock(Log.class), TEST_GROUP + "2", Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP + "2", Flags.DEFAULTS);
+        verify(mockPersistence).getLogs(eq(TEST_GROUP + "2"), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockListener, times(2)).onBeforeSending(any(Log.class));
+    }
+
+    @Test
+    public void selectiveListenerOnlyGetsLogsOfInterest() {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.supportsSerializedLogs()).thenReturn(true);
+        when(mockPersistence.getSerializedLogs(anyString(), anyListOf(String.class), anyInt(), anyLong(), any(SerializedLogContainer.class), anyCollectionOf(String.class), anyListOf(Log.class))).then(getGetSerializedLogsAnswer());
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        final List<ServiceCallback> callbacks = new ArrayList<>();
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(SerializedLogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                callbacks.add((ServiceCallback) invocation.getArguments()[3]);
+                return null;
+            }
+        });
+        Channel.SelectiveGroupListener mockListener = mock(Channel.SelectiveGroupListener.class);
+        when(mockListener.getLogTypes()).thenReturn(Collections.singletonList("interesting"));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 3, BATCH_TIME_INTERVAL, 1, null, mockListener);
+
+        /* The whole batch is sent serialized but only the log of interest is deserialized and kept. */
+        for (int i = 0; i < 3; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence).getSerializedLogs(eq(TEST_GROUP), anyListOf(String.class), eq(3), anyLong(), any(SerializedLogContainer.class), eq(Collections.singletonList("interesting")), anyListOf(Log.class));
+        verify(mockListener).onBeforeSending(any(Log.class));
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mSendingBatches.get("serializedBatch").size());
+        assertEquals(3, channel.getGroupState(TEST_GROUP).getSendingLogCount("serializedBatch"));
+
+        /* Flush result counts all logs while the listener is called once. */
+        DefaultAppCenterFuture<FlushResult> future = new DefaultAppCenterFuture<>();
+        channel.flush(TEST_GROUP, future);
+        callbacks.get(0).onCallSucceeded(new HttpResponse(200, ""));
+        verify(mockListener).onSuccess(any(Log.class));
+        assertEquals(3, future.get().getSentLogCount());
+
+        /* A listener needing all logs gets them deserialized. */
+        when(mockListener.getLogTypes()).thenReturn(null);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        for (int i = 0; i < 3; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(3), anyListOf(Log.class));
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockListener, times(4)).onBeforeSending(any(Log.class));
+    }
+
+    @Test
+    public void scheduleGroupsByPriority() {
+        List<String> sentGroups = new ArrayList<>();
+        List<ServiceCallback> callbacks = new ArrayList<>();
+        DefaultChannel channel = createSchedulingChannel(sentGroups, callbacks);
+        channel.addGroup("low", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup("normal", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup("high", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.setGroupPriority("low", Channel.GROUP_PRIORITY_LOW, 1);
+        channel.setGroupPriority("high", Channel.GROUP_PRIORITY_HIGH, 1);
+
+        /* The first group takes the only request slot, others wait. */
+        channel.enqueue(mock(Log.class), "low", Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), "low", Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), "normal", Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), "high", Flags.DEFAULTS);
+        assertEquals(Collections.singletonList("low"), sentGroups);
+        assertTrue(channel.getGroupState("normal").mQueued);
+        assertTrue(channel.getGroupState("high").mQueued);
+
+        /* Freed slots go to waiting groups by priority. */
+        callbacks.get(0).onCallSucceeded(new HttpResponse(200, ""));
+        callbacks.get(1).onCallSucceeded(new HttpResponse(200, ""));
+        callbacks.get(2).onCallSucceeded(new HttpResponse(200, ""));
+        assertEquals(Arrays.asList("low", "high", "normal", "low"), sentGroups);
+
+        /* Queueing delays are recorded. */
+        SchedulingStatistics statistics = channel.getSchedulingStatistics("normal");
+        assertNotNull(statistics);
+        assertEquals(1, statistics.getQueuedRequestCount());
+        assertNull(channel.getSchedulingStatistics("unknown"));
+
+        /* Disabling the channel stops waiting. */
+        channel.enqueue(mock(Log.class), "high", Flags.DEFAULTS);
+        assertTrue(channel.getGroupState("high").mQueued);
+        channel.setEnabled(false);
+        assertFalse(channel.getGroupState("high").mQueued);
+    }
+
+    @Test
+    public void scheduleGroupsByWeight() {
+        List<String> sentGroups = new ArrayList<>();
+        List<ServiceCallback> callbacks = new ArrayList<>();
+        DefaultChannel channel = createSchedulingChannel(sentGroups, callbacks);
+        channel.addGroup("a", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup("b", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.setGroupPriority("a", Channel.GROUP_PRIORITY_NORMAL, 2);
+        for (int i = 0; i < 10; i++) {
+            channel.enqueue(mock(Log.class), "a", Flags.DEFAULTS);
+            channel.enqueue(mock(Log.class), "b", Flags.DEFAULTS);
+        }
+        assertEquals(1, sentGroups.size());
+
+        /* Group with twice the weight gets twice the request slots. */
+        for (int i = 0; i < 6; i++) {
+            callbacks.get(i).onCallSucceeded(new HttpResponse(200, ""));
+        }
+        List<String> scheduledGroups = sentGroups.subList(1, sentGroups.size());
+        assertEquals(6, scheduledGroups.size());
+        assertEquals(4, Collections.frequency(scheduledGroups, "a"));
+        assertEquals(2, Collections.frequency(scheduledGroups, "b"));
+    }
+
+    @Test
+    public void scheduleStarvingGroupFirst() {
+        List<String> sentGroups = new ArrayList<>();
+        List<ServiceCallback> callbacks = new ArrayList<>();
+        DefaultChannel channel = createSchedulingChannel(sentGroups, callbacks);
+        channel.addGroup("low", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup("high", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.setGroupPriority("low", Channel.GROUP_PRIORITY_LOW, 1);
+        channel.setGroupPriority("high", Channel.GROUP_PRIORITY_HIGHEST, 1);
+        channel.enqueue(mock(Log.class), "high", Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), "low", Flags.DEFAULTS);
+
+        /* Low priority group waited too long, it goes before the high priority group. */
+        when(System.currentTimeMillis()).thenReturn(DefaultChannel.MAX_QUEUEING_DELAY);
+        channel.enqueue(mock(Log.class), "high", Flags.DEFAULTS);
+        callbacks.get(0).onCallSucceeded(new HttpResponse(200, ""));
+        assertEquals(Arrays.asList("high", "low"), sentGroups);
+        SchedulingStatistics statistics = channel.getSchedulingStatistics("low");
+        assertNotNull(statistics);
+        assertEquals(1, statistics.getQueuedRequestCount());
+        assertEquals(DefaultChannel.MAX_QUEUEING_DELAY, statistics.getTotalQueueingDelay());
+        assertEquals(DefaultChannel.MAX_QUEUEING_DELAY, statistics.getMaxQueueingDelay());
+    }
+
+    /**
+     * Create a channel sending a single request at a time.
+     *
+     * @param sentGroups list receiving the group name of each batch sent.
+     * @param callbacks  list receiving the callback of each request.
+     * @return the channel.
+     */
+    private DefaultChannel createSchedulingChannel(final List<String> sentGroups, final List<ServiceCallback> callbacks) {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                String batchId = getGetLogsAnswer().answer(invocation);
+                if (batchId != null) {
+                    sentGroups.add((String) invocation.getArguments()[0]);
+                }
+                return batchId;
+            }
+        });
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockIngestion.isEnabled()).thenReturn(true);
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                callbacks.add((ServiceCallback) invocation.getArguments()[3]);
+                return null;
+            }
+        });
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.setMaxParallelRequests(1);
+        return channel;
+    }
+
+    /**
+     * Answer to {@link Persistence#getSerializedLogs} returning as many serialized logs as requested,
+     * the first one being deserialized if any log type is requested.
+     */
+    private static Answer<String> getGetSerializedLogsAnswer() {
+        return new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                Object[] args = invocation.getArguments();
+                SerializedLogContainer container = (SerializedLogContainer) args[4];
+                for (int i = 0; i < (Integer) args[2]; i++) {
+                    container.getSerializedLogs().add("{}");
+                }
+                if (!((Collection<String>) args[5]).isEmpty()) {
+                    ((List<Log>) args[6]).add(mock(Log.class));
+                }
+                return "serializedBatch";
+            }
+        };
+    }
 }
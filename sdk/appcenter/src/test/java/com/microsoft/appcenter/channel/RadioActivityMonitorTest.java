@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.net.TrafficStats;
+
+import com.microsoft.appcenter.utils.NetworkStateHelper;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import static com.microsoft.appcenter.channel.RadioActivityMonitor.RADIO_TAIL_TIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({
+        RadioActivityMonitor.class,
+        System.class,
+        TrafficStats.class
+})
+public class RadioActivityMonitorTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private NetworkStateHelper mNetworkStateHelper;
+
+    @Before
+    public void setUp() {
+        mockStatic(System.class);
+        mockStatic(TrafficStats.class);
+        mNetworkStateHelper = mock(NetworkStateHelper.class);
+    }
+
+    @Test
+    public void detectTraffic() {
+        RadioActivityMonitor monitor = new RadioActivityMonitor(mNetworkStateHelper);
+        when(TrafficStats.getTotalRxBytes()).thenReturn(100L);
+        when(TrafficStats.getTotalTxBytes()).thenReturn(100L);
+
+        /* Activity is unknown on first check, assume active. */
+        assertTrue(monitor.isRadioActive());
+
+        /* Radio goes idle after the tail time without traffic since the first check. */
+        when(System.currentTimeMillis()).thenReturn(RADIO_TAIL_TIME);
+        assertFalse(monitor.isRadioActive());
+
+        /* Traffic since last check. */
+        when(TrafficStats.getTotalRxBytes()).thenReturn(200L);
+        assertTrue(monitor.isRadioActive());
+
+        /* Radio goes idle after the tail time. */
+        when(System.currentTimeMillis()).thenReturn(RADIO_TAIL_TIME * 2);
+        assertFalse(monitor.isRadioActive());
+
+        /* Assume active when counters are not supported. */
+        when(TrafficStats.getTotalTxBytes()).thenReturn((long) TrafficStats.UNSUPPORTED);
+        assertTrue(monitor.isRadioActive());
+    }
+
+    @Test
+    public void countWakeups() {
+        RadioActivityMonitor monitor = new RadioActivityMonitor(mNetworkStateHelper);
+
+        /* Not counted on unmetered networks. */
+        monitor.onSending();
+        assertEquals(0, monitor.getWakeupCount());
+
+        /* Not counted when activity is not known yet. */
+        when(mNetworkStateHelper.isNetworkMetered()).thenReturn(true);
+        when(System.currentTimeMillis()).thenReturn(RADIO_TAIL_TIME);
+        monitor.onSending();
+        assertEquals(0, monitor.getWakeupCount());
+
+        /* Counted once per idle period on metered networks. */
+        when(System.currentTimeMillis()).thenReturn(RADIO_TAIL_TIME * 2);
+        monitor.onSending();
+        monitor.onSending();
+        assertEquals(1, monitor.getWakeupCount());
+        when(System.currentTimeMillis()).thenReturn(RADIO_TAIL_TIME * 3);
+        monitor.onSending();
+        assertEquals(2, monitor.getWakeupCount());
+    }
+}
@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
@@ -47,7 +48,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.GZIPInputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
@@ -57,6 +58,7 @@ import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMapOf;
@@ -117,7 +119,8 @@ public class DefaultHttpClientTest {
                         (HttpClient.CallTemplate) invocation.getArguments()[3],
                         (ServiceCallback) invocation.getArguments()[4],
                         (DefaultHttpClientCallTask.Tracker) invocation.getArguments()[5],
-                        (boolean) invocation.getArguments()[6]));
+                        (ContentEncoder) invocation.getArguments()[6],
+                        (boolean) invocation.getArguments()[7]));
                 when(call.executeOnExecutor(any(Executor.class))).then(new Answer<DefaultHttpClientCallTask>() {
 
                     @Override
@@ -151,6 +154,17 @@ public class DefaultHttpClientTest {
         mockStatic(TrafficStats.class);
     }
 
+    private static byte[] gunzip(byte[] compressedBytes) throws IOException {
+        GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(compressedBytes));
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = gzipStream.read(buffer)) > 0) {
+            uncompressed.write(buffer, 0, length);
+        }
+        return uncompressed.toByteArray();
+    }
+
     private static void mockCall() throws Exception {
         mockCall(null);
     }
@@ -242,6 +256,8 @@ public class DefaultHttpClientTest {
         /* Verify payload. */
         String sentPayload = buffer.toString("UTF-8");
         assertEquals("{a:1,b:2}", sentPayload);
+        verify(serviceCallback).onCallSucceeded(mHttpResponseCaptor.capture());
+        assertEquals(sentPayload.length(), mHttpResponseCaptor.getValue().getRequestSize());
 
         /* Verify socket tagged to avoid strict mode error. */
         verifyStatic();
@@ -652,6 +668,37 @@ public class DefaultHttpClientTest {
         TrafficStats.clearThreadStatsTag();
     }
 
+    @Test
+    public void keepAliveConnection() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock/logs?api-version=1.0.0";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+        when(urlConnection.getErrorStream()).thenReturn(new ByteArrayInputStream("Busy".getBytes()));
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("mockPayload");
+        DefaultHttpClient httpClient = new KeepAliveHttpClient();
+        mockCall();
+
+        /* Connection is left open after a complete response, even an error. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(any(HttpResponse.class));
+        when(urlConnection.getResponseCode()).thenReturn(503);
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallFailed(new HttpException(new HttpResponse(503, "Busy")));
+        verify(urlConnection, never()).disconnect();
+
+        /* Connection is closed if the call did not complete. */
+        when(urlConnection.getOutputStream()).thenThrow(new IOException("mock"));
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback, times(2)).onCallFailed(any(Exception.class));
+        verify(urlConnection).disconnect();
+    }
+
     @Test
     public void cancel() throws Exception {
 
@@ -685,7 +732,8 @@ public class DefaultHttpClientTest {
                         (HttpClient.CallTemplate) invocation.getArguments()[3],
                         (ServiceCallback) invocation.getArguments()[4],
                         (DefaultHttpClientCallTask.Tracker) invocation.getArguments()[5],
-                        (boolean) invocation.getArguments()[6]));
+                        (ContentEncoder) invocation.getArguments()[6],
+                        (boolean) invocation.getArguments()[7]));
                 callTask.set(call);
                 when(call.executeOnExecutor(any(Executor.class))).then(new Answer<DefaultHttpClientCallTask>() {
 
@@ -999,10 +1047,139 @@ public class DefaultHttpClientTest {
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
         assertNotNull(httpClient.callAsync("", "", new HashMap<String, String>(), mock(HttpClient.CallTemplate.class), serviceCallback));
 
-        /* Verify the callback call from "main" thread. */
+        /* Verify the callback call from "main" thread reports back-pressure. */
         semaphore.acquireUninterruptibly();
-        verify(serviceCallback).onCallFailed(exception);
+        ArgumentCaptor<Exception> exceptionCaptor = ArgumentCaptor.forClass(Exception.class);
+        verify(serviceCallback).onCallFailed(exceptionCaptor.capture());
+        assertTrue(exceptionCaptor.getValue() instanceof HttpClientBusyException);
+        assertEquals(exception, exceptionCaptor.getValue().getCause());
         verify(serviceCallback, never()).onCallSucceeded(any(HttpResponse.class));
+        assertEquals(0, httpClient.getTasks().size());
+    }
+
+    @Test
+    public void boundedExecutor() throws Exception {
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, 1, 1);
+        Executor executor = httpClient.getExecutor();
+
+        /* Block the only thread. */
+        final Semaphore started = new Semaphore(0);
+        final Semaphore release = new Semaphore(0);
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                threadName.set(Thread.currentThread().getName());
+                started.release();
+                release.acquireUninterruptibly();
+            }
+        });
+        started.acquireUninterruptibly();
+        assertTrue(threadName.get().startsWith(DefaultHttpClient.THREAD_NAME_PREFIX));
+
+        /* Second call waits in the queue. */
+        final Semaphore finished = new Semaphore(0);
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                finished.release();
+            }
+        });
+        assertEquals(1, httpClient.getQueuedCallCount());
+
+        /* Third call is rejected. */
+        try {
+            executor.execute(mock(Runnable.class));
+            fail("Expected rejection");
+        } catch (RejectedExecutionException ignored) {
+        }
+
+        /* Unblock and check statistics. */
+        Thread.sleep(10);
+        release.release();
+        finished.acquireUninterruptibly();
+        assertEquals(0, httpClient.getQueuedCallCount());
+        assertEquals(2, httpClient.getExecutedCallCount());
+        assertTrue(httpClient.getMaxCallWaitTime() >= 10);
+        assertTrue(httpClient.getTotalCallWaitTime() >= httpClient.getMaxCallWaitTime());
+    }
+
+    @Test
+    public void sendStreamingBody() throws Exception {
+
+        /* Mock no verbose logging. */
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.DEBUG);
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Short payload written by the template. */
+        final String payload = "{a:1,b:2}";
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Writer) invocation.getArguments()[0]).write(payload);
+                return null;
+            }
+        }).when(callTemplate).writeRequestBody(any(Writer.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(mHttpResponseCaptor.capture());
+
+        /* The compressed size sent on the network is reported. */
+        assertEquals(buffer.size(), mHttpResponseCaptor.getValue().getRequestSize());
+
+        /* Body is not built in memory, it is compressed even if short and sent in chunks. */
+        verify(callTemplate, never()).buildRequestBody();
+        verify(urlConnection).setChunkedStreamingMode(0);
+        verify(urlConnection, never()).setFixedLengthStreamingMode(anyInt());
+        verify(urlConnection).setRequestProperty("Content-Type", "application/json");
+        verify(urlConnection).setRequestProperty("Content-Encoding", "gzip");
+        assertEquals(payload, new String(gunzip(buffer.toByteArray()), "UTF-8"));
+    }
+
+    @Test
+    public void sendStreamingBodyFailureAbortsRequest() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        ByteArrayOutputStream buffer = spy(new ByteArrayOutputStream());
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+
+        /* Template fails after writing part of the body. */
+        final IOException exception = new IOException("mock");
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Writer) invocation.getArguments()[0]).write("{a:1,");
+                throw exception;
+            }
+        }).when(callTemplate).writeRequestBody(any(Writer.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallFailed(exception);
+
+        /* The truncated body is not finished, the request is aborted instead. */
+        verify(buffer, never()).close();
+        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).getResponseCode();
     }
 
     @Test
@@ -1027,13 +1204,6 @@ public class DefaultHttpClientTest {
         }
         final String payload = payloadBuilder.toString();
 
-        /* Compress payload for verification. */
-        ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(payload.length());
-        GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
-        gzipStream.write(payload.getBytes(StandardCharsets.UTF_8));
-        gzipStream.close();
-        byte[] compressedBytes = gzipBuffer.toByteArray();
-
         /* Configure API client. */
         HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
         when(callTemplate.buildRequestBody()).thenReturn(payload);
@@ -1062,7 +1232,7 @@ public class DefaultHttpClientTest {
         httpClient.close();
 
         /* Verify payload compressed. */
-        assertArrayEquals(compressedBytes, buffer.toByteArray());
+        assertArrayEquals(payload.getBytes(StandardCharsets.UTF_8), gunzip(buffer.toByteArray()));
 
         /* Check no payload logging since log level not enabled. */
         verifyStatic(never());
@@ -1220,13 +1390,6 @@ public class DefaultHttpClientTest {
         }
         final String payload = payloadBuilder.toString();
 
-        /* Compress payload for verification. */
-        ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(payload.length());
-        GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
-        gzipStream.write(payload.getBytes(StandardCharsets.UTF_8));
-        gzipStream.close();
-        byte[] compressedBytes = gzipBuffer.toByteArray();
-
         /* Configure API client. */
         HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
         when(callTemplate.buildRequestBody()).thenReturn(payload);
@@ -1255,7 +1418,7 @@ public class DefaultHttpClientTest {
         httpClient.close();
 
         /* Verify payload compressed. */
-        assertArrayEquals(compressedBytes, buffer.toByteArray());
+        assertArrayEquals(payload.getBytes(StandardCharsets.UTF_8), gunzip(buffer.toByteArray()));
 
         /* Check payload logged. */
         verifyStatic();
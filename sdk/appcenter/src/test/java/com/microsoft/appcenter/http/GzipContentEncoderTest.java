@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class GzipContentEncoderTest {
+
+    private static byte[] encode(ContentEncoder encoder, byte[] payload) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        OutputStream out = encoder.encode(buffer);
+        out.write(payload);
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] decode(byte[] compressedBytes) throws IOException {
+        GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(compressedBytes));
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = gzipStream.read(buffer)) > 0) {
+            uncompressed.write(buffer, 0, length);
+        }
+        return uncompressed.toByteArray();
+    }
+
+    private static byte[] getPayload() {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            payload.append("{\"type\":\"event\",\"name\":\"click\",\"id\":").append(i).append("}\n");
+        }
+        return payload.toString().getBytes();
+    }
+
+    @Test
+    public void defaults() {
+        GzipContentEncoder encoder = new GzipContentEncoder();
+        assertEquals("gzip", encoder.getContentEncoding());
+        assertEquals(GzipContentEncoder.DEFAULT_MIN_LENGTH, encoder.getMinLength());
+        assertEquals(Deflater.DEFAULT_COMPRESSION, encoder.getLevel());
+    }
+
+    @Test
+    public void encodeWithReusedDeflater() throws IOException {
+        byte[] payload = getPayload();
+
+        /* Each encoding on this thread reuses the same deflater, it must be reset between bodies. */
+        GzipContentEncoder fastEncoder = new GzipContentEncoder(Deflater.BEST_SPEED, 0);
+        GzipContentEncoder smallEncoder = new GzipContentEncoder(Deflater.BEST_COMPRESSION, 0);
+        byte[] fast = encode(fastEncoder, payload);
+        byte[] small = encode(smallEncoder, payload);
+        assertArrayEquals(payload, decode(fast));
+        assertArrayEquals(payload, decode(small));
+        assertArrayEquals(fast, encode(fastEncoder, payload));
+        assertTrue(small.length <= fast.length);
+        assertTrue(fast.length < payload.length);
+
+        /* Empty body. */
+        assertArrayEquals(new byte[0], decode(encode(fastEncoder, new byte[0])));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLevel() {
+        new GzipContentEncoder(10, 0);
+    }
+}
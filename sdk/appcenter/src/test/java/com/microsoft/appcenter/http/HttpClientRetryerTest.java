@@ -16,6 +16,7 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_VALUE;
@@ -175,6 +176,27 @@ public class HttpClientRetryerTest {
         verifyNoMoreInteractions(call);
     }
 
+    @Test
+    public void busyClientNotRetried() {
+        final HttpClientBusyException expectedException = new HttpClientBusyException(new RejectedExecutionException());
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(expectedException);
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        retryer.callAsync(null, null, null, null, callback);
+        verifyNoMoreInteractions(handler);
+        verify(callback).onCallFailed(expectedException);
+        verifyNoMoreInteractions(callback);
+    }
+
     @Test
     public void delayUsingRetryHeader() {
 
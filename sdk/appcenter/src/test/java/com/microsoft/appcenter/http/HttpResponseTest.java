@@ -7,7 +7,9 @@ package com.microsoft.appcenter.http;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.microsoft.appcenter.test.TestUtils.checkEquals;
@@ -45,4 +47,25 @@ public class HttpResponseTest {
         assertEquals(2, new HttpResponse(401, "Unauthorized", responseHeaders1).getHeaders().size());
         assertEquals("1234", new HttpResponse(401, "Unauthorized", responseHeaders1).getHeaders().get("x-ms-retry-after-ms"));
     }
+
+    @Test
+    public void headersFromHeaderFields() {
+        Map<String, List<String>> headerFields = new HashMap<>();
+        headerFields.put("x-ms-retry-after-ms", Arrays.asList("1234", "5678"));
+        HttpResponse httpResponse = HttpResponse.fromHeaderFields(503, "Busy", headerFields, 100, 20);
+        assertEquals(1, httpResponse.getHeaders().size());
+        assertEquals("1234", httpResponse.getHeaders().get("x-ms-retry-after-ms"));
+        Map<String, String> responseHeaders = new HashMap<>();
+        responseHeaders.put("x-ms-retry-after-ms", "1234");
+        checkEquals(new HttpResponse(503, "Busy", responseHeaders), HttpResponse.fromHeaderFields(503, "Busy", headerFields, 100, 20));
+    }
+
+    @Test
+    public void callMeasures() {
+        HttpResponse httpResponse = HttpResponse.fromHeaderFields(200, "", new HashMap<String, List<String>>(), 100, 20);
+        assertEquals(100, httpResponse.getRequestSize());
+        assertEquals(20, httpResponse.getCallDuration());
+        assertEquals(-1, new HttpResponse(200).getRequestSize());
+        assertEquals(-1, new HttpResponse(200).getCallDuration());
+    }
 }
@@ -98,6 +98,14 @@ public class HttpUtilsTest {
         assertFalse(defaultHttpClient.isCompressionEnabled());
     }
 
+    @Test
+    public void maxConcurrentCallsSettings() {
+        HttpClient httpClient = HttpUtils.createHttpClient(mock(Context.class), true);
+        assertEquals(DefaultHttpClient.DEFAULT_MAX_CONCURRENT_CALLS, getDefaultHttpClient((HttpClientDecorator) httpClient).getMaxConcurrentCalls());
+        httpClient = HttpUtils.createHttpClient(mock(Context.class), true, 2);
+        assertEquals(2, getDefaultHttpClient((HttpClientDecorator) httpClient).getMaxConcurrentCalls());
+    }
+
     private DefaultHttpClient getDefaultHttpClient(HttpClientDecorator httpClientDecorator) {
         httpClientDecorator = (HttpClientDecorator) httpClientDecorator.getDecoratedApi();
         return (DefaultHttpClient) httpClientDecorator.getDecoratedApi();
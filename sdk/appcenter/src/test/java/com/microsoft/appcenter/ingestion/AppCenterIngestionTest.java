@@ -12,6 +12,7 @@ import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
@@ -28,6 +29,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -49,6 +51,7 @@ import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -122,6 +125,54 @@ public class AppCenterIngestionTest {
         verify(mHttpClient).reopen();
     }
 
+    @Test
+    public void sendSerializedLogs() throws Exception {
+
+        /* Build some payload. */
+        SerializedLogContainer container = new SerializedLogContainer();
+        container.getSerializedLogs().add("{\"type\":\"a\"}");
+        container.getSerializedLogs().add("{\"type\":\"b\"}");
+        LogSerializer serializer = mock(LogSerializer.class);
+
+        /* Configure mock HTTP. */
+        final ServiceCall call = mock(ServiceCall.class);
+        final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) {
+                callTemplate.set((HttpClient.CallTemplate) invocation.getArguments()[3]);
+                return call;
+            }
+        });
+
+        /* Test calling code. */
+        AppCenterIngestion ingestion = new AppCenterIngestion(mHttpClient, serializer);
+        ingestion.setLogUrl("http://mock");
+        String appSecret = UUID.randomUUID().toString();
+        UUID installId = UUID.randomUUID();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        assertEquals(call, ingestion.sendAsync(appSecret, installId, container, serviceCallback));
+
+        /* Verify call to http client, logs are concatenated without using the serializer. */
+        HashMap<String, String> expectedHeaders = new HashMap<>();
+        expectedHeaders.put(Constants.APP_SECRET, appSecret);
+        expectedHeaders.put(AppCenterIngestion.INSTALL_ID, installId.toString());
+        verify(mHttpClient).callAsync(eq("http://mock" + AppCenterIngestion.API_PATH), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), eq(serviceCallback));
+        assertNotNull(callTemplate.get());
+        assertEquals("{\"logs\":[{\"type\":\"a\"},{\"type\":\"b\"}]}", callTemplate.get().buildRequestBody());
+        StringWriter writer = new StringWriter();
+        ((HttpClient.StreamingCallTemplate) callTemplate.get()).writeRequestBody(writer);
+        assertEquals("{\"logs\":[{\"type\":\"a\"},{\"type\":\"b\"}]}", writer.toString());
+        verifyZeroInteractions(serializer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sendSerializedLogsWithoutCallback() {
+        AppCenterIngestion ingestion = new AppCenterIngestion(mHttpClient, mock(LogSerializer.class));
+        ingestion.sendAsync(UUID.randomUUID().toString(), UUID.randomUUID(), new SerializedLogContainer(), null);
+    }
+
     @Test
     public void failedSerialization() throws Exception {
 
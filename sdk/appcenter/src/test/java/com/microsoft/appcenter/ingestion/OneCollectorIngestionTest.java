@@ -13,6 +13,7 @@ import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.Extensions;
@@ -36,6 +37,7 @@ import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.StringWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -172,6 +174,9 @@ public class OneCollectorIngestionTest {
         verify(mHttpClient).callAsync(eq("http://mock"), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), eq(serviceCallback));
         assertNotNull(callTemplate.getValue());
         assertEquals("mockPayload1\nmockPayload2\n", callTemplate.getValue().buildRequestBody());
+        StringWriter writer = new StringWriter();
+        ((HttpClient.StreamingCallTemplate) callTemplate.getValue()).writeRequestBody(writer);
+        assertEquals("mockPayload1\nmockPayload2\n", writer.toString());
 
         /* Verify close. */
         ingestion.close();
@@ -182,6 +187,53 @@ public class OneCollectorIngestionTest {
         verify(mHttpClient).reopen();
     }
 
+    @Test
+    public void sendSerializedLogs() throws Exception {
+
+        /* Mock time. */
+        mockStatic(System.class);
+        when(System.currentTimeMillis()).thenReturn(1234L);
+
+        /* Build some payload, only the first log has tickets. */
+        TicketCache.putTicket("key1", "value1");
+        SerializedLogContainer container = new SerializedLogContainer();
+        container.getSerializedLogs().add("{\"ext\":{\"protocol\":{\"ticketKeys\":[\"key1\"]}}}");
+        container.getSerializedLogs().add("{\"ext\":{}}");
+        container.getTransmissionTargetTokens().add("token1");
+        container.getTransmissionTargetTokens().add("token2");
+        LogSerializer serializer = mock(LogSerializer.class);
+
+        /* Configure mock HTTP. */
+        ServiceCall call = mock(ServiceCall.class);
+        ArgumentCaptor<HttpClient.CallTemplate> callTemplate = ArgumentCaptor.forClass(HttpClient.CallTemplate.class);
+        when(mHttpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), callTemplate.capture(), any(ServiceCallback.class))).thenReturn(call);
+
+        /* Test calling code. */
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, serializer);
+        ingestion.setLogUrl("http://mock");
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        assertEquals(call, ingestion.sendAsync(null, null, container, serviceCallback));
+
+        /* Verify call to http client. */
+        HashMap<String, String> expectedHeaders = new HashMap<>();
+        expectedHeaders.put(OneCollectorIngestion.API_KEY, "token1,token2");
+        expectedHeaders.put(TICKETS, "{\"key1\":\"value1\"}");
+        expectedHeaders.put(OneCollectorIngestion.CLIENT_VERSION_KEY, String.format("ACS-Android-Java-no-%s-no", VERSION_NAME));
+        expectedHeaders.put(OneCollectorIngestion.UPLOAD_TIME_KEY, "1234");
+        expectedHeaders.put(DefaultHttpClient.CONTENT_TYPE_KEY, "application/x-json-stream; charset=utf-8");
+        verify(mHttpClient).callAsync(eq("http://mock"), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), eq(serviceCallback));
+        assertEquals("{\"ext\":{\"protocol\":{\"ticketKeys\":[\"key1\"]}}}\n{\"ext\":{}}\n", callTemplate.getValue().buildRequestBody());
+        StringWriter writer = new StringWriter();
+        ((HttpClient.StreamingCallTemplate) callTemplate.getValue()).writeRequestBody(writer);
+        assertEquals("{\"ext\":{\"protocol\":{\"ticketKeys\":[\"key1\"]}}}\n{\"ext\":{}}\n", writer.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sendSerializedLogsWithoutCallback() {
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, mock(LogSerializer.class));
+        ingestion.sendAsync(null, null, new SerializedLogContainer(), null);
+    }
+
     @Test
     public void passTicketsDebug() {
         Constants.APPLICATION_DEBUGGABLE = true;
@@ -22,12 +22,14 @@ import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import org.json.JSONException;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -35,16 +37,21 @@ import java.util.List;
 import static com.microsoft.appcenter.Flags.NORMAL;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNotNull;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
@@ -66,7 +73,7 @@ public class DatabasePersistenceTest {
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
         Cursor mockCursor = mock(Cursor.class);
         when(mockCursor.moveToNext()).thenThrow(new RuntimeException());
-        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString(), anyString())).thenReturn(mockCursor);
         DatabasePersistence persistence = new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA);
 
         /* Try to get logs count. */
@@ -84,6 +91,55 @@ public class DatabasePersistenceTest {
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(RuntimeException.class));
     }
 
+    @Test
+    public void countLogsQueriesDatabaseOnce() throws Exception {
+
+        /* Mock a database with 2 logs in group "test" and 1 log in group "other". */
+        mockStatic(AppCenterLog.class);
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
+        Cursor mockCursor = mock(Cursor.class);
+        when(mockCursor.moveToNext()).thenReturn(true, true, false);
+        when(mockCursor.getString(0)).thenReturn("test", "other");
+        when(mockCursor.isNull(1)).thenReturn(true);
+        when(mockCursor.getInt(2)).thenReturn(2, 1);
+        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString(), anyString())).thenReturn(mockCursor);
+        when(mockDatabaseManager.getMaxSize()).thenReturn(Long.MAX_VALUE);
+        when(mockDatabaseManager.put(any(ContentValues.class), anyString())).thenReturn(3L);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+        persistence.setLogSerializer(logSerializer);
+
+        /* Counts are loaded from the database. */
+        assertEquals(2, persistence.countLogs("test"));
+        assertEquals(1, persistence.countLogs("other"));
+        assertEquals(0, persistence.countLogs("missing"));
+
+        /* Then maintained in memory. */
+        persistence.putLog(mock(Log.class), "test", NORMAL);
+        assertEquals(3, persistence.countLogs("test"));
+        persistence.deleteLogs("other");
+        assertEquals(0, persistence.countLogs("other"));
+        verify(mockDatabaseManager).getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString(), anyString());
+
+        /* Evictions reload counts from the database and are forwarded to the listener. */
+        Persistence.EvictionListener evictionListener = mock(Persistence.EvictionListener.class);
+        persistence.setEvictionListener(evictionListener);
+        ArgumentCaptor<DatabaseManager.EvictionListener> listenerCaptor = ArgumentCaptor.forClass(DatabaseManager.EvictionListener.class);
+        verify(mockDatabaseManager).setEvictionListener(eq(DatabasePersistence.COLUMN_GROUP), listenerCaptor.capture());
+        listenerCaptor.getValue().onEvicted("test", Arrays.asList(1L, 2L), 100);
+        assertNull(persistence.mLogCounts);
+        verify(evictionListener).onLogsEvicted("test", 2, 100);
+
+        /* Logs being sent are not reported. */
+        persistence.mPendingDbIdentifiers.add(3L);
+        listenerCaptor.getValue().onEvicted("test", Arrays.asList(3L, 4L), 50);
+        verify(evictionListener).onLogsEvicted("test", 1, 50);
+        listenerCaptor.getValue().onEvicted("test", Collections.singletonList(3L), 10);
+        verifyNoMoreInteractions(evictionListener);
+    }
+
     @Test
     public void clearPendingLogState() throws Exception {
 
@@ -112,7 +168,7 @@ public class DatabasePersistenceTest {
         for (int i = 0; i < groupCount; i++) {
             MockCursor mockCursor = new MockCursor(list.get(i));
             mockCursor.mockBuildValues(mockDatabaseManager);
-            when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), eq(new String[]{String.valueOf(i)}), anyString()))
+            when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), eq(new String[]{String.valueOf(i)}), anyString(), anyString()))
                     .thenReturn(mockCursor);
         }
 
@@ -124,14 +180,21 @@ public class DatabasePersistenceTest {
         persistence.setLogSerializer(mockLogSerializer);
 
         /* Get logs. */
+        String batchId = null;
         for (int i = 0; i < groupCount; i++) {
-            persistence.getLogs(String.valueOf(i), Collections.<String>emptyList(), logCount, new ArrayList<Log>());
+            batchId = persistence.getLogs(String.valueOf(i), Collections.<String>emptyList(), logCount, new ArrayList<Log>());
         }
 
         /* Verify there are 4 pending groups. */
         assertEquals(groupCount, persistence.mPendingDbIdentifiersGroups.size());
         assertEquals(groupCount * logCount, persistence.mPendingDbIdentifiers.size());
 
+        /* Release the last batch and verify only its logs are no longer pending. */
+        persistence.releaseLogs(String.valueOf(groupCount - 1), batchId);
+        assertEquals(groupCount - 1, persistence.mPendingDbIdentifiersGroups.size());
+        assertEquals((groupCount - 1) * logCount, persistence.mPendingDbIdentifiers.size());
+        verify(mockDatabaseManager, never()).delete(anyCollectionOf(Long.class));
+
         /* Clear all pending groups and verify. */
         persistence.clearPendingLogState();
         assertEquals(0, persistence.mPendingDbIdentifiersGroups.size());
@@ -146,7 +209,7 @@ public class DatabasePersistenceTest {
         DatabaseManager databaseManager = mock(DatabaseManager.class);
         whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
         when(databaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenThrow(new RuntimeException());
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString())).thenThrow(new RuntimeException());
         DatabasePersistence persistence = new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA);
 
         /* Try to get logs. */
@@ -169,7 +232,7 @@ public class DatabasePersistenceTest {
         when(databaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
         Cursor mockCursor = mock(Cursor.class);
         when(mockCursor.moveToNext()).thenThrow(new RuntimeException());
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
         DatabasePersistence persistence = new DatabasePersistence(mock(Context.class), 1, DatabasePersistence.SCHEMA);
 
         /* Try to get logs. */
@@ -203,7 +266,7 @@ public class DatabasePersistenceTest {
         /* Mock log sequence retrieved from cursor. */
         MockCursor mockCursor = new MockCursor(fieldValues);
         mockCursor.mockBuildValues(databaseManager);
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
 
         /* Mock second cursor with identifiers only. */
         Cursor failingCursor = mock(Cursor.class);
@@ -256,7 +319,7 @@ public class DatabasePersistenceTest {
         /* Mock log sequence retrieved from cursor. */
         MockCursor mockCursor = new MockCursor(fieldValues);
         mockCursor.mockBuildValues(databaseManager);
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
 
         /* Mock second cursor with identifiers only. */
         List<ContentValues> idValues = new ArrayList<>(logCount);
@@ -345,7 +408,7 @@ public class DatabasePersistenceTest {
             }
         };
         mockCursor.mockBuildValues(databaseManager);
-        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString())).thenReturn(mockCursor);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
         idValues = new ArrayList<>(4);
 
         /* Here the id cursor will also skip the new corrupted log which id would be 3. */
@@ -376,6 +439,41 @@ public class DatabasePersistenceTest {
         verify(databaseManager).delete(anyLong());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deleteLogsInSingleStatement() throws Exception {
+
+        /* Mock 2 logs. */
+        List<ContentValues> fieldValues = new ArrayList<>();
+        for (long i = 1; i <= 2; i++) {
+            ContentValues contentValues = mock(ContentValues.class);
+            when(contentValues.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(i);
+            when(contentValues.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn("{}");
+            fieldValues.add(contentValues);
+        }
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
+        when(databaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        MockCursor mockCursor = new MockCursor(fieldValues);
+        mockCursor.mockBuildValues(databaseManager);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString(), anyString())).thenReturn(mockCursor);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(mock(Log.class));
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(logSerializer);
+
+        /* Get logs then delete the batch. */
+        ArrayList<Log> outLogs = new ArrayList<>();
+        String batchId = persistence.getLogs("mock", Collections.<String>emptyList(), 50, outLogs);
+        assertEquals(2, outLogs.size());
+        persistence.deleteLogs("mock", batchId);
+
+        /* Verify a single bulk delete and no per row delete. */
+        verify(databaseManager).delete(eq(Arrays.asList(1L, 2L)));
+        verify(databaseManager, never()).delete(anyLong());
+        assertTrue(persistence.mPendingDbIdentifiers.isEmpty());
+    }
+
     @Test
     public void checkSetStorageSizeForwarding() throws Exception {
 
@@ -423,6 +521,48 @@ public class DatabasePersistenceTest {
         persistence.putLog(mock(Log.class), "test-p1", NORMAL);
     }
 
+    @Test
+    public void bufferedLogsThatFailToBeWrittenAreReported() throws Exception {
+        mockStatic(AppCenterLog.class);
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
+        when(databaseManager.getMaxSize()).thenReturn(1024 * 1024L);
+
+        /* Second insert of the transaction fails. */
+        when(databaseManager.put(anyListOf(ContentValues.class), anyString())).thenReturn(new long[]{1, -1});
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setMaxBufferedLogs(2);
+        Persistence.FlushFailureListener flushFailureListener = mock(Persistence.FlushFailureListener.class);
+        persistence.setFlushFailureListener(flushFailureListener);
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+        persistence.setLogSerializer(logSerializer);
+
+        /* Logs are buffered then written when the buffer is full. */
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        assertEquals(Persistence.BUFFERED_LOG_ID, persistence.putLog(log1, "test-p1", NORMAL));
+        verify(databaseManager, never()).put(anyListOf(ContentValues.class), anyString());
+        assertEquals(Persistence.BUFFERED_LOG_ID, persistence.putLog(log2, "test-p1", NORMAL));
+        verify(databaseManager).put(anyListOf(ContentValues.class), anyString());
+        assertFalse(persistence.hasBufferedLogs());
+
+        /* Only the log that was not written is reported. */
+        verify(flushFailureListener).onFlushFailed(eq("test-p1"), eq(log2), any(PersistenceException.class));
+        verify(flushFailureListener, never()).onFlushFailed(anyString(), eq(log1), any(PersistenceException.class));
+
+        /* All logs are reported when the transaction is rolled back. */
+        when(databaseManager.put(anyListOf(ContentValues.class), anyString())).thenReturn(new long[]{-1, -1});
+        Log log3 = mock(Log.class);
+        Log log4 = mock(Log.class);
+        persistence.putLog(log3, "test-p1", NORMAL);
+        persistence.putLog(log4, "test-p2", NORMAL);
+        verify(flushFailureListener).onFlushFailed(eq("test-p1"), eq(log3), any(PersistenceException.class));
+        verify(flushFailureListener).onFlushFailed(eq("test-p2"), eq(log4), any(PersistenceException.class));
+    }
+
     private static class MockCursor extends CursorWrapper {
 
         private final List<ContentValues> mList;
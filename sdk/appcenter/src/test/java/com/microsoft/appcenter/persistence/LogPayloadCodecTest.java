@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogPayloadCodecTest {
+
+    private static final String EVENT_LOG = "{\"type\":\"event\",\"timestamp\":\"2018-06-12T10:11:12.123Z\",\"sid\":\"0b1d6fe7-0e0c-4a2b-9d87-9f3a1b2c3d4e\"," +
+            "\"device\":{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"1.5.1\",\"model\":\"Pixel\",\"oemName\":\"Google\",\"osName\":\"Android\"," +
+            "\"osVersion\":\"8.1.0\",\"osBuild\":\"OPM2.171019.029\",\"osApiLevel\":27,\"locale\":\"en_US\",\"timeZoneOffset\":120,\"screenSize\":\"1080x1920\"," +
+            "\"appVersion\":\"1.2.3\",\"carrierName\":\"Orange\",\"carrierCountry\":\"fr\",\"appBuild\":\"123\",\"appNamespace\":\"com.contoso.app\"}," +
+            "\"id\":\"7e2f3a4b-5c6d-4e8f-9a0b-1c2d3e4f5a6b\",\"name\":\"button_clicked\",\"typedProperties\":[{\"type\":\"string\",\"name\":\"screen\",\"value\":\"home\"}]}";
+
+    @Test
+    public void roundTrip() throws DataFormatException {
+        LogPayloadCodec codec = new LogPayloadCodec();
+        for (String payload : new String[]{"", "{}", EVENT_LOG, "{\"name\":\"\u00e9v\u00e8nement \u6f22\u5b57\"}"}) {
+            byte[] compressed = codec.compress(payload);
+            assertEquals(LogPayloadCodec.DICTIONARY_VERSION, compressed[0]);
+            assertEquals(payload, codec.decompress(compressed));
+
+            /* Another instance can decode. */
+            assertEquals(payload, new LogPayloadCodec().decompress(compressed));
+        }
+    }
+
+    @Test
+    public void largePayload() throws DataFormatException {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            payload.append(EVENT_LOG);
+        }
+        LogPayloadCodec codec = new LogPayloadCodec();
+        assertEquals(payload.toString(), codec.decompress(codec.compress(payload.toString())));
+    }
+
+    @Test
+    public void dictionaryImprovesCompression() throws Exception {
+
+        /* Compare with deflate without preset dictionary. */
+        byte[] input = EVENT_LOG.getBytes("UTF-8");
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(input);
+        deflater.finish();
+        int plainDeflateSize = deflater.deflate(new byte[input.length * 2]);
+        deflater.end();
+        int compressedSize = new LogPayloadCodec().compress(EVENT_LOG).length;
+        assertTrue(compressedSize < plainDeflateSize);
+        assertTrue(compressedSize * 2 < input.length);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void emptyData() throws DataFormatException {
+        new LogPayloadCodec().decompress(new byte[0]);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void unknownDictionary() throws DataFormatException {
+        byte[] compressed = new LogPayloadCodec().compress(EVENT_LOG);
+        compressed[0] = LogPayloadCodec.DICTIONARY_VERSION + 1;
+        new LogPayloadCodec().decompress(compressed);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void corruptedData() throws DataFormatException {
+        byte[] compressed = new LogPayloadCodec().compress(EVENT_LOG);
+        compressed[5] ^= 0x55;
+        new LogPayloadCodec().decompress(compressed);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void truncatedData() throws DataFormatException {
+        byte[] compressed = new LogPayloadCodec().compress(EVENT_LOG);
+        new LogPayloadCodec().decompress(Arrays.copyOf(compressed, compressed.length / 2));
+    }
+}
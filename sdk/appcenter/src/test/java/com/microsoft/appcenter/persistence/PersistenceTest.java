@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.persistence;
+
+import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.SerializedLogContainer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class PersistenceTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    @Test
+    public void getSerializedLogsSerializesLogsByDefault() throws JSONException {
+        mockStatic(AppCenterLog.class);
+
+        /* Mock 3 logs, the last one cannot be serialized. */
+        final Log log1 = mock(Log.class);
+        when(log1.getType()).thenReturn("a");
+        when(log1.getTransmissionTargetTokens()).thenReturn(Collections.singleton("token1"));
+        final Log log2 = mock(Log.class);
+        when(log2.getType()).thenReturn("b");
+        when(log2.getTransmissionTargetTokens()).thenReturn(Collections.singleton("token2"));
+        final Log log3 = mock(Log.class);
+        when(log3.getType()).thenReturn("a");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(log1)).thenReturn("{\"type\":\"a\"}");
+        when(logSerializer.serializeLog(log2)).thenReturn("{\"type\":\"b\"}");
+        when(logSerializer.serializeLog(log3)).thenThrow(new JSONException("mock"));
+        Persistence persistence = mock(Persistence.class, CALLS_REAL_METHODS);
+        persistence.setLogSerializer(logSerializer);
+        doAnswer(new Answer<String>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String answer(InvocationOnMock invocation) {
+                ((List<Log>) invocation.getArguments()[4]).addAll(Arrays.asList(log1, log2, log3));
+                return "batchId";
+            }
+        }).when(persistence).getLogs(anyString(), anyListOf(String.class), anyInt(), anyLong(), anyListOf(Log.class));
+
+        /* Read them serialized while keeping logs of type "a". */
+        SerializedLogContainer container = new SerializedLogContainer();
+        List<Log> logs = new ArrayList<>();
+        assertEquals("batchId", persistence.getSerializedLogs("group", Collections.<String>emptyList(), 3, 0, container, Collections.singletonList("a"), logs));
+        assertEquals(Arrays.asList("{\"type\":\"a\"}", "{\"type\":\"b\"}"), container.getSerializedLogs());
+        assertEquals(2, container.getTransmissionTargetTokens().size());
+        assertEquals(Collections.singletonList(log1), logs);
+        verifyStatic();
+        AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString(), any(JSONException.class));
+    }
+}
@@ -61,6 +61,16 @@ public class NetworkStateHelperTestFromLollipop extends AbstractNetworkStateHelp
         assertTrue(new NetworkStateHelper(mContext).isNetworkConnected());
     }
 
+    @Test
+    public void networkMetered() {
+        NetworkStateHelper helper = new NetworkStateHelper(mContext);
+        assertFalse(helper.isNetworkMetered());
+        when(mConnectivityManager.isActiveNetworkMetered()).thenReturn(true);
+        assertTrue(helper.isNetworkMetered());
+        when(mConnectivityManager.isActiveNetworkMetered()).thenThrow(new SecurityException());
+        assertFalse(helper.isNetworkMetered());
+    }
+
     @Test
     @SuppressWarnings({"deprecation", "RedundantSuppression"})
     public void listenNetwork() {
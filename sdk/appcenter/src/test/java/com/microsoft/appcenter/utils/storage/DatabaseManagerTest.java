@@ -13,6 +13,7 @@ import android.database.sqlite.SQLiteDiskIOException;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -20,10 +21,20 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.internal.stubbing.answers.Returns;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -31,9 +42,13 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
@@ -174,6 +189,32 @@ public class DatabaseManagerTest {
         databaseManager.getDatabase();
     }
 
+    @Test
+    public void reuseCompiledStatements() {
+
+        /* Mocking instances. */
+        Context contextMock = mock(Context.class);
+        SQLiteOpenHelper helperMock = mock(SQLiteOpenHelper.class);
+        SQLiteDatabase sqLiteDatabase = mock(SQLiteDatabase.class);
+        when(helperMock.getWritableDatabase()).thenReturn(sqLiteDatabase);
+        SQLiteStatement statement = mock(SQLiteStatement.class);
+        when(sqLiteDatabase.compileStatement(anyString())).thenReturn(statement);
+        when(statement.executeInsert()).thenReturn(1L, 2L);
+
+        /* Instantiate real instance for DatabaseManager, without write-ahead logging. */
+        DatabaseManager databaseManager = new DatabaseManager(contextMock, "database", "table", 1, null, null, null);
+        databaseManager.setSQLiteOpenHelper(helperMock);
+
+        /* Insert and delete statements are compiled once. */
+        assertEquals(1, databaseManager.put(mock(ContentValues.class), "priority"));
+        assertEquals(2, databaseManager.put(mock(ContentValues.class), "priority"));
+        databaseManager.delete(1);
+        databaseManager.delete(2);
+        verify(sqLiteDatabase, times(2)).compileStatement(anyString());
+        verify(sqLiteDatabase, never()).insertOrThrow(anyString(), anyString(), any(ContentValues.class));
+        verify(statement, times(2)).executeUpdateDelete();
+    }
+
     @Test
     public void failsToDeleteLogDuringPutWhenFull() {
 
@@ -192,7 +233,9 @@ public class DatabaseManagerTest {
         when(SQLiteUtils.newSQLiteQueryBuilder()).thenReturn(sqLiteQueryBuilder);
 
         /* Simulate that database is full and that deletes fail because of the cursor. */
-        when(sqLiteDatabase.insertOrThrow(anyString(), anyString(), any(ContentValues.class))).thenThrow(new SQLiteFullException());
+        SQLiteStatement insertStatement = mock(SQLiteStatement.class);
+        when(sqLiteDatabase.compileStatement(anyString())).thenReturn(insertStatement);
+        when(insertStatement.executeInsert()).thenThrow(new SQLiteFullException());
 
         /* Instantiate real instance for DatabaseManager. */
         DatabaseManager databaseManager = new DatabaseManager(contextMock, "database", "table", 1, null, null, null);
@@ -221,7 +264,10 @@ public class DatabaseManagerTest {
         when(SQLiteUtils.newSQLiteQueryBuilder()).thenReturn(sqLiteQueryBuilder);
 
         /* Simulate that database is full only once (will work after purging 1 log). */
-        when(sqLiteDatabase.insertOrThrow(anyString(), anyString(), any(ContentValues.class))).thenThrow(new SQLiteFullException()).thenReturn(1L);
+        SQLiteStatement insertStatement = mock(SQLiteStatement.class);
+        when(sqLiteDatabase.compileStatement(anyString())).thenReturn(insertStatement);
+        when(insertStatement.executeInsert()).thenThrow(new SQLiteFullException()).thenReturn(1L);
+        when(sqLiteDatabase.delete(anyString(), anyString(), any(String[].class))).thenReturn(1);
 
         /* Instantiate real instance for DatabaseManager. */
         DatabaseManager databaseManager = new DatabaseManager(contextMock, "database", "table", 1, null, null, null);
@@ -231,4 +277,129 @@ public class DatabaseManagerTest {
         long id = databaseManager.put(mock(ContentValues.class), "priority");
         assertEquals(1, id);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void evictionListener() {
+
+        /* Mocking instances. */
+        Context contextMock = mock(Context.class);
+        SQLiteOpenHelper helperMock = mock(SQLiteOpenHelper.class);
+        SQLiteDatabase sqLiteDatabase = mock(SQLiteDatabase.class);
+        when(helperMock.getWritableDatabase()).thenReturn(sqLiteDatabase);
+
+        /* Mock eviction candidates: id, size and group. */
+        mockStatic(SQLiteUtils.class);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true, true, true, false);
+        when(cursor.getLong(0)).thenReturn(1L, 2L, 3L);
+        when(cursor.getLong(1)).thenReturn(10L, 20L, 30L);
+        when(cursor.getString(2)).thenReturn("a", "b", "a");
+        SQLiteQueryBuilder sqLiteQueryBuilder = mock(SQLiteQueryBuilder.class, new Returns(cursor));
+        when(SQLiteUtils.newSQLiteQueryBuilder()).thenReturn(sqLiteQueryBuilder);
+
+        /* Simulate that database is full only once. */
+        SQLiteStatement insertStatement = mock(SQLiteStatement.class);
+        when(sqLiteDatabase.compileStatement(anyString())).thenReturn(insertStatement);
+        when(insertStatement.executeInsert()).thenThrow(new SQLiteFullException()).thenReturn(4L);
+        when(sqLiteDatabase.delete(anyString(), anyString(), any(String[].class))).thenReturn(2);
+
+        /* Instantiate real instance for DatabaseManager. */
+        DatabaseManager databaseManager = new DatabaseManager(contextMock, "database", "table", 1, null, null, null);
+        databaseManager.setSQLiteOpenHelper(helperMock);
+        DatabaseManager.EvictionListener listener = mock(DatabaseManager.EvictionListener.class);
+        databaseManager.setEvictionListener("group", listener);
+
+        /* Put a 25 bytes entry: the 2 first candidates are enough and deleted in one statement. */
+        ContentValues values = mock(ContentValues.class);
+        Set<Map.Entry<String, Object>> valueSet = new HashSet<>();
+        valueSet.add(new AbstractMap.SimpleEntry<String, Object>("log", "0123456789012345678901234"));
+        when(values.valueSet()).thenReturn(valueSet);
+        assertEquals(4, databaseManager.put(values, "priority"));
+        verify(sqLiteDatabase).delete("table", DatabaseManager.PRIMARY_KEY + " IN (1,2)", null);
+        verify(listener).onEvicted("a", Collections.singletonList(1L), 10);
+        verify(listener).onEvicted("b", Collections.singletonList(2L), 20);
+        verifyNoMoreInteractions(listener);
+        assertEquals(2, databaseManager.getEvictionCount());
+        assertEquals(30, databaseManager.getEvictedBytes());
+    }
+
+    @Test
+    public void putListEvictsOutsideOfTransaction() {
+
+        /* Mocking instances. */
+        Context contextMock = mock(Context.class);
+        SQLiteOpenHelper helperMock = mock(SQLiteOpenHelper.class);
+        SQLiteDatabase sqLiteDatabase = mock(SQLiteDatabase.class);
+        when(helperMock.getWritableDatabase()).thenReturn(sqLiteDatabase);
+
+        /* Mock a single eviction candidate. */
+        mockStatic(SQLiteUtils.class);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true, false);
+        when(cursor.getLong(0)).thenReturn(1L);
+        when(cursor.getLong(1)).thenReturn(10L);
+        when(cursor.getString(2)).thenReturn("a");
+        SQLiteQueryBuilder sqLiteQueryBuilder = mock(SQLiteQueryBuilder.class, new Returns(cursor));
+        when(SQLiteUtils.newSQLiteQueryBuilder()).thenReturn(sqLiteQueryBuilder);
+
+        /* Simulate that database is full when inserting the second entry the first time. */
+        SQLiteStatement insertStatement = mock(SQLiteStatement.class);
+        when(sqLiteDatabase.compileStatement(anyString())).thenReturn(insertStatement);
+        when(insertStatement.executeInsert()).thenReturn(1L).thenThrow(new SQLiteFullException()).thenReturn(2L, 3L);
+        when(sqLiteDatabase.delete(anyString(), anyString(), any(String[].class))).thenReturn(1);
+
+        /* Instantiate real instance for DatabaseManager. */
+        DatabaseManager databaseManager = new DatabaseManager(contextMock, "database", "table", 1, null, null, null);
+        databaseManager.setSQLiteOpenHelper(helperMock);
+        DatabaseManager.EvictionListener listener = mock(DatabaseManager.EvictionListener.class);
+        databaseManager.setEvictionListener("group", listener);
+
+        /* All entries are inserted again after making room. */
+        List<ContentValues> valuesList = Arrays.asList(mock(ContentValues.class), mock(ContentValues.class));
+        assertArrayEquals(new long[]{2, 3}, databaseManager.put(valuesList, "priority"));
+
+        /* The transaction is rolled back before evicting, listener is called once the deletion is done. */
+        InOrder inOrder = inOrder(sqLiteDatabase, listener);
+        inOrder.verify(sqLiteDatabase).beginTransaction();
+        inOrder.verify(sqLiteDatabase).endTransaction();
+        inOrder.verify(sqLiteDatabase).delete("table", DatabaseManager.PRIMARY_KEY + " IN (1)", null);
+        inOrder.verify(listener).onEvicted("a", Collections.singletonList(1L), 10);
+        inOrder.verify(sqLiteDatabase).beginTransaction();
+        inOrder.verify(sqLiteDatabase).setTransactionSuccessful();
+        inOrder.verify(sqLiteDatabase).endTransaction();
+        verify(sqLiteDatabase).setTransactionSuccessful();
+    }
+
+    @Test
+    public void putListStoresEntriesThatFitWhenNothingToEvict() {
+
+        /* Mocking instances. */
+        Context contextMock = mock(Context.class);
+        SQLiteOpenHelper helperMock = mock(SQLiteOpenHelper.class);
+        SQLiteDatabase sqLiteDatabase = mock(SQLiteDatabase.class);
+        when(helperMock.getWritableDatabase()).thenReturn(sqLiteDatabase);
+
+        /* No entry to evict. */
+        mockStatic(SQLiteUtils.class);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(false);
+        SQLiteQueryBuilder sqLiteQueryBuilder = mock(SQLiteQueryBuilder.class, new Returns(cursor));
+        when(SQLiteUtils.newSQLiteQueryBuilder()).thenReturn(sqLiteQueryBuilder);
+
+        /* Simulate that database is full when inserting the second entry. */
+        SQLiteStatement insertStatement = mock(SQLiteStatement.class);
+        when(sqLiteDatabase.compileStatement(anyString())).thenReturn(insertStatement);
+        when(insertStatement.executeInsert()).thenReturn(1L).thenThrow(new SQLiteFullException()).thenReturn(2L);
+
+        /* Instantiate real instance for DatabaseManager. */
+        DatabaseManager databaseManager = new DatabaseManager(contextMock, "database", "table", 1, null, null, null);
+        databaseManager.setSQLiteOpenHelper(helperMock);
+
+        /* Only the first entry is stored. */
+        List<ContentValues> valuesList = Arrays.asList(mock(ContentValues.class), mock(ContentValues.class));
+        assertArrayEquals(new long[]{2, -1}, databaseManager.put(valuesList, "priority"));
+        verify(sqLiteDatabase, times(2)).beginTransaction();
+        verify(sqLiteDatabase).setTransactionSuccessful();
+        verify(sqLiteDatabase, never()).delete(anyString(), anyString(), any(String[].class));
+    }
+}